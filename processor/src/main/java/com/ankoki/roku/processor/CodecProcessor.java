@@ -0,0 +1,409 @@
+package com.ankoki.roku.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Generates a {@code JSONCodec} for every class marked with {@code GenerateCodec}, and lists them
+ * all in {@code META-INF/services} so they can be found with a {@link java.util.ServiceLoader}.
+ * <p>
+ * The generated codecs only touch fields, accessors and constructors directly, nothing is looked
+ * up reflectively. See {@code GenerateCodec} for what a class needs to provide.
+ */
+@SupportedAnnotationTypes(CodecProcessor.ANNOTATION)
+public class CodecProcessor extends AbstractProcessor {
+
+    static final String ANNOTATION = "com.ankoki.roku.web.json.annotations.GenerateCodec";
+    private static final String SERIALIZABLE = "com.ankoki.roku.web.json.JSONSerializable";
+    private static final String CODEC = "com.ankoki.roku.web.json.JSONCodec";
+    private static final String SERVICES = "META-INF/services/" + CODEC;
+
+    private final Set<String> codecs = new TreeSet<>();
+    private Elements elements;
+    private Types types;
+    private Filer filer;
+    private Messager messager;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment environment) {
+        super.init(environment);
+        this.elements = environment.getElementUtils();
+        this.types = environment.getTypeUtils();
+        this.filer = environment.getFiler();
+        this.messager = environment.getMessager();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        if (round.processingOver()) {
+            this.writeServices();
+            return false;
+        }
+        TypeElement annotation = elements.getTypeElement(ANNOTATION);
+        if (annotation == null) return false;
+        for (Element element : round.getElementsAnnotatedWith(annotation)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                this.error(element, "Only classes can have a codec generated.");
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            Model model = this.model(type);
+            if (model == null) continue;
+            try {
+                this.generate(model);
+                codecs.add(model.codecName());
+            } catch (IOException ex) {
+                this.error(type, "Could not write the codec: " + ex.getMessage());
+            }
+        }
+        return true;
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Model">
+    /**
+     * Works out how a class is read, written and created.
+     *
+     * @param type the class.
+     * @return the model, or null if the class cannot have a codec.
+     */
+    private Model model(TypeElement type) {
+        TypeElement serializable = elements.getTypeElement(SERIALIZABLE);
+        if (serializable == null || !types.isAssignable(type.asType(), serializable.asType())) {
+            this.error(type, "Classes with a generated codec must extend JSONSerializable.");
+            return null;
+        }
+        if (type.getModifiers().contains(Modifier.ABSTRACT) || !type.getTypeParameters().isEmpty()) {
+            this.error(type, "Classes with a generated codec cannot be abstract or generic.");
+            return null;
+        }
+        for (Element enclosing = type; enclosing instanceof TypeElement; enclosing = enclosing.getEnclosingElement()) {
+            TypeElement current = (TypeElement) enclosing;
+            if (current.getModifiers().contains(Modifier.PRIVATE)
+                    || (current.getNestingKind() == NestingKind.MEMBER && !current.getModifiers().contains(Modifier.STATIC))) {
+                this.error(type, "Classes with a generated codec must be reachable from their package, so cannot be private or inner classes.");
+                return null;
+            }
+        }
+        List<Property> properties = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) continue;
+            String name = field.getSimpleName().toString();
+            String getter = modifiers.contains(Modifier.PRIVATE) ? this.accessor(type, field) : name;
+            if (getter == null) {
+                this.error(field, "Private field '" + name + "' needs a " + name + "(), get or is method to be serialized.");
+                return null;
+            }
+            properties.add(new Property(name, field.asType(), getter, !modifiers.contains(Modifier.PRIVATE) && !modifiers.contains(Modifier.FINAL)));
+        }
+        boolean constructor = this.hasConstructor(type, properties);
+        if (!constructor && (!this.hasConstructor(type, List.of()) || properties.stream().anyMatch(property -> !property.settable()))) {
+            this.error(type, "Classes with a generated codec need a constructor taking every field in order, or a no argument constructor with fields that are not private or final.");
+            return null;
+        }
+        String pkg = elements.getPackageOf(type).getQualifiedName().toString();
+        String qualified = type.getQualifiedName().toString();
+        String simple = pkg.isEmpty() ? qualified : qualified.substring(pkg.length() + 1);
+        return new Model(pkg, qualified, simple.replace('.', '_') + "_JSONCodec", properties, constructor, type);
+    }
+
+    private String accessor(TypeElement type, VariableElement field) {
+        String name = field.getSimpleName().toString();
+        String capitalised = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        Set<String> candidates = Set.of(name, "get" + capitalised, "is" + capitalised);
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (!candidates.contains(method.getSimpleName().toString())
+                    || !method.getParameters().isEmpty()
+                    || method.getModifiers().contains(Modifier.PRIVATE)
+                    || method.getModifiers().contains(Modifier.STATIC)
+                    || !types.isSameType(method.getReturnType(), field.asType())) continue;
+            return method.getSimpleName() + "()";
+        }
+        return null;
+    }
+
+    private boolean hasConstructor(TypeElement type, List<Property> properties) {
+        search:
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getModifiers().contains(Modifier.PRIVATE) || constructor.getParameters().size() != properties.size()) continue;
+            for (int i = 0; i < properties.size(); i++) {
+                if (!types.isSameType(types.erasure(constructor.getParameters().get(i).asType()), types.erasure(properties.get(i).type())))
+                    continue search;
+            }
+            return true;
+        }
+        return false;
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Generation">
+    private void generate(Model model) throws IOException {
+        String type = model.qualifiedName();
+        StringBuilder code = new StringBuilder();
+        if (!model.pkg().isEmpty()) code.append("package ").append(model.pkg()).append(";\n\n");
+        code.append("import com.ankoki.roku.web.json.JSONCodec;\n")
+                .append("import com.ankoki.roku.web.json.JSONReader;\n")
+                .append("import com.ankoki.roku.web.json.JSONToken;\n")
+                .append("import com.ankoki.roku.web.json.JSONWriter;\n\n")
+                .append("import java.io.IOException;\n")
+                .append("import java.util.LinkedHashMap;\n")
+                .append("import java.util.Map;\n\n")
+                .append("/**\n * Generated codec for {@link ").append(type).append("}.\n */\n")
+                .append("@javax.annotation.processing.Generated(\"").append(CodecProcessor.class.getName()).append("\")\n")
+                .append("public final class ").append(model.codecSimpleName()).append(" implements JSONCodec<").append(type).append("> {\n\n")
+                .append("    public static final ").append(model.codecSimpleName()).append(" INSTANCE = new ").append(model.codecSimpleName()).append("();\n\n");
+
+        code.append("    @Override\n    public Class<").append(type).append("> type() {\n        return ").append(type).append(".class;\n    }\n\n");
+
+        code.append("    @Override\n    public Map<String, Object> serialize(").append(type).append(" value) {\n")
+                .append("        Map<String, Object> map = new LinkedHashMap<>();\n");
+        for (Property property : model.properties()) {
+            code.append("        map.put(\"").append(property.name()).append("\", ").append(this.toMap(property, "value." + property.getter())).append(");\n");
+        }
+        code.append("        return map;\n    }\n\n");
+
+        code.append("    @Override\n    @SuppressWarnings(\"unchecked\")\n    public ").append(type).append(" deserialize(Map<String, Object> map) {\n");
+        for (Property property : model.properties()) {
+            code.append("        Object $").append(property.name()).append(" = map.get(\"").append(property.name()).append("\");\n");
+        }
+        List<String> arguments = new ArrayList<>();
+        for (Property property : model.properties()) arguments.add(this.fromMap(property, "$" + property.name()));
+        this.construct(code, model, arguments);
+        code.append("    }\n\n");
+
+        code.append("    @Override\n    public void write(JSONWriter writer, ").append(type).append(" value) throws IOException {\n")
+                .append("        writer.beginObject();\n")
+                .append("        writer.tag(").append(type).append(".class);\n");
+        for (Property property : model.properties()) {
+            code.append("        writer.name(\"").append(property.name()).append("\");\n");
+            code.append("        ").append(this.write(property, "value." + property.getter())).append(";\n");
+        }
+        code.append("        writer.endObject();\n    }\n\n");
+
+        code.append("    @Override\n    @SuppressWarnings(\"unchecked\")\n    public ").append(type).append(" read(JSONReader reader) throws IOException {\n");
+        for (Property property : model.properties()) {
+            code.append("        ").append(property.type()).append(" $").append(property.name()).append(" = ").append(this.defaultValue(property)).append(";\n");
+        }
+        code.append("        while (reader.hasNext()) {\n            switch (reader.nextName()) {\n");
+        for (Property property : model.properties()) {
+            code.append("                case \"").append(property.name()).append("\" -> $").append(property.name()).append(" = ").append(this.read(property)).append(";\n");
+        }
+        code.append("                default -> reader.skipValue();\n            }\n        }\n        reader.endObject();\n");
+        arguments.clear();
+        for (Property property : model.properties()) arguments.add("$" + property.name());
+        this.construct(code, model, arguments);
+        code.append("    }\n\n");
+
+        code.append("    private static boolean isNull(JSONReader reader) throws IOException {\n")
+                .append("        if (reader.peek() != JSONToken.NULL) return false;\n")
+                .append("        reader.nextNull();\n")
+                .append("        return true;\n    }\n\n}\n");
+
+        try (Writer writer = filer.createSourceFile(model.codecName(), model.element()).openWriter()) {
+            writer.write(code.toString());
+        }
+    }
+
+    private void construct(StringBuilder code, Model model, List<String> arguments) {
+        String type = model.qualifiedName();
+        if (model.constructor()) {
+            code.append("        return new ").append(type).append('(').append(String.join(", ", arguments)).append(");\n");
+            return;
+        }
+        code.append("        ").append(type).append(" $value = new ").append(type).append("();\n");
+        for (int i = 0; i < arguments.size(); i++) {
+            code.append("        $value.").append(model.properties().get(i).name()).append(" = ").append(arguments.get(i)).append(";\n");
+        }
+        code.append("        return $value;\n");
+    }
+
+    private String toMap(Property property, String value) {
+        return switch (this.kind(property.type())) {
+            case CHAR -> "String.valueOf(" + value + ")";
+            case ENUM -> "(" + value + " == null ? null : " + value + ".name())";
+            default -> value;
+        };
+    }
+
+    private String fromMap(Property property, String value) {
+        TypeMirror type = property.type();
+        return switch (this.kind(type)) {
+            case INT -> value + " == null ? 0 : ((Number) " + value + ").intValue()";
+            case LONG -> value + " == null ? 0L : ((Number) " + value + ").longValue()";
+            case SHORT -> value + " == null ? (short) 0 : ((Number) " + value + ").shortValue()";
+            case BYTE -> value + " == null ? (byte) 0 : ((Number) " + value + ").byteValue()";
+            case DOUBLE -> value + " == null ? 0D : ((Number) " + value + ").doubleValue()";
+            case FLOAT -> value + " == null ? 0F : ((Number) " + value + ").floatValue()";
+            case BOOLEAN -> value + " != null && (Boolean) " + value;
+            case CHAR -> value + " == null ? '\\0' : ((String) " + value + ").charAt(0)";
+            case BOXED -> {
+                TypeKind primitive = types.unboxedType(type).getKind();
+                if (primitive == TypeKind.BOOLEAN) yield "(Boolean) " + value;
+                if (primitive == TypeKind.CHAR) yield value + " == null ? null : (Character) ((String) " + value + ").charAt(0)";
+                yield value + " == null ? null : (" + type + ") ((Number) " + value + ")." + primitive.name().toLowerCase() + "Value()";
+            }
+            case ENUM -> value + " == null ? null : " + type + ".valueOf((String) " + value + ")";
+            default -> this.cast(property) + value;
+        };
+    }
+
+    private String write(Property property, String value) {
+        return switch (this.kind(property.type())) {
+            case INT, LONG, SHORT, BYTE, DOUBLE, BOOLEAN, STRING -> "writer.value(" + value + ")";
+            case FLOAT -> "writer.value((Number) " + value + ")";
+            case CHAR -> "writer.value(String.valueOf(" + value + "))";
+            case ENUM -> "writer.value(" + value + " == null ? null : " + value + ".name())";
+            default -> "writer.writeValue(" + value + ")";
+        };
+    }
+
+    private String read(Property property) {
+        TypeMirror type = property.type();
+        return switch (this.kind(type)) {
+            // Null primitives read as their default, as they do through deserialize.
+            case INT -> "isNull(reader) ? 0 : reader.nextInt()";
+            case LONG -> "isNull(reader) ? 0L : reader.nextLong()";
+            case SHORT -> "isNull(reader) ? (short) 0 : (short) reader.nextInt()";
+            case BYTE -> "isNull(reader) ? (byte) 0 : (byte) reader.nextInt()";
+            case DOUBLE -> "isNull(reader) ? 0D : reader.nextDouble()";
+            case FLOAT -> "isNull(reader) ? 0F : (float) reader.nextDouble()";
+            case BOOLEAN -> "!isNull(reader) && reader.nextBoolean()";
+            case CHAR -> "isNull(reader) ? '\\0' : reader.nextString().charAt(0)";
+            case STRING -> "isNull(reader) ? null : reader.nextString()";
+            case BOXED -> "isNull(reader) ? null : (" + type + ") " + switch (types.unboxedType(type).getKind()) {
+                case INT -> "reader.nextInt()";
+                case LONG -> "reader.nextLong()";
+                case SHORT -> "(short) reader.nextInt()";
+                case BYTE -> "(byte) reader.nextInt()";
+                case DOUBLE -> "reader.nextDouble()";
+                case FLOAT -> "(float) reader.nextDouble()";
+                case BOOLEAN -> "reader.nextBoolean()";
+                default -> "reader.nextString().charAt(0)";
+            };
+            case ENUM -> "isNull(reader) ? null : " + type + ".valueOf(reader.nextString())";
+            default -> this.cast(property) + "reader.nextValue()";
+        };
+    }
+
+    private String defaultValue(Property property) {
+        return switch (this.kind(property.type())) {
+            case INT -> "0";
+            case LONG -> "0L";
+            case SHORT -> "(short) 0";
+            case BYTE -> "(byte) 0";
+            case DOUBLE -> "0D";
+            case FLOAT -> "0F";
+            case BOOLEAN -> "false";
+            case CHAR -> "'\\0'";
+            default -> "null";
+        };
+    }
+
+    private String cast(Property property) {
+        TypeMirror type = property.type();
+        return types.isSameType(type, elements.getTypeElement("java.lang.Object").asType()) ? "" : "(" + type + ") ";
+    }
+
+    private Kind kind(TypeMirror type) {
+        return switch (type.getKind()) {
+            case INT -> Kind.INT;
+            case LONG -> Kind.LONG;
+            case SHORT -> Kind.SHORT;
+            case BYTE -> Kind.BYTE;
+            case DOUBLE -> Kind.DOUBLE;
+            case FLOAT -> Kind.FLOAT;
+            case BOOLEAN -> Kind.BOOLEAN;
+            case CHAR -> Kind.CHAR;
+            case DECLARED -> {
+                Element element = types.asElement(type);
+                if (element.getKind() == ElementKind.ENUM) yield Kind.ENUM;
+                if (((TypeElement) element).getQualifiedName().contentEquals("java.lang.String")) yield Kind.STRING;
+                try {
+                    types.unboxedType(type);
+                    yield Kind.BOXED;
+                } catch (IllegalArgumentException ex) {
+                    yield Kind.OTHER;
+                }
+            }
+            default -> Kind.OTHER;
+        };
+    }
+
+    private void writeServices() {
+        if (codecs.isEmpty()) return;
+        try (Writer writer = filer.createResource(StandardLocation.CLASS_OUTPUT, "", SERVICES).openWriter()) {
+            for (String codec : codecs) writer.write(codec + "\n");
+        } catch (IOException ex) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Could not write " + SERVICES + ": " + ex.getMessage());
+        }
+    }
+
+    private void error(Element element, String message) {
+        messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+    // </editor-fold>
+
+    private enum Kind {
+        INT, LONG, SHORT, BYTE, DOUBLE, FLOAT, BOOLEAN, CHAR, STRING, BOXED, ENUM, OTHER
+    }
+
+    /**
+     * A serialized field.
+     *
+     * @param name     the field's name, which is also its key.
+     * @param type     the field's type.
+     * @param getter   how to read the field from an object, either the field or an accessor call.
+     * @param settable true if the field can be set directly.
+     */
+    private record Property(String name, TypeMirror type, String getter, boolean settable) {}
+
+    /**
+     * A class to generate a codec for.
+     *
+     * @param pkg             the package.
+     * @param qualifiedName   the canonical name of the class.
+     * @param codecSimpleName the simple name of the codec.
+     * @param properties      the serialized fields.
+     * @param constructor     true if objects are created through a constructor taking every field.
+     * @param element         the class.
+     */
+    private record Model(String pkg, String qualifiedName, String codecSimpleName,
+                         List<Property> properties, boolean constructor, TypeElement element) {
+
+        String codecName() {
+            return pkg.isEmpty() ? codecSimpleName : pkg + "." + codecSimpleName;
+        }
+
+    }
+
+}
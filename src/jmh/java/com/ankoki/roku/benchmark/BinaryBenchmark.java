@@ -0,0 +1,68 @@
+package com.ankoki.roku.benchmark;
+
+import com.ankoki.roku.web.json.JSON;
+import com.ankoki.roku.web.json.JSONBinary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link JSONBinary} against text, reading and writing the same documents.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BinaryBenchmark {
+
+	@Param({"FLAT", "NESTED", "NUMBERS", "STRINGS", "SERIALIZABLE"})
+	public Payload.Shape shape;
+
+	@Param({"100", "10000", "1000000"})
+	public int size;
+
+	private JSON json;
+	private byte[] text;
+	private byte[] binary;
+
+	@Setup
+	public void setup() {
+		json = Payload.build(shape, size);
+		text = json.toString().getBytes(StandardCharsets.UTF_8);
+		binary = JSONBinary.toBytes(json);
+	}
+
+	@Benchmark
+	public byte[] writeText() {
+		return json.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public byte[] writeBinary() {
+		return JSONBinary.toBytes(json);
+	}
+
+	@Benchmark
+	public JSON readText() {
+		return JSON.parse(text);
+	}
+
+	@Benchmark
+	public Object readBinary() {
+		return JSONBinary.read(binary);
+	}
+
+}
@@ -0,0 +1,70 @@
+package com.ankoki.roku.benchmark;
+
+import com.ankoki.roku.web.json.JSON;
+import com.ankoki.roku.web.json.JSONReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads documents from files, mapped into memory or streamed.
+ * The 1GB documents need a large heap to hold the parsed tree, use {@code -p size=...} to skip them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class FileBenchmark {
+
+	@Param({"FLAT", "NESTED", "STRINGS"})
+	public Payload.Shape shape;
+
+	@Param({"1000000", "10000000", "100000000", "1000000000"})
+	public int size;
+
+	private Path path;
+
+	@Setup
+	public void setup() throws IOException {
+		path = Files.createTempFile("roku", ".json");
+		try (OutputStream out = Files.newOutputStream(path)) {
+			Payload.build(shape, size).write(out);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(path);
+	}
+
+	@Benchmark
+	public JSON mapped() throws IOException {
+		return JSON.parse(path);
+	}
+
+	@Benchmark
+	public JSON streamed() throws IOException {
+		try (JSONReader reader = new JSONReader(Files.newInputStream(path))) {
+			return reader.nextJSON();
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+package com.ankoki.roku.benchmark;
+
+import com.ankoki.roku.web.json.JSON;
+import com.ankoki.roku.web.json.JSONReader;
+import com.ankoki.roku.web.json.LazyJSON;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses documents from strings, bytes and streams.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ParseBenchmark {
+
+	@Param({"FLAT", "NESTED", "NUMBERS", "STRINGS", "SERIALIZABLE"})
+	public Payload.Shape shape;
+
+	@Param({"100", "10000", "1000000", "100000000"})
+	public int size;
+
+	private String text;
+	private byte[] bytes;
+
+	@Setup
+	public void setup() {
+		text = Payload.build(shape, size).toString();
+		bytes = text.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public JSON string() {
+		return new JSON(text);
+	}
+
+	@Benchmark
+	public JSON bytes() {
+		return JSON.parse(bytes);
+	}
+
+	@Benchmark
+	public JSON stream() throws IOException {
+		return new JSONReader(new ByteArrayInputStream(bytes)).nextJSON();
+	}
+
+	@Benchmark
+	public JSON lazy() {
+		return new LazyJSON(bytes);
+	}
+
+}
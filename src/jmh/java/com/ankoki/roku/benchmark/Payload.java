@@ -0,0 +1,153 @@
+package com.ankoki.roku.benchmark;
+
+import com.ankoki.roku.web.json.JSON;
+import com.ankoki.roku.web.json.JSONSerializable;
+import com.ankoki.roku.web.json.annotations.GenerateCodec;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the documents the benchmarks run against.
+ * Documents are made of many small records, added until the text reaches the wanted size.
+ */
+public final class Payload {
+
+	static {
+		JSONSerializable.register(Point.class);
+		JSONSerializable.registerCodecs(Payload.class.getClassLoader());
+	}
+
+	private Payload() {}
+
+	/**
+	 * The shapes a document can have.
+	 */
+	public enum Shape {
+		/** Every record is a key of the top level object. */
+		FLAT,
+		/** Records are objects nested sixteen deep. */
+		NESTED,
+		/** Records are arrays of whole numbers and decimals. */
+		NUMBERS,
+		/** Records are long strings, some with characters which need escaping. */
+		STRINGS,
+		/** Records are {@link JSONSerializable}s, half deserialized from maps and half by generated codecs. */
+		SERIALIZABLE
+	}
+
+	/**
+	 * Builds a document.
+	 *
+	 * @param shape the shape.
+	 * @param size  roughly how many bytes of compact text the document should be.
+	 * @return the document.
+	 */
+	public static JSON build(Shape shape, int size) {
+		JSON json = new JSON();
+		List<Object> records = new ArrayList<>();
+		if (shape != Shape.FLAT) json.put("records", records);
+		long length = 15;
+		for (int i = 0; length < size; i++) {
+			Object record = Payload.record(shape, i);
+			String text = JSON.toString(Map.of("r", record), false, 0);
+			length += text.length() - 5;
+			if (shape == Shape.FLAT) {
+				json.put("key" + i, record);
+				length += 8 + String.valueOf(i).length();
+			} else records.add(record);
+		}
+		return json;
+	}
+
+	private static Object record(Shape shape, int i) {
+		return switch (shape) {
+			case FLAT -> switch (i % 4) {
+				case 0 -> "value " + i;
+				case 1 -> i * 31;
+				case 2 -> i % 3 == 0;
+				default -> i * 0.25;
+			};
+			case NESTED -> {
+				Map<String, Object> record = new HashMap<>();
+				Map<String, Object> current = record;
+				for (int depth = 0; depth < 16; depth++) {
+					Map<String, Object> child = new HashMap<>();
+					current.put("depth", depth);
+					current.put("child", child);
+					current = child;
+				}
+				current.put("id", i);
+				yield record;
+			}
+			case NUMBERS -> List.of(i, i * 1234567L, i * 0.5, -i / 3D, (long) i << 33);
+			case STRINGS -> "Record " + i + " has a \"quoted\" part,\ta tab, a line break\nand caf\u00e9 \u4e16\u754c in it, "
+					+ "followed by enough plain text to make it a long string like a chat message or description.";
+			case SERIALIZABLE -> i % 2 == 0 ? new Point(i, i * 2, "point " + i) : new Vector(i * 0.5, -i * 0.5, i);
+		};
+	}
+
+	/**
+	 * A serializable which is deserialized from a map.
+	 */
+	public static class Point extends JSONSerializable {
+
+		public static Point deserialize(Map<String, Object> map) {
+			return new Point((int) map.get("x"), (int) map.get("y"), (String) map.get("name"));
+		}
+
+		/**
+		 * Deserializes through the deserializer cached by {@link JSONSerializable}.
+		 *
+		 * @param map the serialized point.
+		 * @return the point.
+		 */
+		static Object cached(Map<String, Object> map) {
+			return JSONSerializable.deserializeHelper(Point.class, map);
+		}
+
+		private final int x, y;
+		private final String name;
+
+		public Point(int x, int y, String name) {
+			this.x = x;
+			this.y = y;
+			this.name = name;
+		}
+
+		@Override
+		public Map<String, Object> serialize() {
+			Map<String, Object> map = new HashMap<>();
+			map.put("x", x);
+			map.put("y", y);
+			map.put("name", name);
+			return map;
+		}
+
+	}
+
+	/**
+	 * A serializable which is read and written by a generated codec.
+	 */
+	@GenerateCodec
+	public static class Vector extends JSONSerializable {
+
+		final double x, y;
+		final int id;
+
+		public Vector(double x, double y, int id) {
+			this.x = x;
+			this.y = y;
+			this.id = id;
+		}
+
+		@Override
+		public Map<String, Object> serialize() {
+			return Payload_Vector_JSONCodec.INSTANCE.serialize(this);
+		}
+
+	}
+
+}
@@ -0,0 +1,67 @@
+package com.ankoki.roku.benchmark;
+
+import com.ankoki.roku.web.json.JSON;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deserializes {@link com.ankoki.roku.web.json.JSONSerializable}s through the cached deserializer, through
+ * reflection as it was done before deserializers were cached, and through a generated codec.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializableBenchmark {
+
+	private final Map<String, Object> map = new HashMap<>();
+	private Method method;
+	private String point;
+	private String vector;
+
+	@Setup
+	public void setup() throws NoSuchMethodException {
+		map.put("x", 1);
+		map.put("y", 2);
+		map.put("name", "point");
+		method = Payload.Point.class.getMethod("deserialize", Map.class);
+		point = JSON.toString(Map.of("value", new Payload.Point(1, 2, "point")), false, 0);
+		vector = JSON.toString(Map.of("value", new Payload.Vector(0.5, -0.5, 1)), false, 0);
+	}
+
+	@Benchmark
+	public Object cached() {
+		return Payload.Point.cached(map);
+	}
+
+	@Benchmark
+	public Object reflected() throws ReflectiveOperationException {
+		return method.invoke(null, map);
+	}
+
+	@Benchmark
+	public Object parseMapped() {
+		return new JSON(point).get("value");
+	}
+
+	@Benchmark
+	public Object parseCodec() {
+		return new JSON(vector).get("value");
+	}
+
+}
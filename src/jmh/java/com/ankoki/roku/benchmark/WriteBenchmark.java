@@ -0,0 +1,59 @@
+package com.ankoki.roku.benchmark;
+
+import com.ankoki.roku.web.json.JSON;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes documents, plain and pretty, to strings and streams.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class WriteBenchmark {
+
+	@Param({"FLAT", "NESTED", "NUMBERS", "STRINGS", "SERIALIZABLE"})
+	public Payload.Shape shape;
+
+	@Param({"100", "10000", "1000000", "100000000"})
+	public int size;
+
+	private JSON json;
+
+	@Setup
+	public void setup() {
+		json = Payload.build(shape, size);
+	}
+
+	@Benchmark
+	public String plain() {
+		return json.toString();
+	}
+
+	@Benchmark
+	public String pretty() {
+		return json.toPrettyString(4);
+	}
+
+	@Benchmark
+	public void stream() throws IOException {
+		json.write(OutputStream.nullOutputStream());
+	}
+
+}
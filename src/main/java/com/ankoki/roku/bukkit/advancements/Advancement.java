@@ -3,6 +3,8 @@ package com.ankoki.roku.bukkit.advancements;
 import com.ankoki.roku.bukkit.BukkitImpl;
 import com.ankoki.roku.bukkit.advancements.exceptions.InvalidAdvancementException;
 import com.ankoki.roku.web.json.JSON;
+import com.ankoki.roku.web.json.JSONPath;
+import com.ankoki.roku.web.json.TrackedJSON;
 import org.bukkit.Material;
 import org.bukkit.NamespacedKey;
 import org.bukkit.advancement.AdvancementProgress;
@@ -23,7 +25,14 @@ import java.util.Map;
  */
 public class Advancement {
 
-    private final JSON json = new JSON();
+    private static final JSONPath DISPLAY = JSON.compilePath("/display"),
+            TITLE = JSON.compilePath("/display/title"),
+            DESCRIPTION = JSON.compilePath("/display/description"),
+            ICON = JSON.compilePath("/display/icon"),
+            ICON_ITEM = JSON.compilePath("/display/icon/item"),
+            CRITERIA = JSON.compilePath("/criteria");
+
+    private final JSON json = new TrackedJSON();
     private NamespacedKey key;
     private org.bukkit.advancement.Advancement advancement;
 
@@ -161,30 +170,19 @@ public class Advancement {
      * @throws InvalidAdvancementException if there are any errors with the provided json.
      */
     private static void validateJson(@NotNull JSON json) throws InvalidAdvancementException {
-        if (json.containsKey("display")) {
-            Object display = json.get("display");
-            if (display instanceof Map<?,?> displayMap) {
-                if (!displayMap.containsKey("title") || !displayMap.containsKey("description"))
-                    throw new InvalidAdvancementException("Missing 'title' and/or 'description' value.");
-                if (!displayMap.containsKey("icon")) throw new InvalidAdvancementException("Missing 'icon' value.");
-                Object item = displayMap.get("icon");
-                if (item instanceof Map itemMap) {
-                    if (!itemMap.containsKey("item")) throw new InvalidAdvancementException();
-                } else throw new InvalidAdvancementException();
-            } else throw new InvalidAdvancementException();
-
-        } else throw new InvalidAdvancementException("Missing 'display' value.");
-
-        if (!json.containsKey("criteria")) throw new InvalidAdvancementException("Missing 'criteria' value.");
-        Object criteria = json.get("criteria");
-        if (criteria instanceof Map<?,?> criteriaMap) {
-            for (Object object : criteriaMap.entrySet()) {
-                Map.Entry entry = (Map.Entry) object;
-                if (entry.getValue() instanceof Map criterionMap) {
-                    if (!criterionMap.containsKey("trigger")) throw new InvalidAdvancementException("No trigger found in criterion '" + entry.getKey() + "'.");
-                } else throw new InvalidAdvancementException();
-            }
-        } else throw new InvalidAdvancementException();
+        if (!DISPLAY.exists(json)) throw new InvalidAdvancementException("Missing 'display' value.");
+        if (!(DISPLAY.get(json) instanceof Map)) throw new InvalidAdvancementException();
+        if (!TITLE.exists(json) || !DESCRIPTION.exists(json))
+            throw new InvalidAdvancementException("Missing 'title' and/or 'description' value.");
+        if (!ICON.exists(json)) throw new InvalidAdvancementException("Missing 'icon' value.");
+        if (!(ICON.get(json) instanceof Map) || !ICON_ITEM.exists(json)) throw new InvalidAdvancementException();
+
+        if (!CRITERIA.exists(json)) throw new InvalidAdvancementException("Missing 'criteria' value.");
+        if (!(CRITERIA.get(json) instanceof Map<?, ?> criteria)) throw new InvalidAdvancementException();
+        for (Map.Entry<?, ?> entry : criteria.entrySet()) {
+            if (!(entry.getValue() instanceof Map<?, ?> criterion)) throw new InvalidAdvancementException();
+            if (!criterion.containsKey("trigger")) throw new InvalidAdvancementException("No trigger found in criterion '" + entry.getKey() + "'.");
+        }
     }
 
     /**
@@ -1,34 +1,139 @@
 package com.ankoki.roku.misc;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
 import java.util.stream.Stream;
 
 public class StringUtils {
 
-	/** TODO FIX
-	 * Unescapes a string.
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+	private static final String[] ESCAPES = new String['\u00A0'];
+	private static final String[] UNICODE_ESCAPES = new String[256];
+	private static final int[] UNESCAPES = new int[128];
+	private static final int[] HEX_VALUES = new int[128];
+
+	static {
+		for (char c = 0; c < ESCAPES.length; c++) {
+			if (c <= '\u001F' || c >= '\u007F') ESCAPES[c] = StringUtils.unicode(c);
+		}
+		for (int i = 0; i < UNICODE_ESCAPES.length; i++) UNICODE_ESCAPES[i] = StringUtils.unicode((char) ('\u2000' + i));
+		ESCAPES['"'] = "\\\"";
+		ESCAPES['\\'] = "\\\\";
+		ESCAPES['/'] = "\\/";
+		ESCAPES['\b'] = "\\b";
+		ESCAPES['\f'] = "\\f";
+		ESCAPES['\n'] = "\\n";
+		ESCAPES['\r'] = "\\r";
+		ESCAPES['\t'] = "\\t";
+
+		Arrays.fill(UNESCAPES, -1);
+		UNESCAPES['"'] = '"';
+		UNESCAPES['\\'] = '\\';
+		UNESCAPES['/'] = '/';
+		UNESCAPES['b'] = '\b';
+		UNESCAPES['f'] = '\f';
+		UNESCAPES['n'] = '\n';
+		UNESCAPES['r'] = '\r';
+		UNESCAPES['t'] = '\t';
+
+		Arrays.fill(HEX_VALUES, -1);
+		for (int i = 0; i < 10; i++) HEX_VALUES['0' + i] = i;
+		for (int i = 0; i < 6; i++) HEX_VALUES['a' + i] = HEX_VALUES['A' + i] = 10 + i;
+	}
+
+	private static String unicode(char c) {
+		return new String(new char[]{'\\', 'u', HEX[c >> 12], HEX[(c >> 8) & 0xF], HEX[(c >> 4) & 0xF], HEX[c & 0xF]});
+	}
+
+	/**
+	 * Unescapes a string, the opposite of {@link #escape(Object)}.
+	 * Strings without a backslash are returned as they are.
 	 *
 	 * @param escaped the escaped string.
 	 * @return the same string unescaped.
+	 * @throws IllegalArgumentException if the string has an invalid escape sequence.
 	 */
 	public static String unescape(String escaped) {
-		char previous = 0;
-		StringBuilder builder = new StringBuilder();
-		for (char c : escaped.toCharArray()) {
-			if (c == '\\') {
-				previous = c;
-				continue;
+		int first = escaped.indexOf('\\');
+		if (first == -1) return escaped;
+		StringBuilder builder = new StringBuilder(escaped.length());
+		builder.append(escaped, 0, first);
+		int invalid = StringUtils.unescape(escaped, first, escaped.length(), builder);
+		if (invalid != -1) throw new IllegalArgumentException("Invalid escape sequence at index " + invalid + ".");
+		return builder.toString();
+	}
+
+	/**
+	 * Unescapes part of a string into a buffer, copying everything between escape sequences in bulk.
+	 *
+	 * @param escaped the escaped string.
+	 * @param start   the index to start from, inclusive.
+	 * @param end     the index to stop at, exclusive.
+	 * @param out     the buffer to append to.
+	 * @return -1, or the index of the first invalid escape sequence, in which case the buffer holds
+	 * everything before it.
+	 */
+	public static int unescape(CharSequence escaped, int start, int end, StringBuilder out) {
+		int run = start;
+		for (int i = start; i < end; i++) {
+			if (escaped.charAt(i) != '\\') continue;
+			out.append(escaped, run, i);
+			if (i + 1 >= end) return i;
+			char c = escaped.charAt(i + 1);
+			if (c == 'u') {
+				int value = i + 6 <= end ? StringUtils.hex(escaped, i + 2) : -1;
+				if (value == -1) return i;
+				out.append((char) value);
+				i += 5;
+			} else {
+				int unescaped = StringUtils.unescape(c);
+				if (unescaped == -1) return i;
+				out.append((char) unescaped);
+				i++;
 			}
-			if (previous == '\\' && c == '\"')
-				builder.append("\"");
-			else if (previous == '\\' && c == 'n')
-				builder.append("\n");
-			else if (previous == '\n')
-				builder.append("\\").append(c);
-			else
-				builder.append(c);
-			previous = c;
+			run = i + 1;
 		}
-		return builder.toString();
+		out.append(escaped, run, end);
+		return -1;
+	}
+
+	/**
+	 * Gets the character a simple escape sequence stands for.
+	 *
+	 * @param c the character after the backslash.
+	 * @return the unescaped character, or -1 if it is not a simple escape.
+	 */
+	public static int unescape(int c) {
+		return c < UNESCAPES.length ? UNESCAPES[c] : -1;
+	}
+
+	/**
+	 * Reads four hex digits as a character.
+	 *
+	 * @param string the string to read from.
+	 * @param start  the index of the first digit, there must be three more after it.
+	 * @return the character, or -1 if any of them is not a hex digit.
+	 */
+	public static int hex(CharSequence string, int start) {
+		int value = 0;
+		for (int i = start; i < start + 4; i++) {
+			int digit = StringUtils.hex(string.charAt(i));
+			if (digit == -1) return -1;
+			value = (value << 4) | digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Gets the value of a hex digit.
+	 *
+	 * @param c the digit.
+	 * @return the value, or -1 if it is not a hex digit.
+	 */
+	public static int hex(int c) {
+		return c < HEX_VALUES.length ? HEX_VALUES[c] : -1;
 	}
 
 	/**
@@ -61,34 +166,69 @@ public class StringUtils {
 
 	/**
 	 * Escapes characters in an object.
+	 * Strings with nothing to escape, which is most of them, are returned as they are.
 	 *
 	 * @param object the object to escape.
 	 * @return the escaped string.
 	 */
 	public static String escape(Object object) {
-		StringBuilder builder = new StringBuilder();
 		String string = String.valueOf(object);
-		for (char c : string.toCharArray()) {
-			switch (c) {
-				case '\"' -> builder.append("\\\"");
-				case '\\' -> builder.append("\\\\");
-				case '\b' -> builder.append("\\b");
-				case '\f' -> builder.append("\\f");
-				case '\n' -> builder.append("\\n");
-				case '\r' -> builder.append("\\r");
-				case '\t' -> builder.append("\\t");
-				case '/' -> builder.append("\\/");
-			}
-			if (c <= '\u001F' || c >= '\u007F' && c <= '\u009F' || c >= '\u2000' && c <= '\u20FF') {
-				String s = Integer.toHexString(c);
-				builder.append("\\u");
-				builder.append("0".repeat(4 - s.length()));
-				builder.append(s.toUpperCase());
-			} else builder.append(c);
+		int first = 0;
+		while (first < string.length() && StringUtils.escape(string.charAt(first)) == null) first++;
+		if (first == string.length()) return string;
+		StringBuilder builder = new StringBuilder(string.length() + 16);
+		builder.append(string, 0, first);
+		try {
+			StringUtils.escape(string, first, builder);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
 		}
 		return builder.toString();
 	}
 
+	/**
+	 * Escapes a string into a buffer, copying everything between characters which need escaping in bulk.
+	 *
+	 * @param string the string to escape.
+	 * @param out    where to write to.
+	 * @throws IOException if the output could not be written to.
+	 */
+	public static void escape(String string, Appendable out) throws IOException {
+		StringUtils.escape(string, 0, out);
+	}
+
+	/**
+	 * Gets the escape sequence for a character.
+	 *
+	 * @param c the character.
+	 * @return the escape sequence, or null if the character does not need escaping.
+	 */
+	public static String escape(char c) {
+		if (c < ESCAPES.length) return ESCAPES[c];
+		return c >= '\u2000' && c <= '\u20FF' ? UNICODE_ESCAPES[c - '\u2000'] : null;
+	}
+
+	private static void escape(String string, int start, Appendable out) throws IOException {
+		Writer writer = out instanceof Writer w ? w : null;
+		int length = string.length();
+		int run = start;
+		for (int i = start; i < length; i++) {
+			char c = string.charAt(i);
+			String escape = StringUtils.escape(c);
+			if (escape == null) continue;
+			if (run < i) StringUtils.append(string, run, i, out, writer);
+			out.append(escape);
+			run = i + 1;
+		}
+		if (run < length) StringUtils.append(string, run, length, out, writer);
+	}
+
+	private static void append(String string, int start, int end, Appendable out, Writer writer) throws IOException {
+		// Writers copy a substring for append, but not for write.
+		if (writer != null) writer.write(string, start, end - start);
+		else out.append(string, start, end);
+	}
+
 	/**
 	 * Checks if a character in a char array is escaped.
 	 *
@@ -2,10 +2,13 @@ package com.ankoki.roku.web;
 
 import com.ankoki.roku.misc.Pair;
 import com.ankoki.roku.web.json.JSON;
+import com.ankoki.roku.web.json.JSONParser;
+import com.ankoki.roku.web.json.exceptions.MalformedJsonException;
 
 import java.io.BufferedReader;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
@@ -150,6 +153,63 @@ public class WebRequest {
      * @return an optional containing the request response, if present.
      */
     public Optional<String> execute() throws IOException {
+        HttpURLConnection con = this.connect();
+        BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
+        String line;
+        StringBuilder content = new StringBuilder();
+        while ((line = in.readLine()) != null) content.append(line);
+        in.close();
+        con.disconnect();
+        String response = content.length() > 0 ? content.toString() : null;
+        return Optional.ofNullable(response);
+    }
+
+    /**
+     * Executes the current request, parsing the response as JSON.
+     * The response bytes are parsed directly, without being decoded to a String first.
+     * @return an optional containing the parsed response, if present.
+     * @throws MalformedJsonException if the response is not valid JSON.
+     */
+    public Optional<JSON> executeJson() throws IOException, MalformedJsonException {
+        byte[] response = this.readResponse();
+        return response.length > 0 ? Optional.of(JSON.parse(response)) : Optional.empty();
+    }
+
+    /**
+     * Executes the current request, parsing only the given parts of the response as JSON.
+     * Everything else in the response is skipped over without being decoded, see {@link JSONParser#setProjection(String...)}.
+     * @param paths the JSON Pointers, such as {@code /data/id}, or top level keys to keep.
+     * @return an optional containing the parsed parts of the response, if present.
+     * @throws MalformedJsonException if the response is not valid JSON.
+     */
+    public Optional<JSON> executeJson(String... paths) throws IOException, MalformedJsonException {
+        if (paths.length == 0) return this.executeJson();
+        byte[] response = this.readResponse();
+        return response.length > 0 ? Optional.of(JSONParser.local().setProjection(paths).parse(response)) : Optional.empty();
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Executes the current request, reading the whole response.
+     * @return the response bytes, which may be empty.
+     */
+    private byte[] readResponse() throws IOException {
+        HttpURLConnection con = this.connect();
+        try (InputStream in = con.getInputStream()) {
+            return in.readAllBytes();
+        } finally {
+            con.disconnect();
+        }
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Opens the connection for the current request, and sends any parameters.
+     * @return the open connection.
+     */
+    private HttpURLConnection connect() throws IOException {
         HttpURLConnection con = (HttpURLConnection) url.openConnection();
         if (type == RequestType.PATCH) {
             con.setRequestMethod("POST");
@@ -167,14 +227,7 @@ public class WebRequest {
             out.flush();
             out.close();
         }
-        BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-        String line;
-        StringBuilder content = new StringBuilder();
-        while ((line = in.readLine()) != null) content.append(line);
-        in.close();
-        con.disconnect();
-        String response = content.length() > 0 ? content.toString() : null;
-        return Optional.ofNullable(response);
+        return con;
     }
 
     /**
@@ -184,6 +237,8 @@ public class WebRequest {
     public String getEncodedParameters() {
         if (parameters.size() < 1 && data.size() < 1) return null;
         boolean hasJson = data.size() >= 1;
+        // A lone TrackedJSON can give back the text it remembers.
+        if (data.size() == 1 && parameters.isEmpty()) return data.get(0).toString();
         JSON empty = new JSON();
         for (JSON json : data) empty.putAll(json);
         if (hasJson) {
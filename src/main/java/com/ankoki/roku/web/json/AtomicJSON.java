@@ -0,0 +1,120 @@
+package com.ankoki.roku.web.json;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Holds the current version of an {@link ImmutableJSON}, which any thread can read or replace.
+ * <p>
+ * Readers take the current version with {@link #get()} and keep reading it for as long as they like
+ * without any locking, even while other threads replace it. Writers publish new versions with
+ * {@link #update(UnaryOperator)}, which retries when another thread got there first, so no change is lost.
+ * <pre>{@code
+ * AtomicJSON config = new AtomicJSON(ImmutableJSON.parse(text));
+ * // Any thread.
+ * config.update(json -> json.with("motd", "Welcome!"));
+ * // Any other thread.
+ * ImmutableJSON snapshot = config.get();
+ * }</pre>
+ */
+public class AtomicJSON {
+
+    private final AtomicReference<ImmutableJSON> reference;
+
+    /**
+     * Creates a new holder of the empty ImmutableJSON.
+     */
+    public AtomicJSON() {
+        this(ImmutableJSON.empty());
+    }
+
+    /**
+     * Creates a new holder.
+     *
+     * @param json the first version.
+     */
+    public AtomicJSON(ImmutableJSON json) {
+        this.reference = new AtomicReference<>(json);
+    }
+
+    /**
+     * Gets the current version.
+     *
+     * @return the current version.
+     */
+    public ImmutableJSON get() {
+        return reference.get();
+    }
+
+    /**
+     * Replaces the current version.
+     *
+     * @param json the new version.
+     */
+    public void set(ImmutableJSON json) {
+        reference.set(json);
+    }
+
+    /**
+     * Replaces the current version if it has not been replaced since it was got.
+     *
+     * @param expected the version which was got.
+     * @param json     the new version.
+     * @return true if the version was replaced.
+     */
+    public boolean compareAndSet(ImmutableJSON expected, ImmutableJSON json) {
+        return reference.compareAndSet(expected, json);
+    }
+
+    /**
+     * Replaces the current version with one made from it. If another thread replaces it first, the new
+     * version is made again from theirs, so the function may be called more than once and should have no
+     * side effects.
+     *
+     * @param function makes the new version from the current one.
+     * @return the new version.
+     */
+    public ImmutableJSON update(UnaryOperator<ImmutableJSON> function) {
+        return reference.updateAndGet(function);
+    }
+
+    /**
+     * Sets a key of the current version.
+     *
+     * @param key   the key.
+     * @param value the value.
+     * @return the new version.
+     */
+    public ImmutableJSON put(String key, Object value) {
+        return this.update(json -> json.with(key, value));
+    }
+
+    /**
+     * Sets the entries of a map on the current version.
+     *
+     * @param map the entries to set.
+     * @return the new version.
+     */
+    public ImmutableJSON putAll(Map<String, ?> map) {
+        // Made immutable once, rather than on each retry.
+        ImmutableJSON entries = ImmutableJSON.of(map);
+        return this.update(json -> json.withAll(entries));
+    }
+
+    /**
+     * Removes a key from the current version.
+     *
+     * @param key the key.
+     * @return the new version.
+     */
+    public ImmutableJSON remove(String key) {
+        return this.update(json -> json.without(key));
+    }
+
+    @Override
+    public String toString() {
+        return reference.get().toString();
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.ankoki.roku.web.json;
+
+import com.ankoki.roku.misc.StringUtils;
+import com.ankoki.roku.web.json.exceptions.MalformedJsonException;
+
+/**
+ * <strong>INTERNAL USE ONLY</strong>
+ * <p>
+ * A cursor over JSON held in a {@link String}.
+ */
+final class CharCursor extends JSONCursor {
+
+    private String source;
+    private final StringBuilder scratch = new StringBuilder();
+
+    /**
+     * Creates a cursor over the whole of a string.
+     *
+     * @param source the JSON text.
+     */
+    CharCursor(String source) {
+        super(0, source.length());
+        this.source = source;
+    }
+
+    /**
+     * Moves the cursor to the start of another string, keeping its scratch buffers.
+     *
+     * @param source the JSON text.
+     * @return the current cursor.
+     */
+    CharCursor reset(String source) {
+        this.source = source;
+        this.position = 0;
+        this.limit = source.length();
+        return this;
+    }
+
+    @Override
+    void release() {
+        source = null;
+        scratch.setLength(0);
+        if (scratch.capacity() > 8192) scratch.trimToSize();
+    }
+
+    @Override
+    int charAt(int index) {
+        return source.charAt(index);
+    }
+
+    @Override
+    String text(int start, int end) {
+        return source.substring(start, end);
+    }
+
+    @Override
+    String readKey() throws MalformedJsonException {
+        if (keys == null) return this.readString();
+        int start = position + 1;
+        int hash = 0;
+        for (int i = start; i < limit && i - start <= KeyTable.MAX_LENGTH; i++) {
+            char c = source.charAt(i);
+            if (c == '"') {
+                position = i + 1;
+                String key = keys.find(source, start, i, hash);
+                return key != null ? key : keys.add(source.substring(start, i));
+            }
+            if (c == '\\') break;
+            hash = 31 * hash + c;
+        }
+        return keys.intern(this.readString());
+    }
+
+    @Override
+    void skipString() throws MalformedJsonException {
+        int from = position + 1;
+        while (true) {
+            int quote = source.indexOf('"', from);
+            if (quote == -1 || quote >= limit) throw this.error("Quote found with no closing quote");
+            int backslashes = 0;
+            while (source.charAt(quote - 1 - backslashes) == '\\') backslashes++;
+            if ((backslashes & 1) == 0) {
+                position = quote + 1;
+                return;
+            }
+            from = quote + 1;
+        }
+    }
+
+    @Override
+    String readString() throws MalformedJsonException {
+        int start = ++position;
+        // Fast path, most strings have nothing to unescape and can be cut straight out of the source.
+        while (position < limit) {
+            char c = source.charAt(position);
+            if (c == '"') return source.substring(start, position++);
+            if (c == '\\') break;
+            position++;
+        }
+        int end = position;
+        while (end < limit && source.charAt(end) != '"') end += source.charAt(end) == '\\' ? 2 : 1;
+        if (end >= limit) {
+            position = limit;
+            throw this.error("Quote found with no closing quote");
+        }
+        scratch.setLength(0);
+        scratch.append(source, start, position);
+        int invalid = StringUtils.unescape(source, position, end, scratch);
+        if (invalid != -1) {
+            position = invalid;
+            throw this.error("Invalid escape sequence");
+        }
+        position = end + 1;
+        return scratch.toString();
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.ankoki.roku.web.json;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A list of doubles backed by a {@code double[]}, rather than by boxed {@link Double}s.
+ * <p>
+ * Numeric arrays are parsed into these when {@link JSONParser#setPrimitiveArrays(boolean)} is enabled,
+ * and they are written straight from the array by {@link JSONWriter}. The list can be changed like
+ * any other, but nulls and anything other than doubles cannot be put in it.
+ */
+public class DoubleList extends AbstractList<Double> implements RandomAccess {
+
+    private double[] values;
+    private int size;
+
+    /**
+     * Creates a new empty list.
+     */
+    public DoubleList() {
+        this(10);
+    }
+
+    /**
+     * Creates a new empty list with room for some values.
+     *
+     * @param capacity how many values there is room for before the array has to grow.
+     */
+    public DoubleList(int capacity) {
+        this.values = new double[capacity];
+    }
+
+    private DoubleList(double[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * Creates a list which uses the given array, without copying it.
+     * Changes to the array are seen by the list until values are added or removed.
+     *
+     * @param values the values.
+     * @return the list.
+     */
+    public static DoubleList of(double... values) {
+        return new DoubleList(values, values.length);
+    }
+
+    /**
+     * Gets a value without boxing it.
+     *
+     * @param index the index.
+     * @return the value.
+     */
+    public double getDouble(int index) {
+        Objects.checkIndex(index, size);
+        return values[index];
+    }
+
+    /**
+     * Replaces a value without boxing it.
+     *
+     * @param index the index.
+     * @param value the new value.
+     * @return the old value.
+     */
+    public double setDouble(int index, double value) {
+        Objects.checkIndex(index, size);
+        double old = values[index];
+        values[index] = value;
+        return old;
+    }
+
+    /**
+     * Adds a value to the end without boxing it.
+     *
+     * @param value the value.
+     */
+    public void addDouble(double value) {
+        if (size == values.length) values = Arrays.copyOf(values, Math.max(10, size + (size >> 1)));
+        values[size++] = value;
+        modCount++;
+    }
+
+    /**
+     * Copies the values into a new array.
+     *
+     * @return the array.
+     */
+    public double[] toDoubleArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    @Override
+    public Double get(int index) {
+        return this.getDouble(index);
+    }
+
+    @Override
+    public Double set(int index, Double value) {
+        return this.setDouble(index, value);
+    }
+
+    @Override
+    public boolean add(Double value) {
+        this.addDouble(value);
+        return true;
+    }
+
+    @Override
+    public void add(int index, Double value) {
+        Objects.checkIndex(index, size + 1);
+        double element = value;
+        this.addDouble(element);
+        System.arraycopy(values, index, values, index + 1, size - 1 - index);
+        values[index] = element;
+    }
+
+    @Override
+    public Double remove(int index) {
+        Objects.checkIndex(index, size);
+        double old = values[index];
+        System.arraycopy(values, index + 1, values, index, size - 1 - index);
+        size--;
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+}
@@ -0,0 +1,573 @@
+package com.ankoki.roku.web.json;
+
+import com.ankoki.roku.web.json.exceptions.MalformedJsonException;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * A JSON object which can never change, so it can be read from any number of threads without locking.
+ * <p>
+ * Changes are made by {@link #with(String, Object)} and {@link #without(String)}, which give back a new
+ * version and leave the old one as it was. Entries are kept in a hash array mapped trie, so a new version
+ * shares everything but the path to the changed entry with the old one, and making one only copies a
+ * handful of small arrays however large the object is. Share versions between threads with an
+ * {@link AtomicJSON}.
+ * <p>
+ * Everything put in is made immutable too: maps become ImmutableJSONs and lists become unmodifiable
+ * copies. Other values, such as {@link JSONSerializable}s, are kept as they are and should not be changed.
+ * Unlike {@link JSON}, entries are in no particular order.
+ */
+public final class ImmutableJSON extends AbstractMap<String, Object> {
+
+    private static final ImmutableJSON EMPTY = new ImmutableJSON(BitmapNode.EMPTY, 0);
+    private static final Object NOT_FOUND = new Object();
+
+    private final Node root;
+    private final int size;
+    private int hash;
+    private Set<Entry<String, Object>> entries;
+
+    private ImmutableJSON(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Gets the empty ImmutableJSON.
+     *
+     * @return the empty ImmutableJSON.
+     */
+    public static ImmutableJSON empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Copies a map, and everything inside it, into an ImmutableJSON.
+     *
+     * @param map the map.
+     * @return the ImmutableJSON, or the map itself if it already is one.
+     */
+    public static ImmutableJSON of(Map<?, ?> map) {
+        if (map instanceof ImmutableJSON json) return json;
+        Node root = BitmapNode.EMPTY;
+        int size = 0;
+        boolean[] added = new boolean[1];
+        for (Entry<?, ?> entry : map.entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            added[0] = false;
+            root = root.put(key, key.hashCode(), ImmutableJSON.freeze(entry.getValue()), 0, added);
+            if (added[0]) size++;
+        }
+        return new ImmutableJSON(root, size);
+    }
+
+    /**
+     * Parses JSON text into an ImmutableJSON.
+     *
+     * @param json the text.
+     * @return the ImmutableJSON.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    public static ImmutableJSON parse(String json) throws MalformedJsonException {
+        return ImmutableJSON.of(JSON.parse(json));
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Versions">
+    /**
+     * Gets a version of the current ImmutableJSON with a key set to a value.
+     *
+     * @param key   the key.
+     * @param value the value, which is made immutable.
+     * @return the new version, or the current one if the key was already set to the same value.
+     */
+    public ImmutableJSON with(String key, Object value) {
+        boolean[] added = new boolean[1];
+        Node root = this.root.put(key, key.hashCode(), ImmutableJSON.freeze(value), 0, added);
+        return root == this.root ? this : new ImmutableJSON(root, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Gets a version of the current ImmutableJSON with the entries of a map set.
+     *
+     * @param map the entries to set.
+     * @return the new version.
+     */
+    public ImmutableJSON withAll(Map<String, ?> map) {
+        ImmutableJSON json = this;
+        for (Entry<String, ?> entry : map.entrySet()) json = json.with(entry.getKey(), entry.getValue());
+        return json;
+    }
+
+    /**
+     * Gets a version of the current ImmutableJSON without a key.
+     *
+     * @param key the key.
+     * @return the new version, or the current one if the key was not set.
+     */
+    public ImmutableJSON without(String key) {
+        Node root = this.root.remove(key, key.hashCode(), 0);
+        return root == this.root ? this : new ImmutableJSON(root, size - 1);
+    }
+
+    /**
+     * Copies the current ImmutableJSON, and everything inside it, into a {@link JSON} which can be changed.
+     *
+     * @return the copy.
+     */
+    public JSON toJSON() {
+        JSON json = new JSON();
+        for (Entry<String, Object> entry : this.entrySet()) json.put(entry.getKey(), ImmutableJSON.thaw(entry.getValue()));
+        return json;
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Map Methods">
+    @Override
+    public Object get(Object key) {
+        if (!(key instanceof String string)) return null;
+        Object value = root.get(string, string.hashCode(), 0);
+        return value == NOT_FOUND ? null : value;
+    }
+
+    @Override
+    public Object getOrDefault(Object key, Object defaultValue) {
+        if (!(key instanceof String string)) return defaultValue;
+        Object value = root.get(string, string.hashCode(), 0);
+        return value == NOT_FOUND ? defaultValue : value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String string && root.get(string, string.hashCode(), 0) != NOT_FOUND;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (entries == null) {
+            entries = new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new EntryIterator(root);
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entries;
+    }
+
+    @Override
+    public int hashCode() {
+        // Racy, but every thread works out the same value.
+        int hash = this.hash;
+        if (hash == 0 && size > 0) this.hash = hash = super.hashCode();
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return JSON.toString(this, false, 0);
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Internal Methods">
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Makes a value immutable, copying maps and lists which are not already.
+     *
+     * @param value the value.
+     * @return the immutable value.
+     */
+    private static Object freeze(Object value) {
+        if (value instanceof Map<?, ?> map) return ImmutableJSON.of(map);
+        if (value instanceof FrozenList || !(value instanceof List<?> list)) return value;
+        Object[] elements = list.toArray();
+        for (int i = 0; i < elements.length; i++) elements[i] = ImmutableJSON.freeze(elements[i]);
+        return new FrozenList(elements);
+    }
+
+    private static Object thaw(Object value) {
+        if (value instanceof ImmutableJSON json) return json.toJSON();
+        if (!(value instanceof FrozenList list)) return value;
+        List<Object> copy = new ArrayList<>(list.size());
+        for (Object element : list) copy.add(ImmutableJSON.thaw(element));
+        return copy;
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * A node of the trie. Each level of the trie uses the next five bits of a key's hash to pick one of
+     * 32 slots, and keys whose hashes are entirely the same end up together in a {@link CollisionNode}.
+     */
+    private abstract static class Node {
+
+        abstract Object get(String key, int hash, int shift);
+
+        /**
+         * Gets the node with a key set to a value.
+         *
+         * @param added set to true if the key was not already set.
+         * @return the new node, or the current one if nothing changed.
+         */
+        abstract Node put(String key, int hash, Object value, int shift, boolean[] added);
+
+        /**
+         * Gets the node without a key.
+         *
+         * @return the new node, or the current one if the key was not set.
+         */
+        abstract Node remove(String key, int hash, int shift);
+
+        abstract int dataCount();
+
+        abstract String key(int index);
+
+        abstract Object value(int index);
+
+        abstract int nodeCount();
+
+        abstract Node node(int index);
+
+        /**
+         * Checks if the node holds exactly one entry and no other nodes, in which case the node above it
+         * holds the entry instead, keeping the trie as shallow as it can be.
+         */
+        boolean single() {
+            return this.dataCount() == 1 && this.nodeCount() == 0;
+        }
+
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * A node with a bitmap of which slots hold an entry and which hold another node. Entries are kept as
+     * key and value pairs at the start of the array, and nodes at the end of it in reverse.
+     */
+    private static final class BitmapNode extends Node {
+
+        static final BitmapNode EMPTY = new BitmapNode(0, 0, new Object[0]);
+
+        private final int dataMap;
+        private final int nodeMap;
+        private final Object[] content;
+
+        private BitmapNode(int dataMap, int nodeMap, Object[] content) {
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.content = content;
+        }
+
+        @Override
+        Object get(String key, int hash, int shift) {
+            int bit = 1 << ((hash >>> shift) & 31);
+            if ((dataMap & bit) != 0) {
+                int index = 2 * Integer.bitCount(dataMap & (bit - 1));
+                return key.equals(content[index]) ? content[index + 1] : NOT_FOUND;
+            }
+            if ((nodeMap & bit) != 0) return this.nodeAt(bit).get(key, hash, shift + 5);
+            return NOT_FOUND;
+        }
+
+        @Override
+        Node put(String key, int hash, Object value, int shift, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & 31);
+            if ((dataMap & bit) != 0) {
+                int index = 2 * Integer.bitCount(dataMap & (bit - 1));
+                String existing = (String) content[index];
+                if (existing.equals(key)) {
+                    if (content[index + 1] == value) return this;
+                    Object[] copy = content.clone();
+                    copy[index + 1] = value;
+                    return new BitmapNode(dataMap, nodeMap, copy);
+                }
+                added[0] = true;
+                Node node = BitmapNode.merge(existing, existing.hashCode(), content[index + 1], key, hash, value, shift + 5);
+                // The entry moves out of the data at the start of the array, and the new node into the nodes at the end.
+                Object[] copy = new Object[content.length - 1];
+                int nodeIndex = content.length - 2 - Integer.bitCount(nodeMap & (bit - 1));
+                System.arraycopy(content, 0, copy, 0, index);
+                System.arraycopy(content, index + 2, copy, index, nodeIndex - index);
+                copy[nodeIndex] = node;
+                System.arraycopy(content, nodeIndex + 2, copy, nodeIndex + 1, content.length - nodeIndex - 2);
+                return new BitmapNode(dataMap ^ bit, nodeMap | bit, copy);
+            }
+            if ((nodeMap & bit) != 0) {
+                Node node = this.nodeAt(bit);
+                Node changed = node.put(key, hash, value, shift + 5, added);
+                if (changed == node) return this;
+                Object[] copy = content.clone();
+                copy[content.length - 1 - Integer.bitCount(nodeMap & (bit - 1))] = changed;
+                return new BitmapNode(dataMap, nodeMap, copy);
+            }
+            added[0] = true;
+            int index = 2 * Integer.bitCount(dataMap & (bit - 1));
+            Object[] copy = new Object[content.length + 2];
+            System.arraycopy(content, 0, copy, 0, index);
+            copy[index] = key;
+            copy[index + 1] = value;
+            System.arraycopy(content, index, copy, index + 2, content.length - index);
+            return new BitmapNode(dataMap | bit, nodeMap, copy);
+        }
+
+        @Override
+        Node remove(String key, int hash, int shift) {
+            int bit = 1 << ((hash >>> shift) & 31);
+            if ((dataMap & bit) != 0) {
+                int index = 2 * Integer.bitCount(dataMap & (bit - 1));
+                if (!key.equals(content[index])) return this;
+                Object[] copy = new Object[content.length - 2];
+                System.arraycopy(content, 0, copy, 0, index);
+                System.arraycopy(content, index + 2, copy, index, content.length - index - 2);
+                return new BitmapNode(dataMap ^ bit, nodeMap, copy);
+            }
+            if ((nodeMap & bit) == 0) return this;
+            Node node = this.nodeAt(bit);
+            Node changed = node.remove(key, hash, shift + 5);
+            if (changed == node) return this;
+            int nodeIndex = content.length - 1 - Integer.bitCount(nodeMap & (bit - 1));
+            if (!changed.single()) {
+                Object[] copy = content.clone();
+                copy[nodeIndex] = changed;
+                return new BitmapNode(dataMap, nodeMap, copy);
+            }
+            // The root always keeps its entries, as they are placed by the first five bits of their hashes.
+            if (shift > 0 && this.dataCount() == 0 && this.nodeCount() == 1) return changed;
+            // The node's last entry moves up into the current node's data.
+            int index = 2 * Integer.bitCount(dataMap & (bit - 1));
+            Object[] copy = new Object[content.length + 1];
+            System.arraycopy(content, 0, copy, 0, index);
+            copy[index] = changed.key(0);
+            copy[index + 1] = changed.value(0);
+            System.arraycopy(content, index, copy, index + 2, nodeIndex - index);
+            System.arraycopy(content, nodeIndex + 1, copy, nodeIndex + 2, content.length - nodeIndex - 1);
+            return new BitmapNode(dataMap | bit, nodeMap ^ bit, copy);
+        }
+
+        @Override
+        int dataCount() {
+            return Integer.bitCount(dataMap);
+        }
+
+        @Override
+        String key(int index) {
+            return (String) content[2 * index];
+        }
+
+        @Override
+        Object value(int index) {
+            return content[2 * index + 1];
+        }
+
+        @Override
+        int nodeCount() {
+            return Integer.bitCount(nodeMap);
+        }
+
+        @Override
+        Node node(int index) {
+            return (Node) content[content.length - 1 - index];
+        }
+
+        private Node nodeAt(int bit) {
+            return (Node) content[content.length - 1 - Integer.bitCount(nodeMap & (bit - 1))];
+        }
+
+        private static Node merge(String first, int firstHash, Object firstValue, String second, int secondHash, Object secondValue, int shift) {
+            if (shift > 30) return new CollisionNode(new String[]{first, second}, new Object[]{firstValue, secondValue});
+            int firstBit = 1 << ((firstHash >>> shift) & 31);
+            int secondBit = 1 << ((secondHash >>> shift) & 31);
+            if (firstBit == secondBit) {
+                Node node = BitmapNode.merge(first, firstHash, firstValue, second, secondHash, secondValue, shift + 5);
+                return new BitmapNode(0, firstBit, new Object[]{node});
+            }
+            return Integer.compareUnsigned(firstBit, secondBit) < 0
+                    ? new BitmapNode(firstBit | secondBit, 0, new Object[]{first, firstValue, second, secondValue})
+                    : new BitmapNode(firstBit | secondBit, 0, new Object[]{second, secondValue, first, firstValue});
+        }
+
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * A node for keys whose hashes are entirely the same, which are searched one by one.
+     */
+    private static final class CollisionNode extends Node {
+
+        private final String[] keys;
+        private final Object[] values;
+
+        private CollisionNode(String[] keys, Object[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        Object get(String key, int hash, int shift) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].equals(key)) return values[i];
+            }
+            return NOT_FOUND;
+        }
+
+        @Override
+        Node put(String key, int hash, Object value, int shift, boolean[] added) {
+            for (int i = 0; i < keys.length; i++) {
+                if (!keys[i].equals(key)) continue;
+                if (values[i] == value) return this;
+                Object[] copy = values.clone();
+                copy[i] = value;
+                return new CollisionNode(keys, copy);
+            }
+            added[0] = true;
+            String[] keys = Arrays.copyOf(this.keys, this.keys.length + 1);
+            Object[] values = Arrays.copyOf(this.values, this.values.length + 1);
+            keys[keys.length - 1] = key;
+            values[values.length - 1] = value;
+            return new CollisionNode(keys, values);
+        }
+
+        @Override
+        Node remove(String key, int hash, int shift) {
+            for (int i = 0; i < keys.length; i++) {
+                if (!keys[i].equals(key)) continue;
+                String[] keys = new String[this.keys.length - 1];
+                Object[] values = new Object[keys.length];
+                System.arraycopy(this.keys, 0, keys, 0, i);
+                System.arraycopy(this.keys, i + 1, keys, i, keys.length - i);
+                System.arraycopy(this.values, 0, values, 0, i);
+                System.arraycopy(this.values, i + 1, values, i, keys.length - i);
+                return new CollisionNode(keys, values);
+            }
+            return this;
+        }
+
+        @Override
+        int dataCount() {
+            return keys.length;
+        }
+
+        @Override
+        String key(int index) {
+            return keys[index];
+        }
+
+        @Override
+        Object value(int index) {
+            return values[index];
+        }
+
+        @Override
+        int nodeCount() {
+            return 0;
+        }
+
+        @Override
+        Node node(int index) {
+            throw new IndexOutOfBoundsException(index);
+        }
+
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Walks the trie depth first, keeping its place with a stack as deep as the trie can be.
+     */
+    private static final class EntryIterator implements Iterator<Entry<String, Object>> {
+
+        private final Node[] nodes = new Node[9];
+        private final int[] data = new int[9];
+        private final int[] children = new int[9];
+        private int depth;
+        private Entry<String, Object> next;
+
+        private EntryIterator(Node root) {
+            nodes[0] = root;
+            this.advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (next == null) throw new NoSuchElementException();
+            Entry<String, Object> entry = next;
+            this.advance();
+            return entry;
+        }
+
+        private void advance() {
+            while (depth >= 0) {
+                Node node = nodes[depth];
+                if (data[depth] < node.dataCount()) {
+                    int index = data[depth]++;
+                    next = new SimpleImmutableEntry<>(node.key(index), node.value(index));
+                    return;
+                }
+                if (children[depth] < node.nodeCount()) {
+                    Node child = node.node(children[depth]++);
+                    depth++;
+                    nodes[depth] = child;
+                    data[depth] = 0;
+                    children[depth] = 0;
+                    continue;
+                }
+                nodes[depth--] = null;
+            }
+            next = null;
+        }
+
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * An unmodifiable list whose elements have already been made immutable.
+     */
+    private static final class FrozenList extends AbstractList<Object> implements RandomAccess {
+
+        private final Object[] elements;
+
+        private FrozenList(Object[] elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        public Object get(int index) {
+            return elements[index];
+        }
+
+        @Override
+        public int size() {
+            return elements.length;
+        }
+
+    }
+    // </editor-fold>
+
+}
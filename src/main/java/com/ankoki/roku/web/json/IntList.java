@@ -0,0 +1,143 @@
+package com.ankoki.roku.web.json;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A list of ints backed by an {@code int[]}, rather than by boxed {@link Integer}s.
+ * <p>
+ * Numeric arrays are parsed into these when {@link JSONParser#setPrimitiveArrays(boolean)} is enabled,
+ * and they are written straight from the array by {@link JSONWriter}. The list can be changed like
+ * any other, but nulls and anything other than ints cannot be put in it.
+ */
+public class IntList extends AbstractList<Integer> implements RandomAccess {
+
+    private int[] values;
+    private int size;
+
+    /**
+     * Creates a new empty list.
+     */
+    public IntList() {
+        this(10);
+    }
+
+    /**
+     * Creates a new empty list with room for some values.
+     *
+     * @param capacity how many values there is room for before the array has to grow.
+     */
+    public IntList(int capacity) {
+        this.values = new int[capacity];
+    }
+
+    private IntList(int[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * Creates a list which uses the given array, without copying it.
+     * Changes to the array are seen by the list until values are added or removed.
+     *
+     * @param values the values.
+     * @return the list.
+     */
+    public static IntList of(int... values) {
+        return new IntList(values, values.length);
+    }
+
+    /**
+     * Gets a value without boxing it.
+     *
+     * @param index the index.
+     * @return the value.
+     */
+    public int getInt(int index) {
+        Objects.checkIndex(index, size);
+        return values[index];
+    }
+
+    /**
+     * Replaces a value without boxing it.
+     *
+     * @param index the index.
+     * @param value the new value.
+     * @return the old value.
+     */
+    public int setInt(int index, int value) {
+        Objects.checkIndex(index, size);
+        int old = values[index];
+        values[index] = value;
+        return old;
+    }
+
+    /**
+     * Adds a value to the end without boxing it.
+     *
+     * @param value the value.
+     */
+    public void addInt(int value) {
+        if (size == values.length) values = Arrays.copyOf(values, Math.max(10, size + (size >> 1)));
+        values[size++] = value;
+        modCount++;
+    }
+
+    /**
+     * Copies the values into a new array.
+     *
+     * @return the array.
+     */
+    public int[] toIntArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    @Override
+    public Integer get(int index) {
+        return this.getInt(index);
+    }
+
+    @Override
+    public Integer set(int index, Integer value) {
+        return this.setInt(index, value);
+    }
+
+    @Override
+    public boolean add(Integer value) {
+        this.addInt(value);
+        return true;
+    }
+
+    @Override
+    public void add(int index, Integer value) {
+        Objects.checkIndex(index, size + 1);
+        int element = value;
+        this.addInt(element);
+        System.arraycopy(values, index, values, index + 1, size - 1 - index);
+        values[index] = element;
+    }
+
+    @Override
+    public Integer remove(int index) {
+        Objects.checkIndex(index, size);
+        int old = values[index];
+        System.arraycopy(values, index + 1, values, index, size - 1 - index);
+        size--;
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+}
@@ -1,21 +1,17 @@
 package com.ankoki.roku.web.json;
 
-import com.ankoki.roku.misc.Pair;
-import com.ankoki.roku.misc.StringUtils;
 import com.ankoki.roku.web.json.exceptions.MalformedJsonException;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class JSON extends LinkedHashMap<String, Object> implements Map<String, Object> {
 
-    private static final Pattern KEY_PATTERN = Pattern.compile("\"(.+)?\":[ ]?");
-    private static final Pattern KEY_VALUE_PATTERN = Pattern.compile("\"(.+)?\":[ ]?(.+)");
-
     // <editor-fold defaultstate="collapsed" desc="External Static Methods">
     /**
      * Converts a given Map to a JSON String.
@@ -26,244 +22,110 @@ public class JSON extends LinkedHashMap<String, Object> implements Map<String, O
      * @return the converted text.
      */
     public static String toString(Map map, boolean pretty, int indentation) {
-        return new StringifyJSON(map, pretty, indentation).toString();
+        return JSONWriter.toString(map, pretty ? indentation : 0);
     }
-    // </editor-fold>
 
-    // <editor-fold defaultstate="collapsed" desc="Internal Static Methods">
     /**
-     * <strong>INTERNAL USE ONLY</strong>
-     * <p>
-     * Matches a key value line into a pair.
+     * Parses JSON text.
      *
-     * @param line the line to match.
-     * @return the key value pair.
-     * @throws MalformedJsonException if the line does not match the regex.
+     * @param json the text.
+     * @return the parsed JSON.
+     * @throws MalformedJsonException if there is an issue with the JSON.
      */
-    private static Pair<String, Object> matchLine(String line) throws MalformedJsonException {
-        if (line.endsWith("}")) line = StringUtils.replaceLast(line, "}", "");
-        Matcher matcher = KEY_VALUE_PATTERN.matcher(line);
-        if (matcher.matches()) {
-            String key = matcher.group(1);
-            String value = matcher.group(2);
-            return new Pair<>(key, JSON.parseValue(value));
-        }
-        throw new MalformedJsonException("There was an issue parsing a line. Malformed Line: '" + line + "'");
+    public static JSON parse(String json) throws MalformedJsonException {
+        return JSONParser.local().parse(json);
     }
 
     /**
-     * <strong>INTERNAL USE ONLY</strong>
-     * <p>
-     * Parses a given value.
+     * Parses UTF-8 encoded JSON, without decoding it to a String first.
      *
-     * @param value into its linked type.
-     * @return the correct object.
-     * @throws MalformedJsonException if there's an error in the value.
+     * @param json the bytes.
+     * @return the parsed JSON.
+     * @throws MalformedJsonException if there is an issue with the JSON.
      */
-    private static Object parseValue(String value) throws MalformedJsonException {
-        if (value.endsWith("}")) value = StringUtils.replaceLast(value, "}", "");
-        value = StringUtils.unescape(value);
-        if (value.startsWith("\"")) {
-            if (!value.endsWith("\"")) throw new MalformedJsonException("Quote found with no closing quote. Malformed value: '" + value + "'");
-            value = value.replaceFirst("\"", "");
-            StringBuilder builder = new StringBuilder(value);
-            builder.setLength(builder.length() - 1);
-            value = builder.toString();
-            return value;
-        }
-        try {
-            return Integer.parseInt(value);
-        } catch (NumberFormatException ignored) {}
-        try {
-            return Long.parseLong(value);
-        } catch (NumberFormatException ignored) {}
-        try {
-            return Double.parseDouble(value);
-        } catch (NumberFormatException ignored) {}
-        try {
-            return Float.parseFloat(value);
-        } catch (NumberFormatException ignored) {}
-        if (value.equalsIgnoreCase("TRUE")) return true;
-        if (value.equalsIgnoreCase("FALSE")) return false;
-        if (value.equalsIgnoreCase("NULL")) return null;
-        throw new MalformedJsonException("There was an issue parsing a value. Malformed value: '" + value + "'");
+    public static JSON parse(byte[] json) throws MalformedJsonException {
+        return JSONParser.local().parse(json);
     }
 
     /**
-     * <strong>INTERNAL USE ONLY</strong>
-     * <p>
-     * Gets a pair with the key of a map and the parsed map.
+     * Parses the remaining bytes of a buffer as UTF-8 encoded JSON, without decoding it to a String first.
+     * The buffer's position is not changed.
      *
-     * @param line the line of map, including ones that are contained.
-     * @param fullJson true if it is the whole json, false if it is a map.
-     * @return a pair containing the map key and the map contents.
-     * @throws MalformedJsonException if the JSON is malformed.
+     * @param json the buffer.
+     * @return the parsed JSON.
+     * @throws MalformedJsonException if there is an issue with the JSON.
      */
-    private static Pair<String, Map<String, Object>> parseMap(String line, boolean fullJson) throws MalformedJsonException {
-        Map<String, Object> currentMap = new HashMap<>();
-        String key = null;
-        if (!fullJson) key = line.split(":\\{")[0];
-        boolean first = true;
-        boolean inQuotes = false;
-        boolean inArray = false;
-        boolean inMap = false;
-        boolean ignoreNext = false;
-
-        if (!fullJson && line.replace(key, "").equals("{}")) return new Pair<>(key, new HashMap<>());
-        else if (line.equals("{}")) return new Pair<>(key, new HashMap<>());
-
-        int mapDepth = 0, arrayDepth = 0, index = 0;
-
-        StringBuilder currentLine = new StringBuilder();
-        String currentKey = "";
-        List<Object> currentList = new ArrayList<>();
-
-        final char[] array = line.toCharArray();
-
-        for (char ch : array) {
-            if (first) {
-                first = false;
-                continue;
-            }
-            index++;
-
-            if (ignoreNext) {
-                ignoreNext = false;
-                continue;
-            }
-
-            switch (ch) {
-
-                case '"':
-                    if (inQuotes && !StringUtils.isEscaped(index, array)) {
-                        currentLine.append(ch);
-                        inQuotes = false;
-                    } else if (!inQuotes) {
-                        inQuotes = true;
-                        currentLine
-                                .append(ch);
-                    } else currentLine.append(ch);
-                    break;
-
-                case ':':
-                    if (!inQuotes && !inMap && inArray) throw new MalformedJsonException("Colon found in an array outside of quotes.");
-                    currentLine.append(ch);
-                    break;
-
-                case ',':
-                    if (inQuotes) currentLine.append(ch);
-                        // Earliest , can be is at "{\"\"," (index 3)
-                    else if (index < 3) throw new MalformedJsonException();
-
-                    else if (inArray) {
-                        if (inMap) {
-                            currentLine.append(ch);
-                        } else if (currentLine.length() > 0) {
-                            currentList.add(StringUtils.removeQuotes(currentLine.toString()));
-                            currentLine.setLength(0);
-                        }
-                    } else if (inMap) currentLine.append(ch);
-
-                    else if (currentLine.length() > 0) {
-                        Pair<String, Object> pair = JSON.matchLine(currentLine.toString());
-                        currentMap.put(pair.getFirst(), pair.getSecond());
-                        currentLine.setLength(0);
-                    } //else throw new MalformedJsonException();
-                    break;
-
-                case '[':
-                    if (!inQuotes && inArray) throw new MalformedJsonException("Opening array found inside of an array.");
-                    if (inQuotes) {
-                      currentLine.append(ch);
-                    } else if (inArray) {
-                        arrayDepth++;
-                    } else {
-                        inArray = true;
-                        Matcher matcher = KEY_PATTERN.matcher(currentLine.toString());
-                        if (matcher.matches()) currentKey = matcher.group(1);
-                        else throw new MalformedJsonException();
-                        currentLine.setLength(0);
-                    }
-                    break;
-
-                case ']':
-                    if (!inQuotes && !inArray) throw new MalformedJsonException("Closing array found outside of an array.");
-                    if (!inQuotes) {
-                        if (arrayDepth == 0) {
-                            if (currentLine.toString().equals("[]")) currentMap.put(currentKey, new ArrayList<>());
-                            else {
-                                currentList.add(StringUtils.removeQuotes(currentLine.toString()));
-                                currentMap.put(currentKey, currentList);
-                            }
-                            inArray = false;
-                            currentList = new ArrayList<>();
-                            currentKey = "";
-                            currentLine.setLength(0);
-                            ignoreNext = true;
-                        } else arrayDepth--;
-                    } else currentLine.append(ch);
-                    break;
+    public static JSON parse(ByteBuffer json) throws MalformedJsonException {
+        return JSONParser.local().parse(json);
+    }
 
-                case '{':
-                    currentLine.append(ch);
-                    if (!inQuotes) {
-                        inMap = true;
-                        mapDepth++;
-                    }
-                    break;
+    /**
+     * Parses a UTF-8 encoded JSON file by mapping it into memory, rather than reading it onto the heap.
+     * See {@link JSONParser#parse(Path)}, including how long the file stays mapped.
+     *
+     * @param path the file.
+     * @return the parsed JSON.
+     * @throws IOException            if the file could not be read.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    public static JSON parse(Path path) throws IOException, MalformedJsonException {
+        return JSONParser.local().parse(path);
+    }
 
-                case '}':
-                    currentLine.append(ch);
-                    if (!inQuotes) {
-                        if (inMap) {
-                            mapDepth--;
-                            if (mapDepth == 0) {
-                                if (inArray) {
-                                    Map<String, Object> map = JSON.parseMap(currentLine.toString(), true).getSecond();
-                                    Object fin = map;
-                                    if (map.containsKey("-x")) {
-                                        Class<? extends JSONSerializable> serializable = JSONSerializable.get((String) map.get("-x"));
-                                        if (serializable != null)
-                                            fin = JSONSerializable.deserializeHelper(serializable, map);
-                                    }
-                                    currentList.add(fin);
-                                }
-                                else {
-                                    String temp = currentLine.toString().split(":\\{")[0];
-                                    String k = StringUtils.removeQuotes(temp);
-                                    String l = currentLine.toString().replaceFirst("\"" + k + "\":", "");
-                                    Pair<String, Map<String, Object>> pair = JSON.parseMap(l, false);
-                                    Map<String, Object> map = pair.getSecond();
-                                    Object fin = map;
-                                    if (map.containsKey("-x")) {
-                                        Class<? extends JSONSerializable> serializable = JSONSerializable.get((String) map.get("-x"));
-                                        if (serializable != null)
-                                            fin = JSONSerializable.deserializeHelper(serializable, map);
-                                    }
-                                    currentMap.put(k, fin);
-                                }
-                                currentLine.setLength(0);
-                                inMap = false;
-                            } else if (mapDepth < 0) throw new MalformedJsonException("Closing map found outside of a map.");
+    /**
+     * Compiles a JSON Pointer such as {@code /display/icon/item}, or a JSONPath such as {@code $.criteria.*}.
+     * See {@link JSONPath}.
+     *
+     * @param path the path.
+     * @return the compiled path, which can be reused.
+     * @throws IllegalArgumentException if the path is not valid.
+     */
+    public static JSONPath compilePath(String path) {
+        return JSONPath.compile(path);
+    }
 
-                        } else if (currentLine.length() != 1) {
-                            if (index + 1 != array.length) throw new MalformedJsonException();
-                            Pair<String, Object> pair = JSON.matchLine(currentLine.toString());
-                            currentMap.put(pair.getFirst(), pair.getSecond());
-                            currentLine.setLength(0);
-                        }
-                    }
-                    break;
+    /**
+     * Reads JSON text straight into an object of a class, such as a record, without building a map for it.
+     * See {@link JSONBinder}.
+     *
+     * @param json the text.
+     * @param type the class.
+     * @param <T>  the type.
+     * @return the object.
+     * @throws MalformedJsonException   if there is an issue with the JSON, or it does not fit the class.
+     * @throws IllegalArgumentException if the class cannot be bound to.
+     */
+    public static <T> T bind(String json, Class<T> type) throws MalformedJsonException {
+        return JSONBinder.of(type).read(json);
+    }
 
-                case ' ':
-                    if (inQuotes) currentLine.append(" ");
-                    break;
+    /**
+     * Converts already parsed JSON into an object of a class, such as a record. See {@link JSONBinder}.
+     *
+     * @param json the JSON.
+     * @param type the class.
+     * @param <T>  the type.
+     * @return the object.
+     * @throws ClassCastException       if the JSON does not fit the class.
+     * @throws MalformedJsonException   if a number does not fit its field.
+     * @throws IllegalArgumentException if the class cannot be bound to.
+     */
+    public static <T> T bind(Map<String, ?> json, Class<T> type) {
+        return JSONBinder.of(type).fromJSON(json);
+    }
 
-                default:
-                    currentLine.append(ch);
-            }
-        }
-        return new Pair<>(key, currentMap);
+    /**
+     * Converts an object of a bound class, such as a record, into JSON. See {@link JSONBinder}.
+     *
+     * @param value the object.
+     * @return the JSON.
+     * @throws IllegalArgumentException if the object is not bound as a JSON object.
+     */
+    @SuppressWarnings("unchecked")
+    public static JSON unbind(Object value) {
+        Object json = ((JSONBinder<Object>) JSONBinder.of(value.getClass())).toJSON(value);
+        if (json instanceof JSON result) return result;
+        throw new IllegalArgumentException("'" + value.getClass().getName() + "' is not bound as a JSON object.");
     }
     // </editor-fold>
 
@@ -286,13 +148,18 @@ public class JSON extends LinkedHashMap<String, Object> implements Map<String, O
 
     /**
      * Converts a file that contains ONLY JSON content to a JSONWrapper.
+     * <p>
+     * The file is streamed and closed once read. To map it into memory instead, use {@link #parse(Path)}.
      *
      * @param file the file to read from.
      * @throws MalformedJsonException if the JSON is malformed.
      * @throws IOException            if any exception is thrown.
      */
     public JSON(File file) throws IOException, MalformedJsonException {
-        this(String.join("", Files.readAllLines(file.toPath())));
+        try (JSONReader reader = new JSONReader(Files.newInputStream(file.toPath()))) {
+            reader.readObject(this);
+            reader.peek();
+        }
     }
 
     /**
@@ -302,9 +169,7 @@ public class JSON extends LinkedHashMap<String, Object> implements Map<String, O
      * @throws MalformedJsonException thrown if there is an issue with the JSON.
      */
     public JSON(String json) throws MalformedJsonException {
-        if (!json.startsWith("{") && !json.endsWith("}")) throw new MalformedJsonException("JSON must start with { and end with }.");
-        Pair<String, Map<String, Object>> pair = JSON.parseMap(json, true);
-        this.putAll(pair.getSecond());
+        JSONParser.local().parseInto(json, this);
     }
     // </editor-fold>
 
@@ -337,140 +202,72 @@ public class JSON extends LinkedHashMap<String, Object> implements Map<String, O
     public String toPrettyString(int indentation) {
         return JSON.toString(this, true, indentation);
     }
-    // </editor-fold>
-
-    // <editor-fold defaultstate="collapsed" desc="Inner Classes">
-    private static class StringifyJSON {
-
-        private final String string;
-        private int currentIndentation;
-        private final int indentationAmount;
 
-        public StringifyJSON(Map<?, ?> wrapper, boolean pretty, int indentation) {
-            indentationAmount = indentation;
-            StringBuilder builder = new StringBuilder("{" + (pretty ? "\n" + " ".repeat(indentation) : ""));
-            currentIndentation = indentation;
-
-            for (Object o : wrapper.entrySet()) {
-                Entry entry = (Entry) o;
-                builder.append("\"")
-                        .append(entry.getKey())
-                        .append("\"")
-                        .append(pretty ? ": " : ":")
-                        .append(this.writeJson(entry.getValue(), pretty))
-                        .append(",")
-                        .append(pretty ? "\n" : "")
-                        .append(pretty ? " ".repeat(currentIndentation) : "");
-            }
-            int clone = currentIndentation;
-            builder.setLength(builder.length() - (pretty ? clone + 2 : 1));
-            string = builder
-                    .append(pretty ? "\n" : "")
-                    .append("}")
-                    .toString();
-        }
-        // </editor-fold>
+    /**
+     * Writes the current JSONWrapper as JSON text, without building it in memory first.
+     *
+     * @param out where to write to.
+     * @throws IOException if the output could not be written to.
+     */
+    public void write(Appendable out) throws IOException {
+        new JSONWriter(out).writeValue(this);
+    }
 
-        // <editor-fold defaultstate="collapsed" desc="Internal Object Methods">
-        /**
-         * <strong>INTERNAL USE ONLY</strong>
-         * <p>
-         * Writes a JSON string from an object.
-         *
-         * @param value the object.
-         * @return the finished JSON text.
-         */
-        private String writeJson(Object value, boolean pretty) {
-            StringBuilder builder = new StringBuilder();
-            if (value instanceof Number number) {
-                if (number instanceof Double d && d.isInfinite() && d.isNaN()) builder.append("null");
-                else if (number instanceof Float f && f.isInfinite() && f.isNaN()) builder.append("null");
-                else builder.append(number);
-            } else if (value instanceof JSONSerializable serializable) {
-                Map<String, Object> map = serializable.serialize();
-                map.put("-x", serializable.getClass().getName());
-                builder.append(this.writeJson(map, pretty));
-            }
-            else if (value instanceof Boolean bool) builder.append(bool);
-            else if (value instanceof List list) builder.append(this.writeJson(list, pretty));
-            else if (value instanceof Object[] array) builder.append(this.writeJson(array, pretty));
-            else if (value instanceof Map map) builder.append(this.writeJson(map, pretty));
-            else if (value instanceof Pair<?,?> pair) builder.append(this.writeJson((Map) pair.getSecond(), pretty));
-            else if (value == null) builder.append(pretty ? " null" : "null");
-            else builder.append("\"")
-                        .append(StringUtils.escape(value))
-                        .append("\"");
-            return builder.toString();
-        }
+    /**
+     * Writes the current JSONWrapper as UTF-8 encoded JSON text, without building it in memory first.
+     * The stream is flushed, but not closed.
+     *
+     * @param out where to write to.
+     * @throws IOException if the output could not be written to.
+     */
+    public void write(OutputStream out) throws IOException {
+        JSONWriter writer = new JSONWriter(out);
+        writer.writeValue(this);
+        writer.flush();
+    }
 
-        /**
-         * <strong>INTERNAL USE ONLY</strong>
-         * <p>
-         * Writes a JSON string from a list.
-         *
-         * @param list the list.
-         * @return the finished JSON text.
-         */
-        private String writeJson(List<?> list, boolean pretty) {
-            return this.writeJson(list.toArray(new Object[0]), pretty);
-        }
+    /**
+     * Works out the patch which turns the current JSONWrapper into another.
+     * See {@link JSONPatch#diff(Object, Object)}.
+     *
+     * @param target the JSON to turn into.
+     * @return the patch.
+     */
+    public JSONPatch diff(Map<String, Object> target) {
+        return JSONPatch.diff(this, target);
+    }
 
-        /**
-         * <strong>INTERNAL USE ONLY</strong>
-         * <p>
-         * Writes a JSON string from an array.
-         *
-         * @param array the array to use.
-         * @return the finished JSON text.
-         */
-        private <T> String writeJson(T[] array, boolean pretty) {
-            if (array.length <= 0) return "[]";
-            StringBuilder builder = new StringBuilder("[");
-            currentIndentation = currentIndentation + indentationAmount;
-            for (Object value : array) {
-                builder.append(pretty ? "\n" + " ".repeat(currentIndentation) : "")
-                        .append(this.writeJson(value, pretty))
-                        .append(",");
-            }
-            builder.setLength(builder.length() > 1 ? builder.length() - 1 : builder.length());
-            currentIndentation = currentIndentation - indentationAmount;
-            return builder.append(pretty ? "\n" + " ".repeat(currentIndentation) : "")
-                    .append("]")
-                    .toString();
-        }
+    /**
+     * Applies a patch to the current JSONWrapper in place.
+     *
+     * @param patch the patch.
+     * @return the current JSONWrapper, for chaining.
+     * @throws com.ankoki.roku.web.json.exceptions.JSONPatchException if the patch could not be applied.
+     */
+    public JSON apply(JSONPatch patch) {
+        patch.apply(this);
+        return this;
+    }
 
-        /**
-         * <strong>INTERNAL USE ONLY</strong>
-         * <p>
-         * Writes a JSON string from a map.
-         *
-         * @param map the map.
-         * @return the finished JSON text.
-         */
-        private String writeJson(Map<?, ?> map, boolean pretty) {
-            if (map.isEmpty()) return "{}";
-            currentIndentation = currentIndentation + indentationAmount;
-            StringBuilder builder = new StringBuilder("{" + (pretty ? "\n" + " ".repeat(currentIndentation) : ""));
-            for (Object o : map.entrySet()) {
-                Entry entry = (Entry) o;
-                builder.append("\"")
-                        .append(entry.getKey())
-                        .append("\"")
-                        .append(": ");
-                builder.append(this.writeJson(entry.getValue(), pretty))
-                        .append(",")
-                        .append(pretty ? "\n" + " ".repeat(currentIndentation) : "");
-            }
-            int clone = currentIndentation;
-            builder.setLength(builder.length() > 1 ? builder.length() - (pretty ? clone + 2 : 1) : builder.length());
-            currentIndentation = currentIndentation - indentationAmount;
-            builder.append(pretty ? "\n" + " ".repeat(currentIndentation) + "}" : "}");
-            return builder.toString();
-        }
+    /**
+     * Applies an RFC 7396 merge patch to the current JSONWrapper in place.
+     * See {@link JSONPatch#mergePatch(Map, Map)}.
+     *
+     * @param patch the merge patch.
+     * @return the current JSONWrapper, for chaining.
+     */
+    public JSON merge(Map<String, ?> patch) {
+        JSONPatch.mergePatch(this, patch);
+        return this;
+    }
 
-        public String toString() {
-            return string;
-        }
+    /**
+     * Copies the current JSONWrapper, and everything inside it, into an {@link ImmutableJSON}.
+     *
+     * @return the copy.
+     */
+    public ImmutableJSON toImmutable() {
+        return ImmutableJSON.of(this);
     }
     // </editor-fold>
 
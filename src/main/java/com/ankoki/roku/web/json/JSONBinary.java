@@ -0,0 +1,512 @@
+package com.ankoki.roku.web.json;
+
+import com.ankoki.roku.misc.Pair;
+import com.ankoki.roku.web.json.exceptions.MalformedJsonException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes and reads JSON trees in a compact binary form, which is quicker to read and smaller
+ * than text. Anything {@link JSONWriter#writeValue(Object)} can write can be written, and reads
+ * back as the same tree parsing the text would give, {@link JSONSerializable}s included.
+ * <p>
+ * Each value starts with a one byte tag saying what it is. Whole numbers are written as
+ * variable length integers, so small ones only take a byte or two, and doubles as their eight
+ * bytes. Strings of up to 64 characters are remembered as they are written, and a repeat of
+ * one is written as its index instead; this is what makes the keys of a list of similar objects
+ * close to free.
+ * <p>
+ * For example:
+ * <pre>{@code
+ * byte[] bytes = JSONBinary.toBytes(json);
+ * JSON read = (JSON) JSONBinary.read(bytes);
+ * }</pre>
+ */
+public final class JSONBinary {
+
+    private static final byte NULL = 0,
+            FALSE = 1,
+            TRUE = 2,
+            INT = 3,
+            LONG = 4,
+            DOUBLE = 5,
+            FLOAT = 6,
+            BIG_INTEGER = 7,
+            BIG_DECIMAL = 8,
+            STRING = 9,
+            OBJECT = 10,
+            ARRAY = 11,
+            SERIALIZABLE = 12,
+            NUMBER = 13;
+
+    private static final int MAX_REFERENCE_LENGTH = KeyTable.MAX_LENGTH;
+    private static final int MAX_REFERENCES = 1 << 16;
+
+    private JSONBinary() {}
+
+    // <editor-fold defaultstate="collapsed" desc="Writing">
+    /**
+     * Writes a value to a stream. The stream is not flushed or closed.
+     *
+     * @param value the value, usually a {@link JSON}.
+     * @param out   the stream.
+     * @throws IOException if the stream could not be written to.
+     */
+    public static void write(Object value, OutputStream out) throws IOException {
+        Encoder encoder = new Encoder(out, null);
+        encoder.value(value);
+        encoder.flush();
+    }
+
+    /**
+     * Writes a value into a buffer, from its position.
+     *
+     * @param value  the value, usually a {@link JSON}.
+     * @param buffer the buffer.
+     * @throws java.nio.BufferOverflowException if the buffer does not have enough room.
+     */
+    public static void write(Object value, ByteBuffer buffer) {
+        Encoder encoder = new Encoder(null, buffer);
+        try {
+            encoder.value(value);
+            encoder.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Writes a value into a new array.
+     *
+     * @param value the value, usually a {@link JSON}.
+     * @return the bytes.
+     */
+    public static byte[] toBytes(Object value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            JSONBinary.write(value, out);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out.toByteArray();
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Reading">
+    /**
+     * Reads a value from a stream.
+     * <p>
+     * The stream is read in blocks, so bytes past the end of the value may be taken from it.
+     *
+     * @param in the stream.
+     * @return the value.
+     * @throws IOException            if the stream could not be read.
+     * @throws MalformedJsonException if the bytes are not a value.
+     */
+    public static Object read(InputStream in) throws IOException, MalformedJsonException {
+        return new Decoder(in, ByteBuffer.allocate(8192).flip()).value();
+    }
+
+    /**
+     * Reads a value from a buffer, from its position.
+     * The buffer is left positioned after the value.
+     *
+     * @param buffer the buffer.
+     * @return the value.
+     * @throws MalformedJsonException if the bytes are not a value.
+     */
+    public static Object read(ByteBuffer buffer) throws MalformedJsonException {
+        ByteBuffer view = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        try {
+            return new Decoder(null, view).value();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            buffer.position(buffer.position() + view.position());
+        }
+    }
+
+    /**
+     * Reads a value from an array.
+     *
+     * @param bytes the array.
+     * @return the value.
+     * @throws MalformedJsonException if the bytes are not a value.
+     */
+    public static Object read(byte[] bytes) throws MalformedJsonException {
+        return JSONBinary.read(ByteBuffer.wrap(bytes));
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Internal Classes">
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Encodes values into a block of bytes, which is handed to the stream or buffer whenever it fills.
+     */
+    private static final class Encoder {
+
+        private final OutputStream out;
+        private final ByteBuffer target;
+        private final byte[] buffer = new byte[8192];
+        private int count;
+        private final Map<String, Integer> references = new HashMap<>();
+
+        private Encoder(OutputStream out, ByteBuffer target) {
+            this.out = out;
+            this.target = target;
+        }
+
+        private void value(Object value) throws IOException {
+            if (value == null) this.write(NULL);
+            else if (value instanceof String string) {
+                this.write(STRING);
+                this.string(string);
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                this.intValue(((Number) value).intValue());
+            } else if (value instanceof Long number) this.longValue(number);
+            else if (value instanceof Double number) this.doubleValue(number);
+            else if (value instanceof Float number) {
+                this.ensure(5);
+                buffer[count++] = FLOAT;
+                int bits = Float.floatToRawIntBits(number);
+                for (int shift = 24; shift >= 0; shift -= 8) buffer[count++] = (byte) (bits >>> shift);
+            } else if (value instanceof Boolean bool) this.write(bool ? TRUE : FALSE);
+            else if (value instanceof Map<?, ?> map) {
+                this.write(OBJECT);
+                this.members(map, false);
+            } else if (value instanceof IntList list) {
+                this.write(ARRAY);
+                this.varint(list.size());
+                for (int i = 0; i < list.size(); i++) this.intValue(list.getInt(i));
+            } else if (value instanceof LongList list) {
+                this.write(ARRAY);
+                this.varint(list.size());
+                for (int i = 0; i < list.size(); i++) this.longValue(list.getLong(i));
+            } else if (value instanceof DoubleList list) {
+                this.write(ARRAY);
+                this.varint(list.size());
+                for (int i = 0; i < list.size(); i++) this.doubleValue(list.getDouble(i));
+            } else if (value instanceof List<?> list) {
+                this.write(ARRAY);
+                this.varint(list.size());
+                for (Object element : list) this.value(element);
+            } else if (value instanceof Object[] array) {
+                this.write(ARRAY);
+                this.varint(array.length);
+                for (Object element : array) this.value(element);
+            } else if (value instanceof int[] array) {
+                this.write(ARRAY);
+                this.varint(array.length);
+                for (int element : array) this.intValue(element);
+            } else if (value instanceof long[] array) {
+                this.write(ARRAY);
+                this.varint(array.length);
+                for (long element : array) this.longValue(element);
+            } else if (value instanceof double[] array) {
+                this.write(ARRAY);
+                this.varint(array.length);
+                for (double element : array) this.doubleValue(element);
+            } else if (value instanceof BigInteger number) {
+                this.write(BIG_INTEGER);
+                this.bytes(number.toByteArray());
+            } else if (value instanceof BigDecimal number) {
+                this.write(BIG_DECIMAL);
+                this.varint(JSONBinary.zigzag(number.scale()));
+                this.bytes(number.unscaledValue().toByteArray());
+            } else if (value instanceof JSONNumber number) {
+                this.write(NUMBER);
+                this.string(number.toString());
+            } else if (value instanceof JSONSerializable serializable) {
+                this.write(SERIALIZABLE);
+                this.string(serializable.getClass().getName());
+                this.members(serializable.serialize(), true);
+            } else if (value instanceof Pair<?, ?> pair) this.value(pair.getSecond());
+            else if (value instanceof Number number) {
+                this.write(NUMBER);
+                this.string(number.toString());
+            } else {
+                this.write(STRING);
+                this.string(String.valueOf(value));
+            }
+        }
+
+        private void intValue(int value) throws IOException {
+            this.write(INT);
+            this.varint(JSONBinary.zigzag(value));
+        }
+
+        private void longValue(long value) throws IOException {
+            this.write(LONG);
+            this.varint(JSONBinary.zigzag(value));
+        }
+
+        private void doubleValue(double value) throws IOException {
+            this.ensure(9);
+            buffer[count++] = DOUBLE;
+            long bits = Double.doubleToRawLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) buffer[count++] = (byte) (bits >>> shift);
+        }
+
+        private void members(Map<?, ?> map, boolean tagged) throws IOException {
+            int size = map.size();
+            if (tagged && map.containsKey("-x")) size--;
+            this.varint(size);
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                String key = String.valueOf(entry.getKey());
+                if (tagged && key.equals("-x")) continue;
+                this.string(key);
+                this.value(entry.getValue());
+            }
+        }
+
+        /**
+         * Writes a string, or a reference to it if it has been written before.
+         * The lowest bit of the header says which of the two follows.
+         */
+        private void string(String string) throws IOException {
+            int length = string.length();
+            if (length <= MAX_REFERENCE_LENGTH) {
+                Integer reference = references.get(string);
+                if (reference != null) {
+                    this.varint(((long) reference << 1) | 1);
+                    return;
+                }
+                if (references.size() < MAX_REFERENCES) references.put(string, references.size());
+            }
+            // ASCII is by far the most common, and is copied over without encoding.
+            if (length < buffer.length / 2) {
+                this.ensure(length + 10);
+                int header = count;
+                this.varint((long) length << 1);
+                int start = count;
+                int i = 0;
+                while (i < length) {
+                    char c = string.charAt(i);
+                    if (c >= 0x80) break;
+                    buffer[count++] = (byte) c;
+                    i++;
+                }
+                if (i == length) return;
+                count = header;
+            }
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            this.varint((long) bytes.length << 1);
+            this.raw(bytes);
+        }
+
+        private void bytes(byte[] bytes) throws IOException {
+            this.varint(bytes.length);
+            this.raw(bytes);
+        }
+
+        private void raw(byte[] bytes) throws IOException {
+            if (bytes.length > buffer.length - count) {
+                this.flush();
+                if (bytes.length > buffer.length) {
+                    if (out != null) out.write(bytes);
+                    else target.put(bytes);
+                    return;
+                }
+            }
+            System.arraycopy(bytes, 0, buffer, count, bytes.length);
+            count += bytes.length;
+        }
+
+        private void varint(long value) throws IOException {
+            this.ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[count++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[count++] = (byte) value;
+        }
+
+        private void write(byte b) throws IOException {
+            this.ensure(1);
+            buffer[count++] = b;
+        }
+
+        private void ensure(int length) throws IOException {
+            if (buffer.length - count < length) this.flush();
+        }
+
+        private void flush() throws IOException {
+            if (count == 0) return;
+            if (out != null) out.write(buffer, 0, count);
+            else target.put(buffer, 0, count);
+            count = 0;
+        }
+
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Decodes values from a buffer, refilling it from the stream if there is one.
+     */
+    private static final class Decoder {
+
+        private final InputStream in;
+        private ByteBuffer buffer;
+        private final List<String> references = new ArrayList<>();
+
+        private Decoder(InputStream in, ByteBuffer buffer) {
+            this.in = in;
+            this.buffer = buffer;
+        }
+
+        private Object value() throws IOException {
+            int tag = this.read();
+            return switch (tag) {
+                case NULL -> null;
+                case FALSE -> false;
+                case TRUE -> true;
+                case INT -> (int) JSONBinary.unzigzag(this.varint());
+                case LONG -> JSONBinary.unzigzag(this.varint());
+                case DOUBLE -> {
+                    this.ensure(8);
+                    yield buffer.getDouble();
+                }
+                case FLOAT -> {
+                    this.ensure(4);
+                    yield buffer.getFloat();
+                }
+                case BIG_INTEGER -> new BigInteger(this.bytes());
+                case BIG_DECIMAL -> {
+                    int scale = (int) JSONBinary.unzigzag(this.varint());
+                    yield new BigDecimal(new BigInteger(this.bytes()), scale);
+                }
+                case STRING -> this.string();
+                case NUMBER -> new JSONNumber(this.string());
+                case OBJECT -> this.members(new JSON());
+                case ARRAY -> {
+                    int size = this.size();
+                    List<Object> list = new ArrayList<>(Math.min(size, 1024));
+                    for (int i = 0; i < size; i++) list.add(this.value());
+                    yield list;
+                }
+                case SERIALIZABLE -> {
+                    JSON json = new JSON();
+                    json.put("-x", this.string());
+                    yield JSONSerializable.resolve(this.members(json));
+                }
+                default -> throw new MalformedJsonException("Unknown binary JSON tag " + tag + ".");
+            };
+        }
+
+        private JSON members(JSON json) throws IOException {
+            int size = this.size();
+            for (int i = 0; i < size; i++) {
+                String key = this.string();
+                json.put(key, this.value());
+            }
+            return json;
+        }
+
+        private String string() throws IOException {
+            long header = this.varint();
+            if ((header & 1) == 1) {
+                long reference = header >>> 1;
+                if (reference >= references.size()) throw new MalformedJsonException("Unknown binary JSON string reference " + reference + ".");
+                return references.get((int) reference);
+            }
+            long length = header >>> 1;
+            if (length > Integer.MAX_VALUE) throw new MalformedJsonException("Binary JSON string is too long.");
+            String string;
+            if (length <= buffer.capacity()) {
+                this.ensure((int) length);
+                if (buffer.hasArray()) {
+                    string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), (int) length, StandardCharsets.UTF_8);
+                    buffer.position(buffer.position() + (int) length);
+                } else {
+                    byte[] bytes = new byte[(int) length];
+                    buffer.get(bytes);
+                    string = new String(bytes, StandardCharsets.UTF_8);
+                }
+            } else string = new String(this.raw((int) length), StandardCharsets.UTF_8);
+            if (string.length() <= MAX_REFERENCE_LENGTH && references.size() < MAX_REFERENCES) references.add(string);
+            return string;
+        }
+
+        private byte[] bytes() throws IOException {
+            return this.raw(this.size());
+        }
+
+        private byte[] raw(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, 0, read);
+            while (read < length) {
+                if (in == null) throw new MalformedJsonException("Binary JSON ended unexpectedly.");
+                int n = in.read(bytes, read, length - read);
+                if (n < 0) throw new MalformedJsonException("Binary JSON ended unexpectedly.");
+                read += n;
+            }
+            return bytes;
+        }
+
+        private int size() throws IOException {
+            long size = this.varint();
+            if (size > Integer.MAX_VALUE) throw new MalformedJsonException("Binary JSON size is too large.");
+            return (int) size;
+        }
+
+        private long varint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = this.read();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new MalformedJsonException("Malformed binary JSON integer.");
+        }
+
+        private int read() throws IOException {
+            if (!buffer.hasRemaining()) this.ensure(1);
+            return buffer.get() & 0xFF;
+        }
+
+        /**
+         * Makes sure the buffer holds at least the given number of bytes, which must fit in it.
+         */
+        private void ensure(int length) throws IOException {
+            if (buffer.remaining() >= length) return;
+            if (in == null) throw new MalformedJsonException("Binary JSON ended unexpectedly.");
+            buffer.compact();
+            while (buffer.position() < length) {
+                int n = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                if (n < 0) {
+                    buffer.flip();
+                    throw new MalformedJsonException("Binary JSON ended unexpectedly.");
+                }
+                buffer.position(buffer.position() + n);
+            }
+            buffer.flip();
+        }
+
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    // </editor-fold>
+
+}
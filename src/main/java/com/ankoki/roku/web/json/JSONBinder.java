@@ -0,0 +1,1061 @@
+package com.ankoki.roku.web.json;
+
+import com.ankoki.roku.web.json.exceptions.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Binds JSON to plain Java objects, such as records, and back, so their fields do not have to be cast
+ * out of a map by hand.
+ * <p>
+ * Records are bound through their canonical constructor, and other classes through a constructor
+ * without parameters and their fields, leaving out static and transient ones. The binder for a class
+ * is built once, with {@link MethodHandle}s onto its constructor, accessors and fields, and kept for as
+ * long as the class is loaded. Text is read from a {@link JSONReader} straight into the object, without
+ * building a map for it first, for example:
+ * <pre>{@code
+ * record Home(String name, int x, int y, int z, List<String> trusted) {}
+ *
+ * Home home = JSON.bind(text, Home.class);
+ * String written = JSONBinder.of(Home.class).write(home);
+ * }</pre>
+ * Fields can be strings, primitives and their boxes, {@link BigInteger}s, {@link BigDecimal}s, enums,
+ * arrays, collections, maps, {@link JSONSerializable}s, other bound classes, and classes with a static
+ * {@code valueOf(String)} or {@code fromString(String)} method, such as {@link java.util.UUID}. Fields of
+ * type Object or Number are given whatever the JSON holds. Keys with no matching field are skipped, and
+ * fields with no matching key keep their default value. Numbers must fit their field: whole number
+ * fields reject fractions and values out of range, and {@link BigInteger}s and {@link BigDecimal}s
+ * are read from the text as written.
+ *
+ * @param <T> the type.
+ */
+public final class JSONBinder<T> {
+
+    private static final ClassValue<JSONBinder<?>> BINDERS = new ClassValue<>() {
+        @Override
+        protected JSONBinder<?> computeValue(Class<?> type) {
+            return new JSONBinder<>(ADAPTERS.get(type));
+        }
+    };
+
+    private static final ClassValue<Adapter> ADAPTERS = new ClassValue<>() {
+        @Override
+        protected Adapter computeValue(Class<?> type) {
+            return JSONBinder.create(type);
+        }
+    };
+
+    private final Adapter adapter;
+
+    private JSONBinder(Adapter adapter) {
+        this.adapter = adapter;
+    }
+
+    /**
+     * Gets the binder for a class, building it the first time it is asked for.
+     *
+     * @param type the class.
+     * @param <T>  the type.
+     * @return the binder.
+     * @throws IllegalArgumentException if the class cannot be bound to.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> JSONBinder<T> of(Class<T> type) {
+        return (JSONBinder<T>) BINDERS.get(type);
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Reading">
+    /**
+     * Reads the next value of a reader into an object.
+     *
+     * @param reader the reader.
+     * @return the object, or null if the value is null.
+     * @throws IOException if the source could not be read.
+     */
+    @SuppressWarnings("unchecked")
+    public T read(JSONReader reader) throws IOException {
+        return (T) JSONBinder.read(adapter, reader);
+    }
+
+    /**
+     * Reads JSON text into an object.
+     *
+     * @param json the text.
+     * @return the object, or null if the text is null.
+     * @throws MalformedJsonException if there is an issue with the JSON, or it does not fit the type.
+     */
+    public T read(String json) throws MalformedJsonException {
+        try {
+            JSONReader reader = new JSONReader(new StringReader(json));
+            T value = this.read(reader);
+            reader.peek();
+            return value;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Converts an already parsed value, such as a {@link JSON}, into an object.
+     *
+     * @param value the parsed value.
+     * @return the object, or null if the value is null.
+     * @throws ClassCastException     if the value does not fit the type.
+     * @throws MalformedJsonException if a number does not fit its field, such as 1.5 for an int.
+     */
+    @SuppressWarnings("unchecked")
+    public T fromJSON(Object value) {
+        return value == null ? null : (T) adapter.fromTree(value);
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Writing">
+    /**
+     * Writes an object.
+     *
+     * @param writer the writer.
+     * @param value  the object.
+     * @throws IOException if the output could not be written to.
+     */
+    public void write(JSONWriter writer, T value) throws IOException {
+        JSONBinder.write(adapter, writer, value);
+    }
+
+    /**
+     * Writes an object to text.
+     *
+     * @param value the object.
+     * @return the text.
+     */
+    public String write(T value) {
+        StringBuilder builder = new StringBuilder();
+        try {
+            this.write(new JSONWriter(builder), value);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Converts an object into what parsing its JSON would give, such as a {@link JSON} for a record.
+     *
+     * @param value the object.
+     * @return the parsed value.
+     */
+    public Object toJSON(T value) {
+        return value == null ? null : adapter.toTree(value);
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Internal Methods">
+    private static Object read(Adapter adapter, JSONReader reader) throws IOException {
+        if (reader.peek() != JSONToken.NULL) return adapter.read(reader);
+        reader.nextNull();
+        return null;
+    }
+
+    private static void write(Adapter adapter, JSONWriter writer, Object value) throws IOException {
+        if (value == null) writer.nullValue();
+        else adapter.write(writer, value);
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Gets the adapter for a type, following the type arguments of collections and maps.
+     *
+     * @param type the type.
+     * @return the adapter.
+     * @throws IllegalArgumentException if the type cannot be bound to.
+     */
+    private static Adapter adapter(Type type) {
+        if (type instanceof Class<?> clazz) return ADAPTERS.get(clazz);
+        if (type instanceof ParameterizedType parameterized) {
+            Class<?> raw = (Class<?>) parameterized.getRawType();
+            Type[] arguments = parameterized.getActualTypeArguments();
+            if (Collection.class.isAssignableFrom(raw) || raw == Iterable.class)
+                return new CollectionAdapter(JSONBinder.collection(raw), JSONBinder.adapter(arguments[0]));
+            if (Map.class.isAssignableFrom(raw))
+                return new MapAdapter(JSONBinder.map(raw), JSONBinder.keys(JSONBinder.raw(arguments[0])), JSONBinder.adapter(arguments[1]));
+            return ADAPTERS.get(raw);
+        }
+        if (type instanceof GenericArrayType array) {
+            Type component = array.getGenericComponentType();
+            return new ArrayAdapter(JSONBinder.raw(component), JSONBinder.adapter(component));
+        }
+        return ADAPTERS.get(JSONBinder.raw(type));
+    }
+
+    private static Class<?> raw(Type type) {
+        if (type instanceof Class<?> clazz) return clazz;
+        if (type instanceof ParameterizedType parameterized) return (Class<?>) parameterized.getRawType();
+        if (type instanceof GenericArrayType array) return JSONBinder.raw(array.getGenericComponentType()).arrayType();
+        if (type instanceof WildcardType wildcard) return JSONBinder.raw(wildcard.getUpperBounds()[0]);
+        if (type instanceof TypeVariable<?> variable) return JSONBinder.raw(variable.getBounds()[0]);
+        throw new IllegalArgumentException("Cannot bind to " + type + ".");
+    }
+
+    private static Adapter create(Class<?> type) {
+        if (type == String.class) return new ScalarAdapter(ScalarAdapter.STRING);
+        if (type == int.class || type == Integer.class) return new ScalarAdapter(ScalarAdapter.INT);
+        if (type == long.class || type == Long.class) return new ScalarAdapter(ScalarAdapter.LONG);
+        if (type == double.class || type == Double.class) return new ScalarAdapter(ScalarAdapter.DOUBLE);
+        if (type == float.class || type == Float.class) return new ScalarAdapter(ScalarAdapter.FLOAT);
+        if (type == short.class || type == Short.class) return new ScalarAdapter(ScalarAdapter.SHORT);
+        if (type == byte.class || type == Byte.class) return new ScalarAdapter(ScalarAdapter.BYTE);
+        if (type == boolean.class || type == Boolean.class) return new ScalarAdapter(ScalarAdapter.BOOLEAN);
+        if (type == char.class || type == Character.class) return new ScalarAdapter(ScalarAdapter.CHAR);
+        if (type == BigInteger.class) return new ScalarAdapter(ScalarAdapter.BIG_INTEGER);
+        if (type == BigDecimal.class) return new ScalarAdapter(ScalarAdapter.BIG_DECIMAL);
+        if (type == Object.class || type == Number.class) return new ScalarAdapter(ScalarAdapter.ANY);
+        if (type.isEnum()) return new EnumAdapter(type);
+        if (type.isArray()) return new ArrayAdapter(type.getComponentType(), ADAPTERS.get(type.getComponentType()));
+        if (Collection.class.isAssignableFrom(type) || type == Iterable.class)
+            return new CollectionAdapter(JSONBinder.collection(type), new ScalarAdapter(ScalarAdapter.ANY));
+        if (Map.class.isAssignableFrom(type))
+            return new MapAdapter(JSONBinder.map(type), key -> key, new ScalarAdapter(ScalarAdapter.ANY));
+        if (JSONSerializable.class.isAssignableFrom(type)) return new SerializableAdapter(type);
+        MethodHandle parser = JSONBinder.parser(type);
+        if (parser != null) return new TextAdapter(parser);
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers()))
+            throw new IllegalArgumentException("Cannot bind to '" + type.getName() + "', as it is abstract.");
+        return new BeanAdapter(type);
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Finds a static {@code valueOf(String)} or {@code fromString(String)} method which makes an object
+     * of the type from its text.
+     *
+     * @param type the type.
+     * @return a handle onto the method, taking a String and returning an Object, or null if there is none.
+     */
+    private static MethodHandle parser(Class<?> type) {
+        for (String name : new String[]{"valueOf", "fromString"}) {
+            try {
+                Method method = type.getMethod(name, String.class);
+                if (!Modifier.isStatic(method.getModifiers()) || !type.isAssignableFrom(method.getReturnType())) continue;
+                return JSONBinder.access(type, method, lookup -> lookup.unreflect(method))
+                        .asType(MethodType.methodType(Object.class, String.class));
+            } catch (NoSuchMethodException ignored) {}
+        }
+        return null;
+    }
+
+    private static Supplier<Collection<Object>> collection(Class<?> type) {
+        if (type.isAssignableFrom(ArrayList.class)) return ArrayList::new;
+        if (type.isAssignableFrom(LinkedHashSet.class)) return LinkedHashSet::new;
+        if (type.isAssignableFrom(TreeSet.class) || type == SortedSet.class) return TreeSet::new;
+        if (type.isAssignableFrom(ArrayDeque.class) || type == Queue.class) return ArrayDeque::new;
+        return JSONBinder.constructor(type);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Supplier<Map<Object, Object>> map(Class<?> type) {
+        if (type.isAssignableFrom(JSON.class)) return () -> (Map) new JSON();
+        if (type.isAssignableFrom(TreeMap.class) || type == SortedMap.class || type == NavigableMap.class) return TreeMap::new;
+        if (type.isAssignableFrom(ConcurrentHashMap.class) || type == ConcurrentMap.class) return ConcurrentHashMap::new;
+        return JSONBinder.constructor(type);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <C> Supplier<C> constructor(Class<?> type) {
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers()))
+            throw new IllegalArgumentException("Cannot bind to '" + type.getName() + "', as it is abstract.");
+        MethodHandle handle = JSONBinder.constructorHandle(type);
+        return () -> {
+            try {
+                return (C) (Object) handle.invokeExact();
+            } catch (Throwable ex) {
+                throw JSONBinder.rethrow(ex);
+            }
+        };
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Gets a handle onto the constructor of a class which takes no parameters.
+     *
+     * @param type the class.
+     * @return the handle, taking nothing and returning an Object.
+     * @throws IllegalArgumentException if the class has no such constructor.
+     */
+    private static MethodHandle constructorHandle(Class<?> type) {
+        Constructor<?> constructor;
+        try {
+            constructor = type.getDeclaredConstructor();
+        } catch (NoSuchMethodException ex) {
+            throw new IllegalArgumentException("Cannot bind to '" + type.getName() + "', as it is not a record and has no constructor without parameters.");
+        }
+        return JSONBinder.access(type, constructor, lookup -> lookup.unreflectConstructor(constructor))
+                .asType(MethodType.methodType(Object.class));
+    }
+
+    private static Function<String, Object> keys(Class<?> type) {
+        if (type == String.class || type == Object.class) return key -> key;
+        if (type == Integer.class) return Integer::valueOf;
+        if (type == Long.class) return Long::valueOf;
+        Adapter adapter = ADAPTERS.get(type);
+        if (adapter instanceof EnumAdapter enums) return enums::constant;
+        if (adapter instanceof TextAdapter text) return text::parse;
+        throw new IllegalArgumentException("Cannot bind to maps with keys of '" + type.getName() + "'.");
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Gets a handle onto a member of a class, through a lookup with private access to the class if it can,
+     * or else by making the member accessible, as classes in other plugins' class loaders may need.
+     *
+     * @param type        the class.
+     * @param member      the member.
+     * @param unreflector gets the handle from a lookup.
+     * @return the handle.
+     * @throws IllegalArgumentException if the member cannot be accessed.
+     */
+    private static MethodHandle access(Class<?> type, AccessibleObject member, Unreflector unreflector) {
+        try {
+            return unreflector.unreflect(MethodHandles.privateLookupIn(type, MethodHandles.lookup()));
+        } catch (IllegalAccessException ignored) {}
+        try {
+            member.setAccessible(true);
+            return unreflector.unreflect(MethodHandles.lookup());
+        } catch (IllegalAccessException | RuntimeException ex) {
+            throw new IllegalArgumentException("Cannot bind to '" + type.getName() + "', as " + member + " cannot be accessed.", ex);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable throwable) {
+        if (throwable instanceof RuntimeException ex) return ex;
+        if (throwable instanceof Error error) throw error;
+        return new IllegalStateException(throwable);
+    }
+
+    private interface Unreflector {
+        MethodHandle unreflect(MethodHandles.Lookup lookup) throws IllegalAccessException;
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Converts values of one type. Values given to and returned from each method are never null.
+     */
+    private abstract static class Adapter {
+
+        /**
+         * Reads the next value of a reader, which is not null.
+         */
+        abstract Object read(JSONReader reader) throws IOException;
+
+        abstract void write(JSONWriter writer, Object value) throws IOException;
+
+        /**
+         * Converts a value of a parsed tree.
+         */
+        abstract Object fromTree(Object value);
+
+        /**
+         * Converts a value into what a parsed tree would hold.
+         */
+        abstract Object toTree(Object value);
+
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Converts strings, numbers, booleans and characters, or anything at all for Object and Number.
+     */
+    private static final class ScalarAdapter extends Adapter {
+
+        static final int STRING = 0,
+                INT = 1,
+                LONG = 2,
+                DOUBLE = 3,
+                FLOAT = 4,
+                SHORT = 5,
+                BYTE = 6,
+                BOOLEAN = 7,
+                CHAR = 8,
+                BIG_INTEGER = 9,
+                BIG_DECIMAL = 10,
+                ANY = 11;
+
+        private final int kind;
+
+        private ScalarAdapter(int kind) {
+            this.kind = kind;
+        }
+
+        @Override
+        Object read(JSONReader reader) throws IOException {
+            return switch (kind) {
+                case STRING -> reader.nextString();
+                case INT -> reader.nextInt();
+                case LONG -> reader.nextLong();
+                case DOUBLE -> reader.nextDouble();
+                case FLOAT -> this.fromTree(reader.nextDouble());
+                case SHORT, BYTE -> this.fromTree(reader.nextInt());
+                case BIG_INTEGER, BIG_DECIMAL -> this.fromTree(reader.nextBigDecimal());
+                case BOOLEAN -> reader.nextBoolean();
+                case CHAR -> this.fromTree(reader.nextString());
+                default -> reader.nextValue();
+            };
+        }
+
+        @Override
+        void write(JSONWriter writer, Object value) throws IOException {
+            switch (kind) {
+                case STRING -> writer.value((String) value);
+                case BOOLEAN -> writer.value((boolean) value);
+                case CHAR -> writer.value(String.valueOf(value));
+                case ANY -> {
+                    if (value.getClass().isRecord()) ADAPTERS.get(value.getClass()).write(writer, value);
+                    else writer.writeValue(value);
+                }
+                default -> writer.value((Number) value);
+            }
+        }
+
+        @Override
+        Object fromTree(Object value) {
+            return switch (kind) {
+                case INT -> (int) ScalarAdapter.whole(value, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                case LONG -> ScalarAdapter.whole(value, Long.MIN_VALUE, Long.MAX_VALUE);
+                case DOUBLE -> ((Number) value).doubleValue();
+                case FLOAT -> {
+                    float number = ((Number) value).floatValue();
+                    if (Float.isInfinite(number) && !Double.isInfinite(((Number) value).doubleValue()))
+                        throw new MalformedJsonException("Expected a number which fits in a float, but was " + value + ".");
+                    yield number;
+                }
+                case SHORT -> (short) ScalarAdapter.whole(value, Short.MIN_VALUE, Short.MAX_VALUE);
+                case BYTE -> (byte) ScalarAdapter.whole(value, Byte.MIN_VALUE, Byte.MAX_VALUE);
+                case CHAR -> {
+                    if (value instanceof Character) yield value;
+                    String string = (String) value;
+                    if (string.length() != 1) throw new MalformedJsonException("Expected a single character, but found '" + string + "'.");
+                    yield string.charAt(0);
+                }
+                case BIG_INTEGER -> {
+                    if (value instanceof BigInteger) yield value;
+                    try {
+                        yield ScalarAdapter.decimal(value).toBigIntegerExact();
+                    } catch (ArithmeticException ex) {
+                        throw new MalformedJsonException("Expected a whole number, but was " + value + ".");
+                    }
+                }
+                case BIG_DECIMAL -> ScalarAdapter.decimal(value);
+                case STRING -> (String) value;
+                case BOOLEAN -> (Boolean) value;
+                default -> value;
+            };
+        }
+
+        @Override
+        Object toTree(Object value) {
+            if (kind == CHAR) return String.valueOf(value);
+            if (kind == ANY && value.getClass().isRecord()) return ADAPTERS.get(value.getClass()).toTree(value);
+            return value;
+        }
+
+        /**
+         * Converts a number to a long, as long as it is whole and in range.
+         *
+         * @throws MalformedJsonException if the number has a fraction, or is out of range.
+         */
+        private static long whole(Object value, long min, long max) {
+            long whole;
+            if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) whole = ((Number) value).longValue();
+            else try {
+                whole = ScalarAdapter.decimal(value).longValueExact();
+            } catch (ArithmeticException ex) {
+                throw new MalformedJsonException("Expected a whole number from " + min + " to " + max + ", but was " + value + ".");
+            }
+            if (whole < min || whole > max)
+                throw new MalformedJsonException("Expected a whole number from " + min + " to " + max + ", but was " + value + ".");
+            return whole;
+        }
+
+        private static BigDecimal decimal(Object value) {
+            if (value instanceof BigDecimal decimal) return decimal;
+            if (value instanceof JSONNumber number) return number.toBigDecimal();
+            if (value instanceof BigInteger number) return new BigDecimal(number);
+            try {
+                return new BigDecimal(value.toString());
+            } catch (NumberFormatException ex) {
+                throw new MalformedJsonException("Expected a finite number, but was " + value + ".");
+            }
+        }
+
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Converts enums by the names of their constants.
+     */
+    private static final class EnumAdapter extends Adapter {
+
+        private final Class<?> type;
+        private final Map<String, Object> constants = new HashMap<>();
+
+        private EnumAdapter(Class<?> type) {
+            this.type = type;
+            for (Object constant : type.getEnumConstants()) constants.put(((Enum<?>) constant).name(), constant);
+        }
+
+        Object constant(String name) {
+            Object constant = constants.get(name);
+            if (constant == null) throw new MalformedJsonException("'" + name + "' is not a constant of " + type.getName() + ".");
+            return constant;
+        }
+
+        @Override
+        Object read(JSONReader reader) throws IOException {
+            return this.constant(reader.nextString());
+        }
+
+        @Override
+        void write(JSONWriter writer, Object value) throws IOException {
+            writer.value(((Enum<?>) value).name());
+        }
+
+        @Override
+        Object fromTree(Object value) {
+            return type.isInstance(value) ? value : this.constant((String) value);
+        }
+
+        @Override
+        Object toTree(Object value) {
+            return ((Enum<?>) value).name();
+        }
+
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Converts objects written as their text, through a static method which parses the text.
+     */
+    private static final class TextAdapter extends Adapter {
+
+        private final MethodHandle parser;
+
+        private TextAdapter(MethodHandle parser) {
+            this.parser = parser;
+        }
+
+        Object parse(String text) {
+            try {
+                return (Object) parser.invokeExact(text);
+            } catch (Throwable ex) {
+                throw JSONBinder.rethrow(ex);
+            }
+        }
+
+        @Override
+        Object read(JSONReader reader) throws IOException {
+            return this.parse(reader.nextString());
+        }
+
+        @Override
+        void write(JSONWriter writer, Object value) throws IOException {
+            writer.value(value.toString());
+        }
+
+        @Override
+        Object fromTree(Object value) {
+            return value instanceof String text ? this.parse(text) : value;
+        }
+
+        @Override
+        Object toTree(Object value) {
+            return value.toString();
+        }
+
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Converts {@link JSONSerializable}s as they are usually parsed and written, deserializing untagged
+     * objects through the class's own deserialize method.
+     */
+    private static final class SerializableAdapter extends Adapter {
+
+        private final Class<? extends JSONSerializable> type;
+
+        @SuppressWarnings("unchecked")
+        private SerializableAdapter(Class<?> type) {
+            this.type = (Class<? extends JSONSerializable>) type;
+        }
+
+        @Override
+        Object read(JSONReader reader) throws IOException {
+            return this.fromTree(reader.nextValue());
+        }
+
+        @Override
+        void write(JSONWriter writer, Object value) throws IOException {
+            writer.writeValue(value);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Object fromTree(Object value) {
+            return type.isInstance(value) ? value : JSONSerializable.deserializeHelper(type, (Map<String, Object>) value);
+        }
+
+        @Override
+        Object toTree(Object value) {
+            return value;
+        }
+
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Converts collections, written as arrays.
+     */
+    private static final class CollectionAdapter extends Adapter {
+
+        private final Supplier<Collection<Object>> factory;
+        private final Adapter elements;
+
+        private CollectionAdapter(Supplier<Collection<Object>> factory, Adapter elements) {
+            this.factory = factory;
+            this.elements = elements;
+        }
+
+        @Override
+        Object read(JSONReader reader) throws IOException {
+            Collection<Object> collection = factory.get();
+            reader.beginArray();
+            while (reader.hasNext()) collection.add(JSONBinder.read(elements, reader));
+            reader.endArray();
+            return collection;
+        }
+
+        @Override
+        void write(JSONWriter writer, Object value) throws IOException {
+            writer.beginArray();
+            for (Object element : (Iterable<?>) value) JSONBinder.write(elements, writer, element);
+            writer.endArray();
+        }
+
+        @Override
+        Object fromTree(Object value) {
+            Collection<Object> collection = factory.get();
+            for (Object element : (Iterable<?>) value) collection.add(element == null ? null : elements.fromTree(element));
+            return collection;
+        }
+
+        @Override
+        Object toTree(Object value) {
+            List<Object> list = new ArrayList<>();
+            for (Object element : (Iterable<?>) value) list.add(element == null ? null : elements.toTree(element));
+            return list;
+        }
+
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Converts arrays. Arrays of ints, longs and doubles are read without boxing.
+     */
+    private static final class ArrayAdapter extends Adapter {
+
+        private final Class<?> component;
+        private final Adapter elements;
+
+        private ArrayAdapter(Class<?> component, Adapter elements) {
+            this.component = component;
+            this.elements = elements;
+        }
+
+        @Override
+        Object read(JSONReader reader) throws IOException {
+            reader.beginArray();
+            int size = 0;
+            Object array;
+            if (component == int.class) {
+                int[] values = new int[8];
+                for (; reader.hasNext(); size++) {
+                    if (size == values.length) values = Arrays.copyOf(values, size * 2);
+                    values[size] = reader.nextInt();
+                }
+                array = Arrays.copyOf(values, size);
+            } else if (component == long.class) {
+                long[] values = new long[8];
+                for (; reader.hasNext(); size++) {
+                    if (size == values.length) values = Arrays.copyOf(values, size * 2);
+                    values[size] = reader.nextLong();
+                }
+                array = Arrays.copyOf(values, size);
+            } else if (component == double.class) {
+                double[] values = new double[8];
+                for (; reader.hasNext(); size++) {
+                    if (size == values.length) values = Arrays.copyOf(values, size * 2);
+                    values[size] = reader.nextDouble();
+                }
+                array = Arrays.copyOf(values, size);
+            } else {
+                List<Object> list = new ArrayList<>();
+                while (reader.hasNext()) list.add(JSONBinder.read(elements, reader));
+                array = this.array(list);
+            }
+            reader.endArray();
+            return array;
+        }
+
+        @Override
+        void write(JSONWriter writer, Object value) throws IOException {
+            if (value instanceof int[] || value instanceof long[] || value instanceof double[]) {
+                writer.writeValue(value);
+                return;
+            }
+            writer.beginArray();
+            for (int i = 0, length = Array.getLength(value); i < length; i++) JSONBinder.write(elements, writer, Array.get(value, i));
+            writer.endArray();
+        }
+
+        @Override
+        Object fromTree(Object value) {
+            List<?> list = (List<?>) value;
+            List<Object> converted = new ArrayList<>(list.size());
+            for (Object element : list) converted.add(element == null ? null : elements.fromTree(element));
+            return this.array(converted);
+        }
+
+        @Override
+        Object toTree(Object value) {
+            int length = Array.getLength(value);
+            List<Object> list = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                Object element = Array.get(value, i);
+                list.add(element == null ? null : elements.toTree(element));
+            }
+            return list;
+        }
+
+        private Object array(List<Object> list) {
+            Object array = Array.newInstance(component, list.size());
+            for (int i = 0; i < list.size(); i++) {
+                Object element = list.get(i);
+                // Nulls cannot be put in arrays of primitives, so those elements are left as 0.
+                if (element != null || !component.isPrimitive()) Array.set(array, i, element);
+            }
+            return array;
+        }
+
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Converts maps, written as objects.
+     */
+    private static final class MapAdapter extends Adapter {
+
+        private final Supplier<Map<Object, Object>> factory;
+        private final Function<String, Object> keys;
+        private final Adapter values;
+
+        private MapAdapter(Supplier<Map<Object, Object>> factory, Function<String, Object> keys, Adapter values) {
+            this.factory = factory;
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        Object read(JSONReader reader) throws IOException {
+            Map<Object, Object> map = factory.get();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                Object key = keys.apply(reader.nextName());
+                map.put(key, JSONBinder.read(values, reader));
+            }
+            reader.endObject();
+            return map;
+        }
+
+        @Override
+        void write(JSONWriter writer, Object value) throws IOException {
+            writer.beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                writer.name(entry.getKey() instanceof Enum<?> constant ? constant.name() : String.valueOf(entry.getKey()));
+                JSONBinder.write(values, writer, entry.getValue());
+            }
+            writer.endObject();
+        }
+
+        @Override
+        Object fromTree(Object value) {
+            Map<Object, Object> map = factory.get();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                Object element = entry.getValue();
+                map.put(keys.apply(String.valueOf(entry.getKey())), element == null ? null : values.fromTree(element));
+            }
+            return map;
+        }
+
+        @Override
+        Object toTree(Object value) {
+            JSON json = new JSON();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                Object element = entry.getValue();
+                String key = entry.getKey() instanceof Enum<?> constant ? constant.name() : String.valueOf(entry.getKey());
+                json.put(key, element == null ? null : values.toTree(element));
+            }
+            return json;
+        }
+
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Converts records and other classes bound through their fields, written as objects.
+     * The class is only looked into the first time it is used, so classes can hold themselves.
+     */
+    private static final class BeanAdapter extends Adapter {
+
+        private final Class<?> type;
+        private volatile Bean bean;
+
+        private BeanAdapter(Class<?> type) {
+            this.type = type;
+        }
+
+        private Bean bean() {
+            Bean bean = this.bean;
+            // Two threads may both build it, but they build the same thing.
+            if (bean == null) this.bean = bean = new Bean(type);
+            return bean;
+        }
+
+        @Override
+        Object read(JSONReader reader) throws IOException {
+            Bean bean = this.bean();
+            Object[] values = bean.record ? bean.defaults.clone() : null;
+            Object instance = bean.record ? null : bean.create();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                Property property = bean.names.get(reader.nextName());
+                if (property == null) {
+                    reader.skipValue();
+                    continue;
+                }
+                Object value = JSONBinder.read(property.adapter(), reader);
+                if (value == null && property.primitive()) continue;
+                if (values != null) values[property.index()] = value;
+                else property.set(instance, value);
+            }
+            reader.endObject();
+            return values != null ? bean.construct(values) : instance;
+        }
+
+        @Override
+        void write(JSONWriter writer, Object value) throws IOException {
+            writer.beginObject();
+            for (Property property : this.bean().properties) {
+                writer.name(property.name());
+                JSONBinder.write(property.adapter(), writer, property.get(value));
+            }
+            writer.endObject();
+        }
+
+        @Override
+        Object fromTree(Object value) {
+            Bean bean = this.bean();
+            if (type.isInstance(value)) return value;
+            Map<?, ?> map = (Map<?, ?>) value;
+            Object[] values = bean.record ? bean.defaults.clone() : null;
+            Object instance = bean.record ? null : bean.create();
+            for (Property property : bean.properties) {
+                if (!map.containsKey(property.name())) continue;
+                Object element = map.get(property.name());
+                if (element == null && property.primitive()) continue;
+                element = element == null ? null : property.adapter().fromTree(element);
+                if (values != null) values[property.index()] = element;
+                else property.set(instance, element);
+            }
+            return values != null ? bean.construct(values) : instance;
+        }
+
+        @Override
+        Object toTree(Object value) {
+            JSON json = new JSON();
+            for (Property property : this.bean().properties) {
+                Object element = property.get(value);
+                json.put(property.name(), element == null ? null : property.adapter().toTree(element));
+            }
+            return json;
+        }
+
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * How a record or other class is made and taken apart.
+     */
+    private static final class Bean {
+
+        private final boolean record;
+        private final Property[] properties;
+        private final Map<String, Property> names = new HashMap<>();
+        private final Object[] defaults;
+        private final MethodHandle constructor;
+
+        private Bean(Class<?> type) {
+            this.record = type.isRecord();
+            List<Property> properties = new ArrayList<>();
+            if (record) {
+                RecordComponent[] components = type.getRecordComponents();
+                Class<?>[] types = new Class<?>[components.length];
+                for (int i = 0; i < components.length; i++) {
+                    RecordComponent component = components[i];
+                    Method accessor = component.getAccessor();
+                    MethodHandle getter = JSONBinder.access(type, accessor, lookup -> lookup.unreflect(accessor));
+                    properties.add(new Property(component.getName(), i, component.getType().isPrimitive(),
+                            JSONBinder.adapter(component.getGenericType()), getter.asType(MethodType.methodType(Object.class, Object.class)), null));
+                    types[i] = component.getType();
+                }
+                Constructor<?> canonical;
+                try {
+                    canonical = type.getDeclaredConstructor(types);
+                } catch (NoSuchMethodException ex) {
+                    throw new IllegalArgumentException("Cannot bind to '" + type.getName() + "', as it has no canonical constructor.", ex);
+                }
+                this.constructor = JSONBinder.access(type, canonical, lookup -> lookup.unreflectConstructor(canonical))
+                        .asSpreader(Object[].class, types.length)
+                        .asType(MethodType.methodType(Object.class, Object[].class));
+            } else {
+                this.constructor = JSONBinder.constructorHandle(type);
+                // Fields of subclasses hide fields with the same name in superclasses.
+                Set<String> seen = new HashSet<>();
+                List<Field> fields = new ArrayList<>();
+                for (Class<?> clazz = type; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+                    List<Field> declared = new ArrayList<>();
+                    for (Field field : clazz.getDeclaredFields()) {
+                        int modifiers = field.getModifiers();
+                        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic() || !seen.add(field.getName())) continue;
+                        declared.add(field);
+                    }
+                    fields.addAll(0, declared);
+                }
+                for (int i = 0; i < fields.size(); i++) {
+                    Field field = fields.get(i);
+                    MethodHandle getter = JSONBinder.access(type, field, lookup -> lookup.unreflectGetter(field));
+                    MethodHandle setter = JSONBinder.access(type, field, lookup -> lookup.unreflectSetter(field));
+                    properties.add(new Property(field.getName(), i, field.getType().isPrimitive(), JSONBinder.adapter(field.getGenericType()),
+                            getter.asType(MethodType.methodType(Object.class, Object.class)),
+                            setter.asType(MethodType.methodType(void.class, Object.class, Object.class))));
+                }
+            }
+            this.properties = properties.toArray(new Property[0]);
+            this.defaults = new Object[this.properties.length];
+            for (Property property : this.properties) {
+                names.put(property.name(), property);
+                // An array of a primitive starts out holding its default, such as 0 or false.
+                if (record && property.primitive())
+                    defaults[property.index()] = Array.get(Array.newInstance(type.getRecordComponents()[property.index()].getType(), 1), 0);
+            }
+        }
+
+        Object create() {
+            try {
+                return (Object) constructor.invokeExact();
+            } catch (Throwable ex) {
+                throw JSONBinder.rethrow(ex);
+            }
+        }
+
+        Object construct(Object[] values) {
+            try {
+                return (Object) constructor.invokeExact(values);
+            } catch (Throwable ex) {
+                throw JSONBinder.rethrow(ex);
+            }
+        }
+
+    }
+
+    /**
+     * A field, or component of a record.
+     *
+     * @param name      the key it is written under.
+     * @param index     its index among the others.
+     * @param primitive true if it cannot be null.
+     * @param adapter   converts its values.
+     * @param getter    gets its value, taking the object and returning an Object.
+     * @param setter    sets its value, taking the object and the value, or null for records.
+     */
+    private record Property(String name, int index, boolean primitive, Adapter adapter, MethodHandle getter, MethodHandle setter) {
+
+        Object get(Object instance) {
+            try {
+                return (Object) getter.invokeExact(instance);
+            } catch (Throwable ex) {
+                throw JSONBinder.rethrow(ex);
+            }
+        }
+
+        void set(Object instance, Object value) {
+            try {
+                setter.invokeExact(instance, value);
+            } catch (Throwable ex) {
+                throw JSONBinder.rethrow(ex);
+            }
+        }
+
+    }
+    // </editor-fold>
+
+}
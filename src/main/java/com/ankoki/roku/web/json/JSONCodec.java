@@ -0,0 +1,60 @@
+package com.ankoki.roku.web.json;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Converts a {@link JSONSerializable} to and from JSON without any reflection.
+ * <p>
+ * Codecs are usually generated at compile time for classes marked with
+ * {@link com.ankoki.roku.web.json.annotations.GenerateCodec}, but can also be written by hand.
+ * Once registered with {@link JSONSerializable#register(JSONCodec)}, {@link JSONWriter} and
+ * {@link JSONReader} stream the object straight through the codec rather than building a map for it.
+ *
+ * @param <T> the type of object.
+ */
+public interface JSONCodec<T extends JSONSerializable> {
+
+    /**
+     * Gets the class this codec converts.
+     *
+     * @return the class.
+     */
+    Class<T> type();
+
+    /**
+     * Serializes an object into a map.
+     *
+     * @param value the object.
+     * @return the map containing all data.
+     */
+    Map<String, Object> serialize(T value);
+
+    /**
+     * Deserializes an object from a map.
+     *
+     * @param map the map.
+     * @return the object.
+     */
+    T deserialize(Map<String, Object> map);
+
+    /**
+     * Writes an object, including its "-x" tag.
+     *
+     * @param writer the writer.
+     * @param value  the object.
+     * @throws IOException if the output could not be written to.
+     */
+    void write(JSONWriter writer, T value) throws IOException;
+
+    /**
+     * Reads an object whose start has already been read, up to and including its end.
+     * Any "-x" entry is skipped.
+     *
+     * @param reader the reader.
+     * @return the object.
+     * @throws IOException if the source could not be read.
+     */
+    T read(JSONReader reader) throws IOException;
+
+}
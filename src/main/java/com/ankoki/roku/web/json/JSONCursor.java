@@ -0,0 +1,243 @@
+package com.ankoki.roku.web.json;
+
+import com.ankoki.roku.misc.StringUtils;
+import com.ankoki.roku.web.json.exceptions.MalformedJsonException;
+
+/**
+ * <strong>INTERNAL USE ONLY</strong>
+ * <p>
+ * A forward moving position over an in-memory JSON source. Every character of the source
+ * is looked at exactly once while parsing; strings and numbers are decoded straight
+ * from the source without building intermediate substrings.
+ */
+abstract class JSONCursor {
+
+    protected int position;
+    protected int limit;
+    NumberPolicy numberPolicy = NumberPolicy.NATIVE;
+    KeyTable keys;
+    private final NumberLexer lexer = new NumberLexer();
+
+    /**
+     * Creates a new cursor.
+     *
+     * @param position the position to start from.
+     * @param limit    the position to stop at, exclusive.
+     */
+    protected JSONCursor(int position, int limit) {
+        this.position = position;
+        this.limit = limit;
+    }
+
+    /**
+     * Gets the character at the given index of the source.
+     *
+     * @param index the index.
+     * @return the character.
+     */
+    abstract int charAt(int index);
+
+    /**
+     * Lets go of the source once parsing has finished, so a cursor which is kept for reuse does not keep
+     * it from being garbage collected. Scratch buffers which have grown large are let go of too.
+     */
+    abstract void release();
+
+    /**
+     * Reads the string starting at the current position, which must be an opening quote.
+     * The cursor is left after the closing quote.
+     *
+     * @return the unescaped string.
+     * @throws MalformedJsonException if the string is not closed or contains an invalid escape.
+     */
+    abstract String readString() throws MalformedJsonException;
+
+    /**
+     * Reads a key, which like a string must start with an opening quote.
+     * If the cursor has a {@link KeyTable}, repeated keys share one instance.
+     *
+     * @return the key.
+     * @throws MalformedJsonException if the key is not closed or contains an invalid escape.
+     */
+    String readKey() throws MalformedJsonException {
+        String key = this.readString();
+        return keys == null ? key : keys.intern(key);
+    }
+
+    /**
+     * Skips any whitespace, and peeks the next character.
+     *
+     * @return the next character, or -1 if there are none left.
+     */
+    int skipWhitespace() {
+        while (position < limit) {
+            int c = this.charAt(position);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return c;
+            position++;
+        }
+        return -1;
+    }
+
+    /**
+     * Moves past the current character.
+     */
+    void advance() {
+        position++;
+    }
+
+    /**
+     * Reads a value that is not an object or array.
+     *
+     * @param c the character at the cursor.
+     * @return the value.
+     * @throws MalformedJsonException if the value is malformed.
+     */
+    Object readScalar(int c) throws MalformedJsonException {
+        switch (c) {
+            case '"':
+                return this.readString();
+            case 't':
+                this.readLiteral("true");
+                return Boolean.TRUE;
+            case 'f':
+                this.readLiteral("false");
+                return Boolean.FALSE;
+            case 'n':
+                this.readLiteral("null");
+                return null;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) return this.readNumber();
+                throw this.error("Expected a value");
+        }
+    }
+
+    /**
+     * Skips the value at the current position, including everything inside it if it is an object or array.
+     * Nothing is decoded, brackets and quotes are only balanced.
+     *
+     * @throws MalformedJsonException if the value is not closed.
+     */
+    void skipValue() throws MalformedJsonException {
+        int c = this.skipWhitespace();
+        if (c == '"') {
+            this.skipString();
+        } else if (c == '{' || c == '[') {
+            int start = position++;
+            int nesting = 1;
+            while (nesting > 0) {
+                if (position >= limit) {
+                    position = start;
+                    throw this.error("Found no closing bracket");
+                }
+                c = this.charAt(position++);
+                if (c == '"') {
+                    position--;
+                    this.skipString();
+                } else if (c == '{' || c == '[') nesting++;
+                else if (c == '}' || c == ']') nesting--;
+            }
+        } else {
+            int start = position;
+            while (position < limit && (c = this.charAt(position)) != ',' && c != '}' && c != ']' && c != ' ' && c != '\n' && c != '\r' && c != '\t')
+                position++;
+            if (position == start) throw this.error("Expected a value");
+        }
+    }
+
+    /**
+     * Skips the string starting at the current position, which must be an opening quote.
+     *
+     * @throws MalformedJsonException if the string is not closed.
+     */
+    void skipString() throws MalformedJsonException {
+        int start = position++;
+        while (position < limit) {
+            int c = this.charAt(position++);
+            if (c == '"') return;
+            if (c == '\\') position++;
+        }
+        position = start;
+        throw this.error("Quote found with no closing quote");
+    }
+
+    /**
+     * Reads a number starting at the current position.
+     *
+     * @return the number, represented as the cursor's {@link NumberPolicy} says.
+     * @throws MalformedJsonException if the number is malformed.
+     */
+    Number readNumber() throws MalformedJsonException {
+        int start = position;
+        lexer.reset();
+        while (position < limit && lexer.accept(this.charAt(position))) position++;
+        Number number = lexer.finish(numberPolicy);
+        if (number == null) throw this.error("Malformed number '" + this.text(start, position) + "'");
+        return number;
+    }
+
+    /**
+     * Reads the given literal, such as <code>true</code> or <code>null</code>.
+     *
+     * @param literal the literal expected at the current position.
+     * @throws MalformedJsonException if the literal is not there.
+     */
+    void readLiteral(String literal) throws MalformedJsonException {
+        int length = literal.length();
+        if (limit - position < length) throw this.error("Expected '" + literal + "'");
+        for (int i = 0; i < length; i++) {
+            if (this.charAt(position + i) != literal.charAt(i)) throw this.error("Expected '" + literal + "'");
+        }
+        position += length;
+    }
+
+    /**
+     * Gets the raw text between two indexes of the source.
+     *
+     * @param start the start index, inclusive.
+     * @param end   the end index, exclusive.
+     * @return the text.
+     */
+    String text(int start, int end) {
+        StringBuilder builder = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) builder.append((char) this.charAt(i));
+        return builder.toString();
+    }
+
+    /**
+     * Creates an exception for the current position.
+     *
+     * @param message what went wrong.
+     * @return the exception to throw.
+     */
+    MalformedJsonException error(String message) {
+        if (position >= limit) return new MalformedJsonException(message + ", but reached the end of the JSON.");
+        return new MalformedJsonException(message + " at index " + position + ", found '" + (char) this.charAt(position) + "'.");
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Decodes the four hex digits of a unicode escape.
+     *
+     * @param index the index of the first digit.
+     * @return the character.
+     * @throws MalformedJsonException if any of the digits are not hex.
+     */
+    char readUnicode(int index) throws MalformedJsonException {
+        if (index + 4 > limit) {
+            position = limit;
+            throw this.error("Unfinished unicode escape");
+        }
+        int value = 0;
+        for (int i = index; i < index + 4; i++) {
+            int digit = StringUtils.hex(this.charAt(i));
+            if (digit < 0) {
+                position = i;
+                throw this.error("Expected a hex digit");
+            }
+            value = (value << 4) | digit;
+        }
+        return (char) value;
+    }
+
+}
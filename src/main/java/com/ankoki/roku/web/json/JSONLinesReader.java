@@ -0,0 +1,339 @@
+package com.ankoki.roku.web.json;
+
+import com.ankoki.roku.web.json.exceptions.MalformedJsonException;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads JSON Lines (also known as NDJSON), where each line of the source is a separate JSON object.
+ * <p>
+ * Records are parsed one at a time as they are asked for, so only one line is held in memory at
+ * once. Blank lines are skipped, and lines may end with either {@code \n} or {@code \r\n}.
+ * <pre>{@code
+ * try (Stream<JSON> events = new JSONLinesReader(path).stream()) {
+ *     events.filter(event -> "join".equals(event.get("type"))).forEach(...);
+ * }
+ * }</pre>
+ * Large files can be read across every core with {@link #parallel(Path)}.
+ */
+public class JSONLinesReader implements Iterator<JSON>, Closeable {
+
+    private final BufferedReader in;
+    private final JSONParser parser;
+
+    private JSON next;
+    private int line;
+
+    /**
+     * Creates a new reader.
+     *
+     * @param in the source.
+     */
+    public JSONLinesReader(Reader in) {
+        this(in, new JSONParser());
+    }
+
+    /**
+     * Creates a new reader which parses each line with the given parser, so its options are used.
+     *
+     * @param in     the source.
+     * @param parser the parser, which must not be used by anything else until the reader is closed.
+     */
+    public JSONLinesReader(Reader in, JSONParser parser) {
+        this.in = in instanceof BufferedReader buffered ? buffered : new BufferedReader(in, 65536);
+        this.parser = parser;
+    }
+
+    /**
+     * Creates a new reader that decodes UTF-8.
+     *
+     * @param in the source.
+     */
+    public JSONLinesReader(InputStream in) {
+        this(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a new reader for a UTF-8 encoded file.
+     *
+     * @param path the file.
+     * @throws IOException if the file could not be opened.
+     */
+    public JSONLinesReader(Path path) throws IOException {
+        this(Files.newBufferedReader(path, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Checks if there is another record.
+     *
+     * @return true if there is another record.
+     * @throws UncheckedIOException   if the source could not be read.
+     * @throws MalformedJsonException if the next line is not a JSON object.
+     */
+    @Override
+    public boolean hasNext() {
+        if (next != null) return true;
+        try {
+            String text;
+            while ((text = in.readLine()) != null) {
+                line++;
+                if (text.isBlank()) continue;
+                next = JSONLinesReader.parse(parser, text, line);
+                return true;
+            }
+            return false;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Consumes the next record.
+     *
+     * @return the record.
+     * @throws NoSuchElementException if there are no more records.
+     * @throws UncheckedIOException   if the source could not be read.
+     * @throws MalformedJsonException if the next line is not a JSON object.
+     */
+    @Override
+    public JSON next() {
+        if (!this.hasNext()) throw new NoSuchElementException();
+        JSON json = next;
+        next = null;
+        return json;
+    }
+
+    /**
+     * Gets the remaining records as a sequential stream, which closes the reader when it is closed.
+     *
+     * @return the stream.
+     */
+    public Stream<JSON> stream() {
+        Spliterator<JSON> spliterator = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                this.close();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    /**
+     * Closes the underlying source.
+     *
+     * @throws IOException if the source could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Parallel">
+    /**
+     * Reads a UTF-8 encoded file as a parallel stream of its records.
+     * See {@link #parallel(Path, Supplier)}.
+     *
+     * @param path the file.
+     * @return the stream, which must be closed.
+     * @throws IOException if the file could not be opened.
+     */
+    public static Stream<JSON> parallel(Path path) throws IOException {
+        return JSONLinesReader.parallel(path, JSONParser::new);
+    }
+
+    /**
+     * Reads a UTF-8 encoded file as a parallel stream of its records.
+     * <p>
+     * The file is split into chunks which each start at the beginning of a line, and each chunk is
+     * mapped into memory and parsed separately, so files of any size are read across every core of
+     * the {@link java.util.concurrent.ForkJoinPool} the stream runs in. Streams run in the common
+     * pool, unless a terminal operation is started from inside another pool's task.
+     * <p>
+     * The stream is ordered, use {@link Stream#unordered()} when the order does not matter to let
+     * operations such as {@link Stream#limit(long)} run faster.
+     *
+     * @param path    the file.
+     * @param parsers creates a parser for each chunk, so their options are used.
+     * @return the stream, which must be closed.
+     * @throws IOException if the file could not be opened.
+     */
+    public static Stream<JSON> parallel(Path path, Supplier<JSONParser> parsers) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return StreamSupport.stream(new Chunk(channel, parsers, 0, channel.size()), true).onClose(() -> {
+                try {
+                    channel.close();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Internal Methods">
+    private static JSON parse(JSONParser parser, String text, int line) {
+        try {
+            return parser.parse(text);
+        } catch (MalformedJsonException ex) {
+            throw new MalformedJsonException("Line " + line + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * A range of a file which starts at the start of a line, and ends at the end of one.
+     * Splitting it finds the first line break after its middle. The range is mapped a window at a
+     * time, so ranges larger than a mapping can be are still read.
+     */
+    private static final class Chunk implements Spliterator<JSON> {
+
+        private static final int WINDOW = 1 << 26;
+        private static final long MIN_SPLIT = 1 << 20;
+
+        private final FileChannel channel;
+        private final Supplier<JSONParser> parsers;
+        private JSONParser parser;
+
+        private long position;
+        private final long end;
+
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        private Chunk(FileChannel channel, Supplier<JSONParser> parsers, long position, long end) {
+            this.channel = channel;
+            this.parsers = parsers;
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super JSON> action) {
+            try {
+                while (position < end) {
+                    if (window == null || position >= windowStart + window.limit()) this.map(WINDOW);
+                    int start = (int) (position - windowStart);
+                    int newline = Chunk.find(window, start);
+                    if (newline == -1) {
+                        if (windowStart + window.limit() < end) {
+                            // The line goes past the window, so the window is moved to start with it.
+                            long size = Math.max(WINDOW, (window.limit() - start) * 2L);
+                            if (window.limit() - start >= Integer.MAX_VALUE) throw new IOException("A line starting at byte " + position + " is too long to be mapped.");
+                            this.map(size);
+                            continue;
+                        }
+                        newline = window.limit();
+                    }
+                    position = windowStart + newline + 1;
+                    int length = newline - start;
+                    if (length > 0 && window.get(start + length - 1) == '\r') length--;
+                    if (Chunk.blank(window, start, start + length)) continue;
+                    if (parser == null) parser = parsers.get();
+                    try {
+                        action.accept(parser.parse(window.slice(start, length)));
+                    } catch (MalformedJsonException ex) {
+                        throw new MalformedJsonException("Line starting at byte " + (windowStart + start) + ": " + ex.getMessage());
+                    }
+                    return true;
+                }
+                return false;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public Spliterator<JSON> trySplit() {
+            if (end - position < MIN_SPLIT) return null;
+            try {
+                long split = this.lineAfter(position + (end - position) / 2);
+                if (split == -1) return null;
+                Chunk prefix = new Chunk(channel, parsers, position, split);
+                position = split;
+                return prefix;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - position;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+
+        private void map(long size) throws IOException {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(Math.min(size, Integer.MAX_VALUE), end - position));
+            windowStart = position;
+        }
+
+        /**
+         * Finds the start of the first line after the given position, without mapping anything.
+         *
+         * @param from where to start looking.
+         * @return the position after the first line break, or -1 if there is none before the end.
+         */
+        private long lineAfter(long from) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            while (from < end) {
+                buffer.clear();
+                int read = channel.read(buffer, from);
+                if (read <= 0) return -1;
+                for (int i = 0; i < read && from + i < end; i++) {
+                    if (buffer.get(i) == '\n') return from + i + 1 < end ? from + i + 1 : -1;
+                }
+                from += read;
+            }
+            return -1;
+        }
+
+        private static int find(ByteBuffer buffer, int from) {
+            for (int i = from, limit = buffer.limit(); i < limit; i++) {
+                if (buffer.get(i) == '\n') return i;
+            }
+            return -1;
+        }
+
+        private static boolean blank(ByteBuffer buffer, int from, int to) {
+            for (int i = from; i < to; i++) {
+                byte b = buffer.get(i);
+                if (b != ' ' && b != '\t' && b != '\r') return false;
+            }
+            return true;
+        }
+
+    }
+    // </editor-fold>
+
+}
@@ -0,0 +1,125 @@
+package com.ankoki.roku.web.json;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * Writes JSON Lines (also known as NDJSON), one JSON object per line.
+ * <p>
+ * Records are buffered and only written out once the buffer fills, or when the writer is
+ * flushed or closed. Each record is written on a single line, so the output can be read back
+ * with a {@link JSONLinesReader}.
+ * <pre>{@code
+ * try (JSONLinesWriter log = JSONLinesWriter.append(path)) {
+ *     log.write(event);
+ * }
+ * }</pre>
+ */
+public class JSONLinesWriter implements Closeable, Flushable {
+
+    private final Writer out;
+    private final JSONWriter writer;
+    private StringBuilder line = new StringBuilder(256);
+    private long records;
+
+    /**
+     * Creates a new writer.
+     *
+     * @param out where to write to.
+     */
+    public JSONLinesWriter(Writer out) {
+        this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out, 65536);
+        this.writer = new JSONWriter(line);
+    }
+
+    /**
+     * Creates a new writer that encodes to UTF-8.
+     *
+     * @param out where to write to.
+     */
+    public JSONLinesWriter(OutputStream out) {
+        this(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Opens a UTF-8 encoded file to add records to the end of, creating it if it does not exist.
+     *
+     * @param path the file.
+     * @return the writer.
+     * @throws IOException if the file could not be opened.
+     */
+    public static JSONLinesWriter append(Path path) throws IOException {
+        return new JSONLinesWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+    }
+
+    /**
+     * Writes a record on its own line. The record is written out whole or not at all, so if it
+     * cannot be serialized, nothing is left behind for the next record to be added onto.
+     *
+     * @param record the record.
+     * @return the current writer, for chaining.
+     * @throws IOException if the output could not be written to.
+     */
+    public JSONLinesWriter write(Map<String, ?> record) throws IOException {
+        line.setLength(0);
+        writer.reset(line).writeValue(record);
+        line.append('\n');
+        out.append(line);
+        records++;
+        if (line.capacity() > 65536) this.line = new StringBuilder(256);
+        return this;
+    }
+
+    /**
+     * Writes each record on its own line.
+     *
+     * @param records the records.
+     * @return the current writer, for chaining.
+     * @throws IOException if the output could not be written to.
+     */
+    public JSONLinesWriter writeAll(Iterable<? extends Map<String, ?>> records) throws IOException {
+        for (Map<String, ?> record : records) this.write(record);
+        return this;
+    }
+
+    /**
+     * Gets how many records have been written by the current writer.
+     *
+     * @return the number of records.
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Writes out any buffered records.
+     *
+     * @throws IOException if the output could not be written to.
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Writes out any buffered records, then closes the output.
+     *
+     * @throws IOException if the output could not be written to or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+}
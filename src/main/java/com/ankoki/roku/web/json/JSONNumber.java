@@ -0,0 +1,95 @@
+package com.ankoki.roku.web.json;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * A number which keeps the text it was parsed from, and is only converted when asked.
+ * Written back out, it is written exactly as it was read.
+ * <p>
+ * See {@link NumberPolicy#LAZY}.
+ */
+public final class JSONNumber extends Number {
+
+    private final String text;
+    private BigDecimal exact;
+
+    /**
+     * Creates a new number from its JSON text. The text is not checked.
+     *
+     * @param text the text.
+     */
+    public JSONNumber(String text) {
+        this.text = text;
+    }
+
+    @Override
+    public int intValue() {
+        return (int) this.longValue();
+    }
+
+    @Override
+    public long longValue() {
+        long value = 0;
+        int length = text.length();
+        boolean negative = text.charAt(0) == '-';
+        for (int i = negative ? 1 : 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9' || i >= 18) return this.toBigDecimal().longValue();
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    @Override
+    public float floatValue() {
+        return Float.parseFloat(text);
+    }
+
+    @Override
+    public double doubleValue() {
+        return Double.parseDouble(text);
+    }
+
+    /**
+     * Converts the number without losing anything.
+     *
+     * @return the exact value.
+     */
+    public BigDecimal toBigDecimal() {
+        if (exact == null) exact = new BigDecimal(text);
+        return exact;
+    }
+
+    /**
+     * Converts the number to a whole number, dropping any fraction.
+     *
+     * @return the whole value.
+     */
+    public BigInteger toBigInteger() {
+        return this.toBigDecimal().toBigInteger();
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) return true;
+        if (!(object instanceof JSONNumber number)) return false;
+        return text.equals(number.text) || this.toBigDecimal().compareTo(number.toBigDecimal()) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.toBigDecimal().stripTrailingZeros().hashCode();
+    }
+
+    /**
+     * Gets the text the number was parsed from.
+     *
+     * @return the text.
+     */
+    @Override
+    public String toString() {
+        return text;
+    }
+
+}
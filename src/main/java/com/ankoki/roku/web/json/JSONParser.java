@@ -0,0 +1,541 @@
+package com.ankoki.roku.web.json;
+
+import com.ankoki.roku.web.json.exceptions.MalformedJsonException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses JSON text into {@link JSON} objects.
+ * <p>
+ * The text is scanned once from start to finish, building maps and lists as it goes.
+ * Nesting is tracked with a stack rather than recursion, so documents can be nested
+ * arbitrarily deep.
+ * <p>
+ * A parser keeps its scratch buffers between documents, so reusing one parser for many documents
+ * only allocates the parsed trees. Parsers are not thread safe, {@link #local()} gives each thread
+ * its own.
+ */
+public class JSONParser {
+
+    private static final ThreadLocal<JSONParser> LOCAL = ThreadLocal.withInitial(JSONParser::new);
+
+    private NumberPolicy numberPolicy = NumberPolicy.NATIVE;
+    private KeyTable keyTable = new KeyTable();
+    private Projection projection;
+    private boolean primitiveArrays;
+    private boolean typeHeader;
+
+    private long[] wholes = new long[16];
+    private double[] decimals = new double[16];
+
+    private CharCursor chars;
+    private Utf8Cursor bytes;
+    private boolean busy;
+    private boolean header;
+    private JSONSerializable.Registration[] types;
+
+    private Object[] containers = new Object[16];
+    private String[] keys = new String[16];
+
+    /**
+     * Creates a new parser.
+     */
+    public JSONParser() {}
+
+    /**
+     * Gets the current thread's parser, with every option reset to its default.
+     * <p>
+     * Options can be set on it for the document about to be parsed, for example
+     * {@code JSONParser.local().setNumberPolicy(NumberPolicy.EXACT).parse(text)}, as they are reset
+     * the next time this is called. The parser must not be kept or given to another thread.
+     * If the thread's parser is in the middle of parsing, such as when a {@link JSONSerializable}
+     * parses JSON while being deserialized, a new parser is given instead.
+     *
+     * @return the parser.
+     */
+    public static JSONParser local() {
+        JSONParser parser = LOCAL.get();
+        return parser.busy ? new JSONParser() : parser.reset();
+    }
+
+    /**
+     * Resets every option to its default, keeping the scratch buffers and any keys which have been seen.
+     *
+     * @return the current parser, for chaining.
+     */
+    public JSONParser reset() {
+        this.numberPolicy = NumberPolicy.NATIVE;
+        if (keyTable == null) this.keyTable = new KeyTable();
+        this.projection = null;
+        this.primitiveArrays = false;
+        this.typeHeader = false;
+        return this;
+    }
+
+    /**
+     * Sets how numbers are represented once parsed. Defaults to {@link NumberPolicy#NATIVE}.
+     *
+     * @param numberPolicy the policy.
+     * @return the current parser, for chaining.
+     */
+    public JSONParser setNumberPolicy(NumberPolicy numberPolicy) {
+        this.numberPolicy = numberPolicy;
+        return this;
+    }
+
+    /**
+     * Sets whether repeated keys should share one String instance. Defaults to true.
+     * <p>
+     * Keys are kept in a bounded table which lives as long as the parser, so keys repeated
+     * across documents parsed by the same parser are shared too. Shared keys use less memory,
+     * and are found faster in the parsed maps as they are equal by identity.
+     *
+     * @param internKeys true to share keys.
+     * @return the current parser, for chaining.
+     */
+    public JSONParser setInternKeys(boolean internKeys) {
+        if (!internKeys) this.keyTable = null;
+        else if (keyTable == null) this.keyTable = new KeyTable();
+        return this;
+    }
+
+    /**
+     * Sets which parts of documents to keep, anything else is skipped over without being decoded.
+     * Pass nothing to keep everything, which is the default.
+     * <p>
+     * Paths are JSON Pointers such as {@code /data/id}, or top level keys such as {@code id}.
+     * A {@code *} step matches any key, and arrays are stepped through, so {@code /items/name}
+     * keeps the name of every object in the items array. The parsed JSON keeps the same shape as
+     * the document, holding only the wanted values and the objects and arrays leading to them.
+     * <p>
+     * Skipped values are only checked for balanced brackets and quotes, so malformed JSON inside
+     * of them is not noticed. Objects which are only partly kept are not deserialized into
+     * {@link JSONSerializable}s.
+     *
+     * @param paths the paths to keep.
+     * @return the current parser, for chaining.
+     * @throws IllegalArgumentException if a path is empty.
+     */
+    public JSONParser setProjection(String... paths) {
+        return this.setProjection(Arrays.asList(paths));
+    }
+
+    /**
+     * Sets which parts of documents to keep, anything else is skipped over without being decoded.
+     * See {@link #setProjection(String...)}.
+     *
+     * @param paths the paths to keep, empty to keep everything.
+     * @return the current parser, for chaining.
+     * @throws IllegalArgumentException if a path is empty.
+     */
+    public JSONParser setProjection(Collection<String> paths) {
+        this.projection = paths.isEmpty() ? null : Projection.of(paths);
+        return this;
+    }
+
+    /**
+     * Sets whether arrays holding only numbers should be parsed into lists backed by primitive arrays,
+     * rather than lists of boxed numbers. Defaults to false.
+     * <p>
+     * Arrays of whole numbers become an {@link IntList}, or a {@link LongList} if any of them does
+     * not fit in an int. Arrays of decimals become a {@link DoubleList}. Arrays which mix whole numbers
+     * and decimals, hold anything else, or are empty are parsed as usual, as are numbers parsed with
+     * any {@link NumberPolicy} other than {@link NumberPolicy#NATIVE}.
+     * <p>
+     * These lists use a fraction of the memory, but they can only hold their own type of number.
+     *
+     * @param primitiveArrays true to use primitive arrays.
+     * @return the current parser, for chaining.
+     */
+    public JSONParser setPrimitiveArrays(boolean primitiveArrays) {
+        this.primitiveArrays = primitiveArrays;
+        return this;
+    }
+
+    /**
+     * Sets whether a "-types" header at the start of the outermost object should be read into a table for
+     * numbered tags, rather than kept as an entry, see {@link JSONWriter#setTypeHeader(boolean)}.
+     * Defaults to false.
+     *
+     * @param typeHeader true to read the header.
+     * @return the current parser, for chaining.
+     */
+    public JSONParser setTypeHeader(boolean typeHeader) {
+        this.typeHeader = typeHeader;
+        return this;
+    }
+
+    /**
+     * Parses JSON text.
+     *
+     * @param json the text.
+     * @return the parsed JSON.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    public JSON parse(String json) throws MalformedJsonException {
+        JSON target = new JSON();
+        this.parseInto(json, target);
+        return target;
+    }
+
+    /**
+     * Parses UTF-8 encoded JSON.
+     *
+     * @param json the bytes.
+     * @return the parsed JSON.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    public JSON parse(byte[] json) throws MalformedJsonException {
+        return this.parse(ByteBuffer.wrap(json));
+    }
+
+    /**
+     * Parses the remaining bytes of a buffer as UTF-8 encoded JSON.
+     * The buffer's position is not changed.
+     *
+     * @param json the buffer.
+     * @return the parsed JSON.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    public JSON parse(ByteBuffer json) throws MalformedJsonException {
+        JSON target = new JSON();
+        this.parseInto(json, target);
+        return target;
+    }
+
+    /**
+     * Parses a UTF-8 encoded JSON file by mapping it into memory, rather than reading it onto the heap.
+     * The file must be smaller than 2GB.
+     * <p>
+     * The file stays mapped until the buffer is garbage collected, on some systems this keeps the
+     * file locked until then.
+     *
+     * @param path the file.
+     * @return the parsed JSON.
+     * @throws IOException            if the file could not be read.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    public JSON parse(Path path) throws IOException, MalformedJsonException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("'" + path + "' is too large to be mapped, use a JSONReader instead.");
+            return this.parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Parses a whole JSON object from a string into the given map.
+     *
+     * @param json   the text.
+     * @param target the map to fill.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    void parseInto(String json, Map<String, Object> target) throws MalformedJsonException {
+        if (chars == null) chars = new CharCursor(json);
+        else chars.reset(json);
+        this.parseInto(chars, target);
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Parses a whole JSON object from the remaining bytes of a buffer into the given map.
+     *
+     * @param json   the UTF-8 encoded JSON.
+     * @param target the map to fill.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    void parseInto(ByteBuffer json, Map<String, Object> target) throws MalformedJsonException {
+        if (bytes == null) bytes = new Utf8Cursor(json);
+        else bytes.reset(json);
+        this.parseInto(bytes, target);
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Parses a whole JSON object from the cursor into the given map.
+     *
+     * @param cursor the cursor to read from.
+     * @param target the map to fill.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    private void parseInto(JSONCursor cursor, Map<String, Object> target) throws MalformedJsonException {
+        if (busy) throw new IllegalStateException("A parser cannot parse while it is already parsing.");
+        busy = true;
+        try {
+            cursor.numberPolicy = numberPolicy;
+            cursor.keys = keyTable;
+            if (cursor.skipWhitespace() != '{') throw cursor.error("JSON must start with {");
+            if (projection != null) this.project(cursor, projection, target);
+            else {
+                header = typeHeader;
+                this.readObject(cursor, target);
+            }
+            if (cursor.skipWhitespace() != -1) throw cursor.error("Expected the end of the JSON");
+        } finally {
+            busy = false;
+            header = false;
+            types = null;
+            cursor.release();
+            if (wholes.length > 4096) {
+                wholes = new long[16];
+                decimals = new double[16];
+            }
+        }
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Reads the wanted entries of the object at the cursor, skipping the rest.
+     *
+     * @param cursor the cursor, positioned on the opening brace.
+     * @param node   the wanted keys of the object.
+     * @param target the map to put the wanted entries into.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    private void project(JSONCursor cursor, Projection node, Map<String, Object> target) throws MalformedJsonException {
+        cursor.advance();
+        int c = cursor.skipWhitespace();
+        boolean first = true;
+        while (first ? c != '}' : !this.separator(cursor, c, '}')) {
+            if (cursor.skipWhitespace() != '"') throw cursor.error("Expected a key");
+            String key = cursor.readKey();
+            if (cursor.skipWhitespace() != ':') throw cursor.error("Expected ':' after key '" + key + "'");
+            cursor.advance();
+            cursor.skipWhitespace();
+            Projection child = node.child(key);
+            if (child == null) cursor.skipValue();
+            else {
+                Object value = this.project(cursor, child);
+                if (value != cursor) target.put(key, value);
+            }
+            c = cursor.skipWhitespace();
+            first = false;
+        }
+        cursor.advance();
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Reads the wanted parts of the value at the cursor.
+     *
+     * @param cursor the cursor, positioned on the value.
+     * @param node   the wanted parts of the value.
+     * @return the value, or the cursor itself if nothing in it was wanted.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    private Object project(JSONCursor cursor, Projection node) throws MalformedJsonException {
+        int c = cursor.skipWhitespace();
+        if (node.whole()) {
+            if (c != '{' && c != '[') return cursor.readScalar(c);
+            Object container = c == '{' ? new JSON() : new ArrayList<>();
+            this.readObject(cursor, container);
+            return container instanceof JSON json ? JSONSerializable.resolve(json) : container;
+        }
+        if (c == '{') {
+            JSON json = new JSON();
+            this.project(cursor, node, json);
+            return json;
+        }
+        if (c != '[') {
+            cursor.skipValue();
+            return cursor;
+        }
+        cursor.advance();
+        List<Object> list = new ArrayList<>();
+        c = cursor.skipWhitespace();
+        boolean first = true;
+        while (first ? c != ']' : !this.separator(cursor, c, ']')) {
+            Object value = this.project(cursor, node);
+            if (value != cursor) list.add(value);
+            c = cursor.skipWhitespace();
+            first = false;
+        }
+        cursor.advance();
+        return list;
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Reads the object or array at the cursor, and everything inside it.
+     *
+     * @param cursor the cursor, positioned on the opening brace or bracket.
+     * @param root   the map or list to put the object's entries or array's elements into.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(JSONCursor cursor, Object root) throws MalformedJsonException {
+        cursor.advance();
+        int depth = 0;
+        containers[0] = root;
+        Object container = root;
+        boolean first = true;
+        try {
+            while (true) {
+                int c = cursor.skipWhitespace();
+                String key = null;
+                if (container instanceof Map) {
+                    if (first ? c == '}' : this.separator(cursor, c, '}')) {
+                        cursor.advance();
+                        if (depth == 0) return;
+                        Object value = JSONSerializable.resolve((Map<String, Object>) container, types);
+                        container = containers[--depth];
+                        this.add(container, keys[depth + 1], value);
+                        first = false;
+                        continue;
+                    }
+                    c = cursor.skipWhitespace();
+                    if (c != '"') throw cursor.error("Expected a key");
+                    key = cursor.readKey();
+                    if (cursor.skipWhitespace() != ':') throw cursor.error("Expected ':' after key '" + key + "'");
+                    cursor.advance();
+                } else {
+                    if (first ? c == ']' : this.separator(cursor, c, ']')) {
+                        cursor.advance();
+                        if (depth == 0) return;
+                        Object value = container;
+                        container = containers[--depth];
+                        // A "-types" header at the start of the document is read into a table for numbered tags, not kept.
+                        if (depth == 0 && header && keys[1].equals("-types") && ((Map<?, ?>) container).isEmpty()) {
+                            types = JSONSerializable.table((List<?>) value);
+                            header = false;
+                        } else this.add(container, keys[depth + 1], value);
+                        first = false;
+                        continue;
+                    }
+                }
+                c = cursor.skipWhitespace();
+                if (c == '[' && primitiveArrays) {
+                    cursor.advance();
+                    Object array = this.readNumbers(cursor);
+                    if (!(array instanceof ArrayList)) {
+                        this.add(container, key, array);
+                        first = false;
+                        continue;
+                    }
+                    container = array;
+                    this.push(++depth, container, key);
+                    first = true;
+                    continue;
+                }
+                if (c == '{' || c == '[') {
+                    cursor.advance();
+                    container = c == '{' ? new JSON() : new ArrayList<>();
+                    this.push(++depth, container, key);
+                    first = true;
+                    continue;
+                }
+                this.add(container, key, cursor.readScalar(c));
+                first = false;
+            }
+        } finally {
+            Arrays.fill(containers, 0, depth + 1, null);
+            Arrays.fill(keys, 0, depth + 1, null);
+        }
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Reads an array of numbers into a list backed by a primitive array.
+     * As soon as something which does not fit is found, the cursor is moved back to the start of it and
+     * the numbers read so far are returned in an {@link ArrayList}, for the rest to be read as usual.
+     *
+     * @param cursor the cursor, positioned after the opening bracket.
+     * @return the primitive list with the cursor after the closing bracket, or the numbers read so far
+     * with the cursor on the next element or the closing bracket of an empty array.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    private Object readNumbers(JSONCursor cursor) throws MalformedJsonException {
+        int size = 0;
+        // 0 until the first number, then 1 for whole numbers which fit in an int, 2 for longs or 3 for doubles.
+        int kind = 0;
+        while (true) {
+            int c = cursor.skipWhitespace();
+            int mark = cursor.position;
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                Number value = cursor.readNumber();
+                int next = value instanceof Integer ? 1 : value instanceof Long ? 2 : value instanceof Double ? 3 : 0;
+                if (next != 0 && (kind == 0 || (next == 3) == (kind == 3))) {
+                    if (size == wholes.length) {
+                        wholes = Arrays.copyOf(wholes, size * 2);
+                        decimals = Arrays.copyOf(decimals, size * 2);
+                    }
+                    if (next == 3) decimals[size++] = value.doubleValue();
+                    else wholes[size++] = value.longValue();
+                    kind = Math.max(kind, next);
+                    c = cursor.skipWhitespace();
+                    if (c == ']') {
+                        cursor.advance();
+                        if (kind == 3) return DoubleList.of(Arrays.copyOf(decimals, size));
+                        if (kind == 2) return LongList.of(Arrays.copyOf(wholes, size));
+                        int[] ints = new int[size];
+                        for (int i = 0; i < size; i++) ints[i] = (int) wholes[i];
+                        return IntList.of(ints);
+                    }
+                    if (c != ',') throw cursor.error("Expected ',' or ']'");
+                    cursor.advance();
+                    if (cursor.skipWhitespace() == ']') throw cursor.error("Expected a value");
+                    continue;
+                }
+            }
+            cursor.position = mark;
+            List<Object> list = new ArrayList<>(Math.max(10, size * 2));
+            for (int i = 0; i < size; i++) {
+                if (kind == 3) list.add(decimals[i]);
+                else if (kind == 2) list.add(wholes[i]);
+                else list.add((int) wholes[i]);
+            }
+            return list;
+        }
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Checks what follows a value in an object or array.
+     *
+     * @param cursor the cursor.
+     * @param c      the character at the cursor.
+     * @param close  the closing character of the current object or array.
+     * @return true if the object or array is closed, false if another value follows.
+     * @throws MalformedJsonException if neither a comma nor the closing character was found.
+     */
+    private boolean separator(JSONCursor cursor, int c, char close) throws MalformedJsonException {
+        if (c == close) return true;
+        if (c != ',') throw cursor.error("Expected ',' or '" + close + "'");
+        cursor.advance();
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void add(Object container, String key, Object value) {
+        if (container instanceof Map) ((Map<String, Object>) container).put(key, value);
+        else ((List<Object>) container).add(value);
+    }
+
+    private void push(int depth, Object container, String key) {
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+            keys = Arrays.copyOf(keys, depth * 2);
+        }
+        containers[depth] = container;
+        keys[depth] = key;
+    }
+
+}
@@ -0,0 +1,381 @@
+package com.ankoki.roku.web.json;
+
+import com.ankoki.roku.web.json.exceptions.JSONPatchException;
+import com.ankoki.roku.web.json.exceptions.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A list of changes to a JSON document, as described by
+ * <a href="https://www.rfc-editor.org/rfc/rfc6902">RFC 6902</a>, along with
+ * <a href="https://www.rfc-editor.org/rfc/rfc7396">RFC 7396</a> merge patches.
+ * <p>
+ * A patch is usually made by {@link #diff(Object, Object)}ing two versions of a document, sent or
+ * stored in place of the whole document, then {@link #apply(Map)}ed to the old version to bring it
+ * up to date. The size of a patch grows with the size of the change, not the size of the document.
+ * <pre>{@code
+ * JSONPatch patch = JSONPatch.diff(before, after);
+ * String sent = patch.toString();
+ * JSONPatch.parse(sent).apply(copyOfBefore);
+ * }</pre>
+ * Patches are applied in place, one operation at a time. If an operation fails, the operations
+ * before it stay applied.
+ */
+public final class JSONPatch {
+
+    private final List<JSON> operations;
+
+    private JSONPatch(List<JSON> operations) {
+        this.operations = operations;
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Creating">
+    /**
+     * Creates a patch from its operations, each being a map with at least an "op" and "path".
+     *
+     * @param operations the operations.
+     * @return the patch.
+     * @throws JSONPatchException if an operation is not valid.
+     */
+    public static JSONPatch of(List<?> operations) {
+        List<JSON> list = new ArrayList<>(operations.size());
+        for (Object operation : operations) {
+            if (!(operation instanceof Map<?, ?> map) || !(map.get("op") instanceof String op) || !(map.get("path") instanceof String path))
+                throw new JSONPatchException("Patch operations must have an 'op' and a 'path'.");
+            switch (op) {
+                case "add", "replace", "test" -> {
+                    if (!map.containsKey("value")) throw new JSONPatchException("'" + op + "' at '" + path + "' has no 'value'.");
+                }
+                case "move", "copy" -> {
+                    if (!(map.get("from") instanceof String)) throw new JSONPatchException("'" + op + "' at '" + path + "' has no 'from'.");
+                }
+                case "remove" -> {}
+                default -> throw new JSONPatchException("Unknown patch operation '" + op + "'.");
+            }
+            JSON json = new JSON();
+            for (Map.Entry<?, ?> entry : map.entrySet()) json.put(String.valueOf(entry.getKey()), entry.getValue());
+            list.add(json);
+        }
+        return new JSONPatch(list);
+    }
+
+    /**
+     * Parses a patch from its JSON text, which is an array of operations.
+     *
+     * @param json the text.
+     * @return the patch.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     * @throws JSONPatchException     if an operation is not valid.
+     */
+    public static JSONPatch parse(String json) throws MalformedJsonException {
+        try (JSONReader reader = new JSONReader(new StringReader(json))) {
+            if (reader.peek() != JSONToken.BEGIN_ARRAY) throw new MalformedJsonException("A JSON patch must be an array.");
+            return JSONPatch.of((List<?>) reader.nextValue());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Works out the operations which turn one document into another.
+     * Only what changed is included; objects and arrays which are in both are compared inside.
+     *
+     * @param source the document as it was.
+     * @param target the document as it is now.
+     * @return the patch.
+     */
+    public static JSONPatch diff(Object source, Object target) {
+        List<JSON> operations = new ArrayList<>();
+        JSONPatch.diff("", source, target, operations);
+        return new JSONPatch(operations);
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Using">
+    /**
+     * Applies every operation to a document, changing it in place.
+     *
+     * @param document the document.
+     * @throws JSONPatchException if an operation could not be applied.
+     */
+    public void apply(Map<String, Object> document) {
+        for (JSON operation : operations) {
+            String path = (String) operation.get("path");
+            switch ((String) operation.get("op")) {
+                case "add" -> JSONPatch.add(document, path, JSONPatch.copy(operation.get("value")));
+                case "remove" -> JSONPatch.remove(document, path);
+                case "replace" -> JSONPatch.replace(document, path, JSONPatch.copy(operation.get("value")));
+                case "move" -> {
+                    String from = (String) operation.get("from");
+                    if (path.startsWith(from + "/")) throw new JSONPatchException("Cannot move '" + from + "' into itself.");
+                    JSONPatch.add(document, path, JSONPatch.remove(document, from));
+                }
+                case "copy" -> JSONPatch.add(document, path, JSONPatch.copy(JSONPatch.get(document, (String) operation.get("from"))));
+                case "test" -> {
+                    if (!JSONPatch.same(JSONPatch.get(document, path), operation.get("value")))
+                        throw new JSONPatchException("Test failed at '" + path + "'.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the operations of this patch.
+     *
+     * @return an unmodifiable view of the operations.
+     */
+    public List<JSON> getOperations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    /**
+     * Checks if this patch changes nothing.
+     *
+     * @return true if there are no operations.
+     */
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    /**
+     * Writes this patch as a JSON array.
+     *
+     * @param writer the writer.
+     * @throws IOException if the output could not be written to.
+     */
+    public void write(JSONWriter writer) throws IOException {
+        writer.writeValue(operations);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        try {
+            this.write(new JSONWriter(builder));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof JSONPatch patch && patch.operations.equals(operations);
+    }
+
+    @Override
+    public int hashCode() {
+        return operations.hashCode();
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Merge Patches">
+    /**
+     * Works out the RFC 7396 merge patch which turns one object into another.
+     * <p>
+     * Merge patches are simpler than {@link JSONPatch}es, but cannot set a value to null as null
+     * means to remove it, and replace arrays whole rather than changing them.
+     *
+     * @param source the object as it was.
+     * @param target the object as it is now.
+     * @return the merge patch, empty if nothing changed.
+     */
+    public static JSON mergeDiff(Map<String, ?> source, Map<String, ?> target) {
+        JSON patch = new JSON();
+        for (String key : source.keySet()) {
+            if (!target.containsKey(key)) patch.put(key, null);
+        }
+        for (Map.Entry<String, ?> entry : target.entrySet()) {
+            String key = entry.getKey();
+            Object before = source.get(key);
+            Object after = entry.getValue();
+            if (source.containsKey(key) && JSONPatch.same(before, after)) continue;
+            if (before instanceof Map<?, ?> from && after instanceof Map<?, ?> to) {
+                JSON nested = JSONPatch.mergeDiff(JSONPatch.cast(from), JSONPatch.cast(to));
+                if (!nested.isEmpty()) patch.put(key, nested);
+            } else patch.put(key, after);
+        }
+        return patch;
+    }
+
+    /**
+     * Applies an RFC 7396 merge patch to an object, changing it in place.
+     * Null values in the patch remove keys, objects are merged and anything else replaces.
+     *
+     * @param document the object.
+     * @param patch    the merge patch.
+     */
+    public static void mergePatch(Map<String, Object> document, Map<String, ?> patch) {
+        for (Map.Entry<String, ?> entry : patch.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+            if (value == null) document.remove(key);
+            else if (value instanceof Map<?, ?> map) {
+                Object existing = document.get(key);
+                Map<String, Object> target = existing instanceof Map<?, ?> nested ? JSONPatch.cast(nested) : new JSON();
+                JSONPatch.mergePatch(target, JSONPatch.cast(map));
+                document.put(key, target);
+            } else document.put(key, JSONPatch.copy(value));
+        }
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Internal Methods">
+    private static void diff(String path, Object source, Object target, List<JSON> operations) {
+        if (source instanceof Map<?, ?> from && target instanceof Map<?, ?> to) {
+            for (Object key : from.keySet()) {
+                if (!to.containsKey(key)) operations.add(JSONPatch.operation("remove", path + "/" + JSONPath.escape(String.valueOf(key)), null));
+            }
+            for (Map.Entry<?, ?> entry : to.entrySet()) {
+                String child = path + "/" + JSONPath.escape(String.valueOf(entry.getKey()));
+                if (!from.containsKey(entry.getKey())) operations.add(JSONPatch.operation("add", child, entry.getValue()));
+                else JSONPatch.diff(child, from.get(entry.getKey()), entry.getValue(), operations);
+            }
+        } else if (source instanceof List<?> from && target instanceof List<?> to) {
+            // Elements which are the same at the start and the end are left alone, and the middle changed by index.
+            int prefix = 0;
+            int shortest = Math.min(from.size(), to.size());
+            while (prefix < shortest && JSONPatch.same(from.get(prefix), to.get(prefix))) prefix++;
+            int suffix = 0;
+            while (suffix < shortest - prefix && JSONPatch.same(from.get(from.size() - 1 - suffix), to.get(to.size() - 1 - suffix))) suffix++;
+            int removed = from.size() - prefix - suffix;
+            int added = to.size() - prefix - suffix;
+            int common = Math.min(removed, added);
+            for (int i = prefix; i < prefix + common; i++) JSONPatch.diff(path + "/" + i, from.get(i), to.get(i), operations);
+            for (int i = common; i < removed; i++) operations.add(JSONPatch.operation("remove", path + "/" + (prefix + common), null));
+            for (int i = common; i < added; i++) operations.add(JSONPatch.operation("add", path + "/" + (prefix + i), to.get(prefix + i)));
+        } else if (!JSONPatch.same(source, target)) operations.add(JSONPatch.operation("replace", path, target));
+    }
+
+    private static JSON operation(String op, String path, Object value) {
+        JSON operation = new JSON();
+        operation.put("op", op);
+        operation.put("path", path);
+        if (!op.equals("remove")) operation.put("value", value);
+        return operation;
+    }
+
+    private static Object get(Map<String, Object> document, String path) {
+        Object node = document;
+        for (String token : JSONPath.tokens(JSONPatch.checked(path))) {
+            if (node instanceof Map<?, ?> map && map.containsKey(token)) node = map.get(token);
+            else if (node instanceof List<?> list && JSONPath.index(token) != -1 && JSONPath.index(token) < list.size()) node = list.get(JSONPath.index(token));
+            else throw new JSONPatchException("Nothing found at '" + path + "'.");
+        }
+        return node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void add(Map<String, Object> document, String path, Object value) {
+        if (JSONPatch.checked(path).isEmpty()) {
+            if (!(value instanceof Map<?, ?> map)) throw new JSONPatchException("The whole document can only be replaced with an object.");
+            document.clear();
+            document.putAll(JSONPatch.cast(map));
+            return;
+        }
+        int split = path.lastIndexOf('/');
+        Object parent = JSONPatch.get(document, path.substring(0, split));
+        String token = JSONPath.tokens(path.substring(split))[0];
+        if (parent instanceof Map<?, ?> map) ((Map<String, Object>) map).put(token, value);
+        else if (parent instanceof List<?> list) {
+            int index = token.equals("-") ? list.size() : JSONPath.index(token);
+            if (index == -1 || index > list.size()) throw new JSONPatchException("Index out of bounds at '" + path + "'.");
+            ((List<Object>) list).add(index, value);
+        } else throw new JSONPatchException("Cannot add to '" + path + "' as its parent is not an object or array.");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void replace(Map<String, Object> document, String path, Object value) {
+        if (!JSONPatch.checked(path).isEmpty()) {
+            int split = path.lastIndexOf('/');
+            Object parent = JSONPatch.get(document, path.substring(0, split));
+            String token = JSONPath.tokens(path.substring(split))[0];
+            // Keys are replaced where they are, rather than moved to the end, so the document keeps its order.
+            if (parent instanceof Map<?, ?> map) {
+                if (!map.containsKey(token)) throw new JSONPatchException("Nothing found at '" + path + "'.");
+                ((Map<String, Object>) map).put(token, value);
+                return;
+            }
+        }
+        JSONPatch.remove(document, path);
+        JSONPatch.add(document, path, value);
+    }
+
+    private static Object remove(Map<String, Object> document, String path) {
+        if (JSONPatch.checked(path).isEmpty()) {
+            JSON removed = new JSON(document);
+            document.clear();
+            return removed;
+        }
+        int split = path.lastIndexOf('/');
+        Object parent = JSONPatch.get(document, path.substring(0, split));
+        String token = JSONPath.tokens(path.substring(split))[0];
+        if (parent instanceof Map<?, ?> map && map.containsKey(token)) return map.remove(token);
+        if (parent instanceof List<?> list && JSONPath.index(token) != -1 && JSONPath.index(token) < list.size())
+            return list.remove(JSONPath.index(token));
+        throw new JSONPatchException("Nothing found at '" + path + "'.");
+    }
+
+    private static String checked(String path) {
+        if (!path.isEmpty() && !path.startsWith("/")) throw new JSONPatchException("Invalid JSON Pointer '" + path + "'.");
+        return path;
+    }
+
+    /**
+     * Copies objects and arrays, so a patch's values are never shared with the documents it is applied to.
+     */
+    private static Object copy(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            JSON copy = new JSON();
+            for (Map.Entry<?, ?> entry : map.entrySet()) copy.put(String.valueOf(entry.getKey()), JSONPatch.copy(entry.getValue()));
+            return copy;
+        }
+        if (value instanceof List<?> list) {
+            List<Object> copy = new ArrayList<>(list.size());
+            for (Object element : list) copy.add(JSONPatch.copy(element));
+            return copy;
+        }
+        return value;
+    }
+
+    /**
+     * Checks if two values are the same JSON, where numbers are compared by value rather than type.
+     */
+    private static boolean same(Object a, Object b) {
+        if (a instanceof Number x && b instanceof Number y && x.getClass() != y.getClass()) {
+            try {
+                return new BigDecimal(x.toString()).compareTo(new BigDecimal(y.toString())) == 0;
+            } catch (NumberFormatException ex) {
+                return false;
+            }
+        }
+        if (a instanceof Map<?, ?> x && b instanceof Map<?, ?> y) {
+            if (x.size() != y.size()) return false;
+            for (Map.Entry<?, ?> entry : x.entrySet()) {
+                if (!y.containsKey(entry.getKey()) || !JSONPatch.same(entry.getValue(), y.get(entry.getKey()))) return false;
+            }
+            return true;
+        }
+        if (a instanceof List<?> x && b instanceof List<?> y) {
+            if (x.size() != y.size()) return false;
+            for (int i = 0; i < x.size(); i++) if (!JSONPatch.same(x.get(i), y.get(i))) return false;
+            return true;
+        }
+        return Objects.equals(a, b);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> cast(Map<?, ?> map) {
+        return (Map<String, Object>) map;
+    }
+    // </editor-fold>
+
+}
@@ -0,0 +1,400 @@
+package com.ankoki.roku.web.json;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled path to values inside of JSON, which can be used to pick them out of a tree or a stream.
+ * <p>
+ * Two syntaxes are understood. JSON Pointers, such as {@code /display/icon/item}, follow one key
+ * per step, where a step which is a number also indexes arrays and {@code ~1} and {@code ~0}
+ * stand for {@code /} and {@code ~}. Otherwise paths starting with {@code $} are a subset of
+ * JSONPath:
+ * <ul>
+ *     <li>{@code .key} or {@code ['key']} follows a key;</li>
+ *     <li>{@code [2]} follows an index of an array;</li>
+ *     <li>{@code .*} or {@code [*]} follows every key or index;</li>
+ *     <li>{@code ..key}, {@code ..*} or {@code ..[2]} does the same at any depth.</li>
+ * </ul>
+ * Paths are immutable, so a compiled path can be kept in a constant and shared between threads.
+ * Reading from a {@link JSONReader} only builds the values which match, everything else is skipped.
+ */
+public final class JSONPath {
+
+    private final String path;
+    private final Step[] steps;
+
+    private JSONPath(String path, Step[] steps) {
+        this.path = path;
+        this.steps = steps;
+    }
+
+    /**
+     * Compiles a path.
+     *
+     * @param path the JSON Pointer, or JSONPath starting with $.
+     * @return the compiled path.
+     * @throws IllegalArgumentException if the path is not valid.
+     */
+    public static JSONPath compile(String path) {
+        if (path.isEmpty() || path.startsWith("/")) return new JSONPath(path, JSONPath.pointer(path));
+        if (path.startsWith("$")) return new JSONPath(path, new Parser(path).parse());
+        throw new IllegalArgumentException("Invalid path '" + path + "', paths must start with / or $.");
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Trees">
+    /**
+     * Gets the first value the path leads to.
+     *
+     * @param root the tree, usually a {@link JSON}.
+     * @return the value, or null if there is none.
+     */
+    public Object get(Object root) {
+        List<Object> found = new ArrayList<>(1);
+        this.select(root, 0, found, 1);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Gets the first value the path leads to if it is of the given type.
+     *
+     * @param root the tree, usually a {@link JSON}.
+     * @param type the type the value should be.
+     * @param <T>  the type.
+     * @return the value, or null if there is none or it is another type.
+     */
+    public <T> T get(Object root, Class<T> type) {
+        Object value = this.get(root);
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+
+    /**
+     * Checks if the path leads anywhere, even if it is to a null.
+     *
+     * @param root the tree, usually a {@link JSON}.
+     * @return true if there is a value at the path.
+     */
+    public boolean exists(Object root) {
+        return this.select(root, 0, new ArrayList<>(1), 1);
+    }
+
+    /**
+     * Gets every value the path leads to, in the order they appear.
+     *
+     * @param root the tree, usually a {@link JSON}.
+     * @return the values.
+     */
+    public List<Object> select(Object root) {
+        List<Object> found = new ArrayList<>();
+        this.select(root, 0, found, Integer.MAX_VALUE);
+        return found;
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Streams">
+    /**
+     * Consumes the next value of a reader, returning the first value inside of it the path leads to.
+     *
+     * @param reader the reader.
+     * @return the value, or null if there is none.
+     * @throws IOException if the source could not be read.
+     */
+    public Object get(JSONReader reader) throws IOException {
+        List<Object> found = new ArrayList<>(1);
+        this.select(reader, 0, found, 1);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Consumes the next value of a reader, returning every value inside of it the path leads to.
+     * Nothing else is built.
+     *
+     * @param reader the reader.
+     * @return the values.
+     * @throws IOException if the source could not be read.
+     */
+    public List<Object> select(JSONReader reader) throws IOException {
+        List<Object> found = new ArrayList<>();
+        this.select(reader, 0, found, Integer.MAX_VALUE);
+        return found;
+    }
+    // </editor-fold>
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof JSONPath path && path.path.equals(this.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return path.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Internal Methods">
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Follows the steps from the given one through a tree.
+     *
+     * @param node  the current value.
+     * @param step  the index of the next step.
+     * @param found where to add the values found.
+     * @param limit how many values to find before stopping.
+     * @return true once the limit has been reached.
+     */
+    private boolean select(Object node, int step, List<Object> found, int limit) {
+        if (step == steps.length) {
+            found.add(node);
+            return found.size() >= limit;
+        }
+        Step current = steps[step];
+        if (node instanceof Map<?, ?> map) {
+            if (current.name() != null && !current.deep()) {
+                return map.containsKey(current.name()) && this.select(map.get(current.name()), step + 1, found, limit);
+            }
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (this.child(entry.getValue(), current.matches(String.valueOf(entry.getKey())), step, found, limit)) return true;
+            }
+        } else if (node instanceof List<?> list) {
+            if (current.index() >= 0 && !current.deep()) {
+                return current.index() < list.size() && this.select(list.get(current.index()), step + 1, found, limit);
+            }
+            for (int i = 0; i < list.size(); i++) {
+                if (this.child(list.get(i), current.matches(i), step, found, limit)) return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean child(Object value, boolean matches, int step, List<Object> found, int limit) {
+        if (matches && this.select(value, step + 1, found, limit)) return true;
+        return steps[step].deep() && this.select(value, step, found, limit);
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Follows the steps from the given one through the next value of a reader, skipping anything
+     * which cannot match. The whole value is always consumed.
+     *
+     * @param reader the reader.
+     * @param step   the index of the next step.
+     * @param found  where to add the values found.
+     * @param limit  how many values to find before skipping the rest.
+     * @throws IOException if the source could not be read.
+     */
+    private void select(JSONReader reader, int step, List<Object> found, int limit) throws IOException {
+        if (found.size() >= limit) {
+            reader.skipValue();
+            return;
+        }
+        if (step == steps.length) {
+            found.add(reader.nextValue());
+            return;
+        }
+        Step current = steps[step];
+        switch (reader.peek()) {
+            case BEGIN_OBJECT -> {
+                reader.beginObject();
+                while (reader.hasNext()) this.child(reader, current.matches(reader.nextName()), step, found, limit);
+                reader.endObject();
+            }
+            case BEGIN_ARRAY -> {
+                reader.beginArray();
+                for (int i = 0; reader.hasNext(); i++) this.child(reader, current.matches(i), step, found, limit);
+                reader.endArray();
+            }
+            default -> reader.skipValue();
+        }
+    }
+
+    private void child(JSONReader reader, boolean matches, int step, List<Object> found, int limit) throws IOException {
+        if (!steps[step].deep()) {
+            if (matches) this.select(reader, step + 1, found, limit);
+            else reader.skipValue();
+        } else if (matches && found.size() < limit) {
+            // The value has to be both matched against and searched, so only a value which matches is built.
+            Object value = reader.nextValue();
+            this.child(value, true, step, found, limit);
+        } else this.select(reader, step, found, limit);
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Checks if the path leads to a place in a document, given as the keys and indexes which lead to it.
+     *
+     * @param path   the keys, as Strings, and indexes, as Integers.
+     * @param length how many of them there are.
+     * @param below  true to instead check if the path could lead to anywhere inside of the place.
+     * @return true if the path matches.
+     */
+    boolean matches(Object[] path, int length, boolean below) {
+        return this.matches(path, length, below, 0, 0);
+    }
+
+    private boolean matches(Object[] path, int length, boolean below, int step, int index) {
+        if (index == length) return below ? step < steps.length : step == steps.length;
+        if (step == steps.length) return false;
+        Step current = steps[step];
+        boolean matches = path[index] instanceof String key ? current.matches(key) : current.matches((int) path[index]);
+        if (matches && this.matches(path, length, below, step + 1, index + 1)) return true;
+        return current.deep() && this.matches(path, length, below, step, index + 1);
+    }
+
+    private static Step[] pointer(String path) {
+        String[] tokens = JSONPath.tokens(path);
+        Step[] steps = new Step[tokens.length];
+        for (int i = 0; i < tokens.length; i++) steps[i] = new Step(tokens[i], JSONPath.index(tokens[i]), false);
+        return steps;
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Splits a JSON Pointer into its unescaped keys.
+     *
+     * @param pointer the pointer, which must be empty or start with /.
+     * @return the keys.
+     */
+    static String[] tokens(String pointer) {
+        if (pointer.isEmpty()) return new String[0];
+        String[] tokens = pointer.substring(1).split("/", -1);
+        for (int i = 0; i < tokens.length; i++) tokens[i] = tokens[i].replace("~1", "/").replace("~0", "~");
+        return tokens;
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Escapes a key to be a step of a JSON Pointer.
+     *
+     * @param key the key.
+     * @return the step, without its leading /.
+     */
+    static String escape(String key) {
+        return key.replace("~", "~0").replace("/", "~1");
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Parses a step of a JSON Pointer as an array index.
+     *
+     * @param token the step.
+     * @return the index, or -1 if the step is not one.
+     */
+    static int index(String token) {
+        if (token.isEmpty() || token.length() > 9 || (token.length() > 1 && token.charAt(0) == '0')) return -1;
+        for (int i = 0; i < token.length(); i++) {
+            if (token.charAt(i) < '0' || token.charAt(i) > '9') return -1;
+        }
+        return Integer.parseInt(token);
+    }
+
+    /**
+     * One step of a path.
+     *
+     * @param name  the key to follow, or null to follow any key if the index is also -1.
+     * @param index the index to follow, or -1.
+     * @param deep  true if the step can be taken at any depth.
+     */
+    private record Step(String name, int index, boolean deep) {
+
+        boolean matches(String key) {
+            return name == null ? index == -1 : name.equals(key);
+        }
+
+        boolean matches(int i) {
+            return index == -1 ? name == null : index == i;
+        }
+
+    }
+
+    /**
+     * Parses the JSONPath subset.
+     */
+    private static final class Parser {
+
+        private final String path;
+        private int position = 1;
+
+        private Parser(String path) {
+            this.path = path;
+        }
+
+        private Step[] parse() {
+            List<Step> steps = new ArrayList<>();
+            while (position < path.length()) {
+                char c = path.charAt(position);
+                boolean deep = false;
+                if (c == '.') {
+                    position++;
+                    if (position < path.length() && path.charAt(position) == '.') {
+                        deep = true;
+                        position++;
+                    }
+                    if (position < path.length() && path.charAt(position) == '[') steps.add(this.bracket(deep));
+                    else steps.add(this.name(deep));
+                } else if (c == '[') steps.add(this.bracket(false));
+                else throw this.error("Expected . or [");
+            }
+            return steps.toArray(new Step[0]);
+        }
+
+        private Step name(boolean deep) {
+            int start = position;
+            while (position < path.length() && path.charAt(position) != '.' && path.charAt(position) != '[') position++;
+            if (position == start) throw this.error("Expected a key");
+            String name = path.substring(start, position);
+            return name.equals("*") ? new Step(null, -1, deep) : new Step(name, -1, deep);
+        }
+
+        private Step bracket(boolean deep) {
+            position++;
+            if (position >= path.length()) throw this.error("Unclosed [");
+            char c = path.charAt(position);
+            Step step;
+            if (c == '*') {
+                position++;
+                step = new Step(null, -1, deep);
+            } else if (c == '\'' || c == '"') step = new Step(this.quoted(c), -1, deep);
+            else {
+                int start = position;
+                while (position < path.length() && path.charAt(position) >= '0' && path.charAt(position) <= '9') position++;
+                int index = JSONPath.index(path.substring(start, position));
+                if (index == -1) throw this.error("Expected an index, a quoted key or *");
+                step = new Step(null, index, deep);
+            }
+            if (position >= path.length() || path.charAt(position) != ']') throw this.error("Expected ]");
+            position++;
+            return step;
+        }
+
+        private String quoted(char quote) {
+            StringBuilder builder = new StringBuilder();
+            position++;
+            while (position < path.length()) {
+                char c = path.charAt(position++);
+                if (c == quote) return builder.toString();
+                if (c == '\\' && position < path.length()) c = path.charAt(position++);
+                builder.append(c);
+            }
+            throw this.error("Unclosed quote");
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid path '" + path + "': " + message + " at index " + position + ".");
+        }
+
+    }
+    // </editor-fold>
+
+}
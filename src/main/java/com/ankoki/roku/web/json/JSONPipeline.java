@@ -0,0 +1,396 @@
+package com.ankoki.roku.web.json;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Rewrites JSON as it streams from a {@link JSONReader} to a {@link JSONWriter}, in stages.
+ * <p>
+ * Each stage acts on the values a {@link JSONPath} leads to, for example:
+ * <pre>{@code
+ * JSONPipeline migration = new JSONPipeline()
+ *         .rename("$.players[*].kills", "killCount")
+ *         .drop("$..cache")
+ *         .map("$..-x", tag -> tag.equals("com.example.OldHome") ? "com.example.Home" : tag)
+ *         .filter("$.players[*]", player -> !Boolean.TRUE.equals(((Map<?, ?>) player).get("banned")));
+ * migration.transform(path, path);
+ * }</pre>
+ * Everything else is copied through a token at a time. Only the values handed to a filter or map are
+ * ever built, so a file of any size can be rewritten with little memory. Renamed and dropped values are
+ * never built at all. Numbers which are copied through are written exactly as they were read.
+ * <p>
+ * Paths are matched against where a value is in the source, before any stage has changed it. The stages
+ * for a value run in the order they were added, before any stages for values inside of it. A pipeline
+ * can be shared between threads once all of its stages have been added.
+ */
+public class JSONPipeline {
+
+    private static final Object DROPPED = new Object();
+
+    private final List<Stage> stages = new ArrayList<>();
+
+    // <editor-fold defaultstate="collapsed" desc="Stages">
+    /**
+     * Adds a stage which keeps only the values at a path that pass a test.
+     * Each value is built, with numbers as {@link NumberPolicy#NATIVE}, to be tested.
+     *
+     * @param path      the path, see {@link JSONPath#compile(String)}.
+     * @param predicate the test, which is given each value and returns false to drop it.
+     * @return the current pipeline, for chaining.
+     */
+    public JSONPipeline filter(String path, Predicate<Object> predicate) {
+        stages.add(new Stage(Type.FILTER, JSONPath.compile(path), predicate));
+        return this;
+    }
+
+    /**
+     * Adds a stage which renames the keys at a path. Array elements the path leads to are not affected.
+     *
+     * @param path the path, see {@link JSONPath#compile(String)}.
+     * @param name the new name.
+     * @return the current pipeline, for chaining.
+     */
+    public JSONPipeline rename(String path, String name) {
+        stages.add(new Stage(Type.RENAME, JSONPath.compile(path), name));
+        return this;
+    }
+
+    /**
+     * Adds a stage which replaces the values at a path.
+     * Each value is built, with numbers as {@link NumberPolicy#NATIVE}, to be replaced.
+     *
+     * @param path     the path, see {@link JSONPath#compile(String)}.
+     * @param function makes the new value from the old one.
+     * @return the current pipeline, for chaining.
+     */
+    public JSONPipeline map(String path, UnaryOperator<Object> function) {
+        stages.add(new Stage(Type.MAP, JSONPath.compile(path), function));
+        return this;
+    }
+
+    /**
+     * Adds a stage which drops the values at a path, along with their keys.
+     *
+     * @param path the path, see {@link JSONPath#compile(String)}.
+     * @return the current pipeline, for chaining.
+     */
+    public JSONPipeline drop(String path) {
+        stages.add(new Stage(Type.DROP, JSONPath.compile(path), null));
+        return this;
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Transforming">
+    /**
+     * Transforms the next value of a reader, writing the result to a writer.
+     * The reader's number policy is changed, and the writer is not flushed.
+     *
+     * @param reader the reader.
+     * @param writer the writer.
+     * @throws IOException if the reader or writer could not be used.
+     */
+    public void transform(JSONReader reader, JSONWriter writer) throws IOException {
+        new Run(reader, writer).value(null);
+    }
+
+    /**
+     * Transforms JSON text.
+     *
+     * @param json the text.
+     * @return the transformed text.
+     * @throws com.ankoki.roku.web.json.exceptions.MalformedJsonException if there is an issue with the JSON.
+     */
+    public String transform(String json) {
+        StringBuilder builder = new StringBuilder(json.length());
+        try {
+            JSONReader reader = new JSONReader(new StringReader(json));
+            this.transform(reader, new JSONWriter(builder));
+            reader.peek();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Transforms a UTF-8 encoded JSON file into another. The result is written next to the target first,
+     * and only replaces it once it is complete, so the source and target may be the same file.
+     *
+     * @param source the file to read.
+     * @param target the file to write.
+     * @throws IOException if either file could not be used.
+     */
+    public void transform(Path source, Path target) throws IOException {
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (JSONReader reader = new JSONReader(Files.newInputStream(source));
+             Writer out = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            this.transform(reader, new JSONWriter(out));
+            reader.peek();
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(temporary);
+            throw ex;
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Internal Methods">
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Reads the next value into a tree, leaving objects tagged with a {@link JSONSerializable} as maps
+     * so that stages see the JSON as it is written.
+     *
+     * @param reader the reader.
+     * @return the value.
+     * @throws IOException if the source could not be read.
+     */
+    private static Object read(JSONReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT -> {
+                JSON json = new JSON();
+                reader.beginObject();
+                while (reader.hasNext()) json.put(reader.nextName(), JSONPipeline.read(reader));
+                reader.endObject();
+                return json;
+            }
+            case BEGIN_ARRAY -> {
+                List<Object> list = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) list.add(JSONPipeline.read(reader));
+                reader.endArray();
+                return list;
+            }
+            default -> {
+                return reader.nextValue();
+            }
+        }
+    }
+
+    private enum Type {
+        FILTER,
+        RENAME,
+        MAP,
+        DROP
+    }
+
+    /**
+     * One stage of the pipeline.
+     *
+     * @param type     what the stage does.
+     * @param path     where it does it.
+     * @param argument the predicate, new name or function.
+     */
+    private record Stage(Type type, JSONPath path, Object argument) {}
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * One run of the pipeline, which keeps track of the keys and indexes which lead to the current value.
+     */
+    private final class Run {
+
+        private final JSONReader reader;
+        private final JSONWriter writer;
+        private Object[] path = new Object[16];
+        private int depth;
+
+        private Run(JSONReader reader, JSONWriter writer) {
+            this.reader = reader;
+            this.writer = writer;
+            reader.setNumberPolicy(NumberPolicy.LAZY);
+        }
+
+        /**
+         * Transforms the next value of the reader, which is at the current path.
+         *
+         * @param name the name to write before the value, or null if it is not in an object.
+         * @throws IOException if the reader or writer could not be used.
+         */
+        private void value(String name) throws IOException {
+            boolean build = false;
+            for (Stage stage : stages) {
+                if (stage.type() == Type.RENAME || !stage.path().matches(path, depth, false)) continue;
+                if (stage.type() == Type.DROP) {
+                    reader.skipValue();
+                    return;
+                }
+                build = true;
+            }
+            if (build) {
+                reader.setNumberPolicy(NumberPolicy.NATIVE);
+                Object value = JSONPipeline.read(reader);
+                reader.setNumberPolicy(NumberPolicy.LAZY);
+                value = this.tree(value);
+                if (value == DROPPED) return;
+                if (name != null) writer.name(name);
+                writer.writeValue(value);
+                return;
+            }
+            if (name != null) writer.name(name);
+            if (!this.below()) {
+                this.copy();
+                return;
+            }
+            switch (reader.peek()) {
+                case BEGIN_OBJECT -> {
+                    reader.beginObject();
+                    writer.beginObject();
+                    while (reader.hasNext()) {
+                        String key = reader.nextName();
+                        this.push(key);
+                        this.value(this.rename(key));
+                        depth--;
+                    }
+                    reader.endObject();
+                    writer.endObject();
+                }
+                case BEGIN_ARRAY -> {
+                    reader.beginArray();
+                    writer.beginArray();
+                    for (int i = 0; reader.hasNext(); i++) {
+                        this.push(i);
+                        this.value(null);
+                        depth--;
+                    }
+                    reader.endArray();
+                    writer.endArray();
+                }
+                default -> this.copy();
+            }
+        }
+
+        /**
+         * Runs the stages for a value which has been built, and for the values inside of it.
+         *
+         * @param value the value, which is at the current path.
+         * @return the new value, or {@link #DROPPED}.
+         */
+        @SuppressWarnings("unchecked")
+        private Object tree(Object value) {
+            for (Stage stage : stages) {
+                if (stage.type() == Type.RENAME || !stage.path().matches(path, depth, false)) continue;
+                switch (stage.type()) {
+                    case DROP -> {
+                        return DROPPED;
+                    }
+                    case FILTER -> {
+                        if (!((Predicate<Object>) stage.argument()).test(value)) return DROPPED;
+                    }
+                    default -> value = ((UnaryOperator<Object>) stage.argument()).apply(value);
+                }
+            }
+            if (!this.below()) return value;
+            if (value instanceof Map<?, ?> map) {
+                JSON json = new JSON();
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    String key = String.valueOf(entry.getKey());
+                    this.push(key);
+                    Object child = this.tree(entry.getValue());
+                    if (child != DROPPED) json.put(this.rename(key), child);
+                    depth--;
+                }
+                return json;
+            }
+            if (value instanceof List<?> list) {
+                List<Object> copy = new ArrayList<>(list.size());
+                for (int i = 0; i < list.size(); i++) {
+                    this.push(i);
+                    Object child = this.tree(list.get(i));
+                    if (child != DROPPED) copy.add(child);
+                    depth--;
+                }
+                return copy;
+            }
+            return value;
+        }
+
+        /**
+         * Gets the name the key at the current path is written with.
+         *
+         * @param key the key.
+         * @return the name.
+         */
+        private String rename(String key) {
+            for (Stage stage : stages) {
+                if (stage.type() == Type.RENAME && stage.path().matches(path, depth, false)) key = (String) stage.argument();
+            }
+            return key;
+        }
+
+        /**
+         * Checks if any stage could act on a value inside of the value at the current path.
+         *
+         * @return true if one could.
+         */
+        private boolean below() {
+            for (Stage stage : stages) {
+                if (stage.path().matches(path, depth, true)) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Copies the next value of the reader to the writer, token by token.
+         *
+         * @throws IOException if the reader or writer could not be used.
+         */
+        private void copy() throws IOException {
+            int nesting = 0;
+            do {
+                switch (reader.peek()) {
+                    case BEGIN_OBJECT -> {
+                        reader.beginObject();
+                        writer.beginObject();
+                        nesting++;
+                    }
+                    case END_OBJECT -> {
+                        reader.endObject();
+                        writer.endObject();
+                        nesting--;
+                    }
+                    case BEGIN_ARRAY -> {
+                        reader.beginArray();
+                        writer.beginArray();
+                        nesting++;
+                    }
+                    case END_ARRAY -> {
+                        reader.endArray();
+                        writer.endArray();
+                        nesting--;
+                    }
+                    case NAME -> writer.name(reader.nextName());
+                    case STRING -> writer.value(reader.nextString());
+                    case NUMBER -> writer.value(reader.nextNumber());
+                    case BOOLEAN -> writer.value(reader.nextBoolean());
+                    case NULL -> {
+                        reader.nextNull();
+                        writer.nullValue();
+                    }
+                    // Fails with the reader's own error.
+                    default -> reader.skipValue();
+                }
+            } while (nesting > 0);
+        }
+
+        private void push(Object step) {
+            if (depth == path.length) path = Arrays.copyOf(path, depth * 2);
+            path[depth++] = step;
+        }
+
+    }
+    // </editor-fold>
+
+}
@@ -0,0 +1,682 @@
+package com.ankoki.roku.web.json;
+
+import com.ankoki.roku.misc.StringUtils;
+import com.ankoki.roku.web.json.exceptions.MalformedJsonException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads JSON one token at a time.
+ * <p>
+ * Only a fixed size buffer of the source is held at once, so documents of any size can be read
+ * with constant memory. Use {@link #peek()} to see what comes next, and the matching method
+ * to consume it, for example:
+ * <pre>{@code
+ * reader.beginObject();
+ * while (reader.hasNext()) {
+ *     String name = reader.nextName();
+ *     if (name.equals("kills")) kills = reader.nextInt();
+ *     else reader.skipValue();
+ * }
+ * reader.endObject();
+ * }</pre>
+ */
+public class JSONReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int EMPTY_DOCUMENT = 0,
+            NONEMPTY_DOCUMENT = 1,
+            EMPTY_OBJECT = 2,
+            DANGLING_NAME = 3,
+            NONEMPTY_OBJECT = 4,
+            EMPTY_ARRAY = 5,
+            NONEMPTY_ARRAY = 6;
+
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position, limit;
+    private long consumed;
+
+    private int[] stack = new int[32];
+    private int depth = 1;
+    private JSONToken peeked;
+
+    private final StringBuilder scratch = new StringBuilder();
+    private final NumberLexer lexer = new NumberLexer();
+    private final KeyTable names = new KeyTable();
+    private NumberPolicy numberPolicy = NumberPolicy.NATIVE;
+    private boolean typeHeader;
+    private JSONSerializable.Registration[] types;
+
+    /**
+     * Creates a new reader over characters.
+     *
+     * @param in the source.
+     */
+    public JSONReader(Reader in) {
+        this.in = in;
+        stack[0] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Creates a new reader over UTF-8 encoded bytes.
+     *
+     * @param in the source.
+     */
+    public JSONReader(InputStream in) {
+        this(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a new reader over a channel of UTF-8 encoded bytes.
+     *
+     * @param channel the source.
+     */
+    public JSONReader(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sets how numbers are represented once read. Defaults to {@link NumberPolicy#NATIVE}.
+     *
+     * @param numberPolicy the policy.
+     * @return the current reader, for chaining.
+     */
+    public JSONReader setNumberPolicy(NumberPolicy numberPolicy) {
+        this.numberPolicy = numberPolicy;
+        return this;
+    }
+
+    /**
+     * Sets whether a "-types" header at the start of the outermost object should be read into a table for
+     * numbered tags when values are read, rather than kept as an entry, see
+     * {@link JSONWriter#setTypeHeader(boolean)}. Defaults to false.
+     *
+     * @param typeHeader true to read the header.
+     * @return the current reader, for chaining.
+     */
+    public JSONReader setTypeHeader(boolean typeHeader) {
+        this.typeHeader = typeHeader;
+        return this;
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Tokens">
+    /**
+     * Looks at the next token without consuming it.
+     *
+     * @return the next token.
+     * @throws IOException            if the source could not be read.
+     * @throws MalformedJsonException if the JSON is malformed.
+     */
+    public JSONToken peek() throws IOException {
+        if (peeked != null) return peeked;
+        int c;
+        switch (stack[depth - 1]) {
+            case EMPTY_ARRAY -> {
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                c = this.nextNonWhitespace();
+                if (c == ']') return peeked = JSONToken.END_ARRAY;
+            }
+            case NONEMPTY_ARRAY -> {
+                c = this.nextNonWhitespace();
+                if (c == ']') return peeked = JSONToken.END_ARRAY;
+                if (c != ',') throw this.error("Expected ',' or ']'");
+                position++;
+                c = this.nextNonWhitespace();
+            }
+            case EMPTY_OBJECT, NONEMPTY_OBJECT -> {
+                boolean empty = stack[depth - 1] == EMPTY_OBJECT;
+                stack[depth - 1] = DANGLING_NAME;
+                c = this.nextNonWhitespace();
+                if (c == '}') return peeked = JSONToken.END_OBJECT;
+                if (!empty) {
+                    if (c != ',') throw this.error("Expected ',' or '}'");
+                    position++;
+                    c = this.nextNonWhitespace();
+                }
+                if (c != '"') throw this.error("Expected a key");
+                return peeked = JSONToken.NAME;
+            }
+            case DANGLING_NAME -> {
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                if (this.nextNonWhitespace() != ':') throw this.error("Expected ':'");
+                position++;
+                c = this.nextNonWhitespace();
+            }
+            case EMPTY_DOCUMENT -> {
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                c = this.nextNonWhitespace();
+            }
+            default -> {
+                if (this.nextNonWhitespace() != -1) throw this.error("Expected the end of the JSON");
+                return peeked = JSONToken.END_DOCUMENT;
+            }
+        }
+        return peeked = switch (c) {
+            case '{' -> JSONToken.BEGIN_OBJECT;
+            case '[' -> JSONToken.BEGIN_ARRAY;
+            case '"' -> JSONToken.STRING;
+            case 't', 'f' -> JSONToken.BOOLEAN;
+            case 'n' -> JSONToken.NULL;
+            default -> {
+                if (c == '-' || (c >= '0' && c <= '9')) yield JSONToken.NUMBER;
+                throw this.error("Expected a value");
+            }
+        };
+    }
+
+    /**
+     * Checks if the current object or array has another element.
+     *
+     * @return true if there is another element.
+     * @throws IOException if the source could not be read.
+     */
+    public boolean hasNext() throws IOException {
+        JSONToken token = this.peek();
+        return token != JSONToken.END_OBJECT && token != JSONToken.END_ARRAY && token != JSONToken.END_DOCUMENT;
+    }
+
+    /**
+     * Consumes the start of an object.
+     *
+     * @throws IOException if the source could not be read.
+     */
+    public void beginObject() throws IOException {
+        this.expect(JSONToken.BEGIN_OBJECT);
+        position++;
+        this.push(EMPTY_OBJECT);
+    }
+
+    /**
+     * Consumes the end of an object.
+     *
+     * @throws IOException if the source could not be read.
+     */
+    public void endObject() throws IOException {
+        this.expect(JSONToken.END_OBJECT);
+        position++;
+        depth--;
+    }
+
+    /**
+     * Consumes the start of an array.
+     *
+     * @throws IOException if the source could not be read.
+     */
+    public void beginArray() throws IOException {
+        this.expect(JSONToken.BEGIN_ARRAY);
+        position++;
+        this.push(EMPTY_ARRAY);
+    }
+
+    /**
+     * Consumes the end of an array.
+     *
+     * @throws IOException if the source could not be read.
+     */
+    public void endArray() throws IOException {
+        this.expect(JSONToken.END_ARRAY);
+        position++;
+        depth--;
+    }
+
+    /**
+     * Consumes the name of the next entry in an object.
+     * Repeated names share one String instance.
+     *
+     * @return the name.
+     * @throws IOException if the source could not be read.
+     */
+    public String nextName() throws IOException {
+        this.expect(JSONToken.NAME);
+        int start = position + 1;
+        int hash = 0;
+        for (int i = start; i < limit && i - start <= KeyTable.MAX_LENGTH; i++) {
+            char c = buffer[i];
+            if (c == '"') {
+                position = i + 1;
+                String name = names.find(buffer, start, i, hash);
+                return name != null ? name : names.add(new String(buffer, start, i - start));
+            }
+            if (c == '\\') break;
+            hash = 31 * hash + c;
+        }
+        return names.intern(this.readString());
+    }
+
+    /**
+     * Consumes a string value.
+     *
+     * @return the string.
+     * @throws IOException if the source could not be read.
+     */
+    public String nextString() throws IOException {
+        this.expect(JSONToken.STRING);
+        return this.readString();
+    }
+
+    /**
+     * Consumes a boolean value.
+     *
+     * @return the boolean.
+     * @throws IOException if the source could not be read.
+     */
+    public boolean nextBoolean() throws IOException {
+        this.expect(JSONToken.BOOLEAN);
+        boolean value = buffer[position] == 't';
+        this.readLiteral(value ? "true" : "false");
+        return value;
+    }
+
+    /**
+     * Consumes a null value.
+     *
+     * @throws IOException if the source could not be read.
+     */
+    public void nextNull() throws IOException {
+        this.expect(JSONToken.NULL);
+        this.readLiteral("null");
+    }
+
+    /**
+     * Consumes a number value.
+     *
+     * @return the number, represented as set by {@link #setNumberPolicy(NumberPolicy)}.
+     * @throws IOException if the source could not be read.
+     */
+    public Number nextNumber() throws IOException {
+        this.lex();
+        Number number = lexer.finish(numberPolicy);
+        if (number == null) throw this.error("Malformed number");
+        return number;
+    }
+
+    /**
+     * Consumes a number value as an int, without boxing it.
+     * Whole numbers written with a fraction or an exponent, such as {@code 2.0}, are allowed.
+     *
+     * @return the int.
+     * @throws IOException            if the source could not be read.
+     * @throws MalformedJsonException if the number has a fraction, or does not fit in an int.
+     */
+    public int nextInt() throws IOException {
+        long value = this.nextLong();
+        if ((int) value != value) throw this.error("Expected a whole number which fits in an int, but was " + value);
+        return (int) value;
+    }
+
+    /**
+     * Consumes a number value as a long, without boxing it.
+     * Whole numbers written with a fraction or an exponent, such as {@code 2.0}, are allowed.
+     *
+     * @return the long.
+     * @throws IOException            if the source could not be read.
+     * @throws MalformedJsonException if the number has a fraction, or does not fit in a long.
+     */
+    public long nextLong() throws IOException {
+        this.lex();
+        try {
+            return lexer.finishLong();
+        } catch (NumberFormatException ex) {
+            throw this.error("Malformed number");
+        } catch (ArithmeticException ex) {
+            throw this.error("Expected a whole number which fits in a long, but was " + lexer.text());
+        }
+    }
+
+    /**
+     * Consumes a number value as a double, without boxing it.
+     *
+     * @return the nearest double.
+     * @throws IOException if the source could not be read.
+     */
+    public double nextDouble() throws IOException {
+        this.lex();
+        try {
+            return lexer.finishDouble();
+        } catch (NumberFormatException ex) {
+            throw this.error("Malformed number");
+        }
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Consumes a number value exactly as it was written, whatever the number policy.
+     *
+     * @return the number.
+     * @throws IOException if the source could not be read.
+     */
+    BigDecimal nextBigDecimal() throws IOException {
+        this.lex();
+        Number number = lexer.finish(NumberPolicy.LAZY);
+        if (number == null) throw this.error("Malformed number");
+        return ((JSONNumber) number).toBigDecimal();
+    }
+
+    /**
+     * Skips the next value, including everything inside it if it is an object or array.
+     * Nothing is decoded, brackets and quotes are only balanced.
+     * If the next token is a name, only the name is skipped.
+     *
+     * @throws IOException if the source could not be read.
+     */
+    public void skipValue() throws IOException {
+        JSONToken token = this.peek();
+        switch (token) {
+            case BEGIN_OBJECT, BEGIN_ARRAY -> {
+                peeked = null;
+                position++;
+                int nesting = 1;
+                while (nesting > 0) {
+                    if (position == limit && !this.fill()) throw this.error("Unclosed " + (token == JSONToken.BEGIN_OBJECT ? "object" : "array"));
+                    char c = buffer[position++];
+                    if (c == '"') this.skipString();
+                    else if (c == '{' || c == '[') nesting++;
+                    else if (c == '}' || c == ']') nesting--;
+                }
+            }
+            case NAME, STRING -> {
+                peeked = null;
+                position++;
+                this.skipString();
+            }
+            case NUMBER, BOOLEAN, NULL -> {
+                peeked = null;
+                while (position < limit || this.fill()) {
+                    char c = buffer[position];
+                    if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r' || c == '\t') break;
+                    position++;
+                }
+            }
+            default -> throw this.error("Expected a value");
+        }
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Trees">
+    /**
+     * Consumes the next value, building any objects and arrays inside of it.
+     * Objects tagged with a registered {@link JSONSerializable} are deserialized.
+     *
+     * @return the value.
+     * @throws IOException if the source could not be read.
+     */
+    public Object nextValue() throws IOException {
+        return switch (this.peek()) {
+            case BEGIN_OBJECT -> {
+                JSON json = new JSON();
+                this.beginObject();
+                if (this.hasNext()) {
+                    String key = this.nextName();
+                    // Codecs write the tag first, so the object can be handed straight to its codec.
+                    if (key.equals("-x") && this.peek() == JSONToken.STRING) {
+                        String type = this.nextString();
+                        JSONCodec<?> codec = JSONSerializable.codec(type);
+                        if (codec != null) yield codec.read(this);
+                        json.put(key, type);
+                    } else if (key.equals("-x") && this.peek() == JSONToken.NUMBER) {
+                        Number id = this.nextNumber();
+                        JSONCodec<?> codec = JSONSerializable.codec(id.intValue(), types);
+                        if (codec != null) yield codec.read(this);
+                        json.put(key, id);
+                    } else if (!this.header(key)) json.put(key, this.nextValue());
+                }
+                this.readMembers(json, false);
+                yield JSONSerializable.resolve(json, types);
+            }
+            case BEGIN_ARRAY -> {
+                List<Object> list = new ArrayList<>();
+                this.beginArray();
+                while (this.hasNext()) list.add(this.nextValue());
+                this.endArray();
+                yield list;
+            }
+            case STRING -> this.nextString();
+            case NUMBER -> this.nextNumber();
+            case BOOLEAN -> this.nextBoolean();
+            case NULL -> {
+                this.nextNull();
+                yield null;
+            }
+            default -> throw this.error("Expected a value");
+        };
+    }
+
+    /**
+     * Consumes the next object as a {@link JSON}.
+     *
+     * @return the object.
+     * @throws IOException if the source could not be read.
+     */
+    public JSON nextJSON() throws IOException {
+        JSON json = new JSON();
+        this.readObject(json);
+        return json;
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Reads the next object into the given map.
+     *
+     * @param target the map to fill.
+     * @throws IOException if the source could not be read.
+     */
+    void readObject(Map<String, Object> target) throws IOException {
+        this.beginObject();
+        this.readMembers(target, true);
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Reads the rest of an object into the given map, up to and including its end.
+     *
+     * @param target the map to fill.
+     * @param first  true if no member of the object has been read yet.
+     * @throws IOException if the source could not be read.
+     */
+    private void readMembers(Map<String, Object> target, boolean first) throws IOException {
+        for (; this.hasNext(); first = false) {
+            String key = this.nextName();
+            if (first && this.header(key)) continue;
+            target.put(key, this.nextValue());
+        }
+        this.endObject();
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Reads the "-types" header at the start of the outermost object into a table for numbered tags,
+     * if headers are wanted, see {@link #setTypeHeader(boolean)}.
+     *
+     * @param key the name which has just been read.
+     * @return true if it was the header, which has then been consumed.
+     * @throws IOException if the source could not be read.
+     */
+    private boolean header(String key) throws IOException {
+        if (!typeHeader || depth != 2 || !key.equals("-types") || this.peek() != JSONToken.BEGIN_ARRAY) return false;
+        this.types = JSONSerializable.table((List<?>) this.nextValue());
+        return true;
+    }
+    // </editor-fold>
+
+    /**
+     * Closes the underlying source.
+     *
+     * @throws IOException if the source could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Internal Methods">
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Reads the string at the current position, which must be an opening quote.
+     *
+     * @return the unescaped string.
+     * @throws IOException if the source could not be read.
+     */
+    private String readString() throws IOException {
+        peeked = null;
+        int start = ++position;
+        // Fast path, the whole string is in the buffer and has nothing to unescape.
+        while (position < limit) {
+            char c = buffer[position];
+            if (c == '"') return new String(buffer, start, position++ - start);
+            if (c == '\\') break;
+            position++;
+        }
+        scratch.setLength(0);
+        scratch.append(buffer, start, position - start);
+        while (true) {
+            if (position == limit && !this.fill()) throw this.error("Quote found with no closing quote");
+            int run = position;
+            while (position < limit && buffer[position] != '"' && buffer[position] != '\\') position++;
+            scratch.append(buffer, run, position - run);
+            if (position == limit) continue;
+            if (buffer[position++] == '"') return scratch.toString();
+            if (position == limit && !this.fill()) throw this.error("Unfinished escape sequence");
+            char escaped = buffer[position++];
+            if (escaped == 'u') {
+                if (!this.ensure(4)) throw this.error("Unfinished unicode escape");
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = StringUtils.hex(buffer[position]);
+                    if (digit < 0) throw this.error("Expected a hex digit");
+                    value = (value << 4) | digit;
+                    position++;
+                }
+                scratch.append((char) value);
+            } else {
+                int unescaped = StringUtils.unescape(escaped);
+                if (unescaped == -1) {
+                    position--;
+                    throw this.error("Invalid escape sequence");
+                }
+                scratch.append((char) unescaped);
+            }
+        }
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Skips over a string, the opening quote having already been consumed.
+     *
+     * @throws IOException if the source could not be read.
+     */
+    private void skipString() throws IOException {
+        while (true) {
+            if (position == limit && !this.fill()) throw this.error("Quote found with no closing quote");
+            char c = buffer[position++];
+            if (c == '"') return;
+            if (c == '\\') {
+                if (position == limit && !this.fill()) throw this.error("Unfinished escape sequence");
+                position++;
+            }
+        }
+    }
+
+    private void readLiteral(String literal) throws IOException {
+        peeked = null;
+        int length = literal.length();
+        if (!this.ensure(length)) throw this.error("Expected '" + literal + "'");
+        for (int i = 0; i < length; i++) {
+            if (buffer[position] != literal.charAt(i)) throw this.error("Expected '" + literal + "'");
+            position++;
+        }
+    }
+
+    private void expect(JSONToken token) throws IOException {
+        if (this.peek() != token) throw this.error("Expected " + token + " but was " + peeked);
+        peeked = null;
+    }
+
+    private void push(int scope) {
+        if (depth == stack.length) stack = Arrays.copyOf(stack, depth * 2);
+        stack[depth++] = scope;
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Skips any whitespace, and peeks the next character.
+     *
+     * @return the next character, or -1 if there are none left.
+     * @throws IOException if the source could not be read.
+     */
+    private int nextNonWhitespace() throws IOException {
+        while (position < limit || this.fill()) {
+            char c = buffer[position];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return c;
+            position++;
+        }
+        return -1;
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Reads more of the source into the buffer, once everything in it has been consumed.
+     *
+     * @return false if the end of the source has been reached.
+     * @throws IOException if the source could not be read.
+     */
+    private boolean fill() throws IOException {
+        return this.ensure(1);
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Makes sure the given amount of characters are in the buffer past the current position.
+     *
+     * @param amount the amount of characters needed.
+     * @return false if the end of the source was reached first.
+     * @throws IOException if the source could not be read.
+     */
+    private boolean ensure(int amount) throws IOException {
+        if (limit - position >= amount) return true;
+        consumed += position;
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+        position = 0;
+        while (limit < amount) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read == -1) return false;
+            limit += read;
+        }
+        return true;
+    }
+
+    private void lex() throws IOException {
+        this.expect(JSONToken.NUMBER);
+        lexer.reset();
+        while ((position < limit || this.fill()) && lexer.accept(buffer[position])) position++;
+    }
+
+    private MalformedJsonException error(String message) {
+        return new MalformedJsonException(message + " at index " + (consumed + position) + ".");
+    }
+    // </editor-fold>
+
+}
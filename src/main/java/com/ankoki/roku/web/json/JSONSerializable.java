@@ -2,41 +2,137 @@ package com.ankoki.roku.web.json;
 
 import org.jetbrains.annotations.Nullable;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.ServiceLoader;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
  * Represents an object that may be serialized into JSON.
  * </p>
  * These classes <bold>must</bold> provide a method to deserialize a map into the current object.
  * This method must be called `deserialize`, accepts a {@link Map}<{@link String}, {@link Object}> parameter, and returns a single value of the type.
+ * <p>
+ * Alternatively, classes marked with {@link com.ankoki.roku.web.json.annotations.GenerateCodec} have a
+ * {@link JSONCodec} generated for them which does both, and is registered with {@link #register(JSONCodec)}.
+ * <p>
+ * Serialized objects are tagged with their class under "-x". By default the tag is the full name of the
+ * class, but a {@link JSONWriter} can instead write a shorter alias given with {@link #alias(Class, String)},
+ * or a number, see {@link TagPolicy}.
  */
 public abstract class JSONSerializable {
 
-	private static Map<String, Class<? extends JSONSerializable>> registry = new ConcurrentHashMap<>();
+	private static final Map<String, Registration> registry = new ConcurrentHashMap<>();
+	private static final Map<Class<?>, JSONCodec<?>> codecs = new ConcurrentHashMap<>();
+	private static final Map<Class<?>, Registration> registrations = new ConcurrentHashMap<>();
+	private static volatile Registration[] ids = new Registration[0];
+	private static final ClassValue<Function<Map<String, Object>, Object>> deserializers = new ClassValue<>() {
+		@Override
+		protected Function<Map<String, Object>, Object> computeValue(Class<?> type) {
+			return JSONSerializable.createDeserializer(type);
+		}
+	};
 
 	/**
 	 * Registers a json serializable class.
+	 * <p>
+	 * The class's deserialize method is looked up here, once, so nothing has to be found reflectively
+	 * each time one is parsed.
 	 *
 	 * @param clazz the class to register.
+	 * @throws IllegalStateException if the class does not have a static deserialize method.
 	 */
-	public static void register(Class<? extends JSONSerializable> clazz) {
+	public static synchronized void register(Class<? extends JSONSerializable> clazz) {
 		String alias = clazz.getName();
 		if (JSONSerializable.registry.containsKey(alias))
 			throw new IllegalArgumentException("Class '" + alias + "' is already a registered JSONSerializable.");
-		JSONSerializable.registry.put(alias, clazz);
+		JSONSerializable.add(new Registration(clazz, deserializers.get(clazz), null, ids.length, null));
+	}
+
+	/**
+	 * Registers a json serializable class through its codec.
+	 * Its objects are then written and read by the codec, without any reflection.
+	 *
+	 * @param codec the codec.
+	 */
+	public static synchronized void register(JSONCodec<? extends JSONSerializable> codec) {
+		String alias = codec.type().getName();
+		if (JSONSerializable.registry.containsKey(alias))
+			throw new IllegalArgumentException("Class '" + alias + "' is already a registered JSONSerializable.");
+		JSONSerializable.codecs.put(codec.type(), codec);
+		JSONSerializable.add(new Registration(codec.type(), map -> codec.deserialize(map), codec, ids.length, null));
+	}
+
+	/**
+	 * Gives a registered class a short alias, which a {@link JSONWriter} set to {@link TagPolicy#ALIAS}
+	 * tags its objects with instead of the full name of the class. Either is understood when parsing.
+	 * Any alias the class already had is replaced.
+	 *
+	 * @param clazz the registered class.
+	 * @param alias the alias.
+	 * @throws IllegalArgumentException if the class is not registered, or the alias is already taken.
+	 */
+	public static synchronized void alias(Class<? extends JSONSerializable> clazz, String alias) {
+		Registration registration = JSONSerializable.registrations.get(clazz);
+		if (registration == null)
+			throw new IllegalArgumentException("Class '" + clazz.getName() + "' is not a registered JSONSerializable.");
+		if (JSONSerializable.registry.containsKey(alias) && JSONSerializable.registry.get(alias) != registration)
+			throw new IllegalArgumentException("Alias '" + alias + "' is already taken.");
+		if (registration.alias() != null) JSONSerializable.registry.remove(registration.alias());
+		Registration aliased = new Registration(registration.type(), registration.deserializer(), registration.codec(), registration.id(), alias);
+		JSONSerializable.registry.put(alias, aliased);
+		JSONSerializable.registry.put(clazz.getName(), aliased);
+		JSONSerializable.registrations.put(clazz, aliased);
+		Registration[] ids = JSONSerializable.ids.clone();
+		ids[aliased.id()] = aliased;
+		JSONSerializable.ids = ids;
+	}
+
+	/**
+	 * Gets the number a registered class is tagged with by a {@link JSONWriter} set to {@link TagPolicy#ID}.
+	 * Classes are numbered in the order they were registered.
+	 *
+	 * @param clazz the class.
+	 * @return the number, or -1 if the class is not registered.
+	 */
+	public static int getId(Class<? extends JSONSerializable> clazz) {
+		Registration registration = JSONSerializable.registrations.get(clazz);
+		return registration == null ? -1 : registration.id();
 	}
 
 	/**
-	 * Gets a class instance by its full package and name if it is registered.
+	 * Registers every generated codec which can be found through the class loader, skipping
+	 * any classes which are already registered.
+	 * Plugins should pass their own class loader.
+	 *
+	 * @param loader the class loader to look through.
+	 */
+	public static synchronized void registerCodecs(ClassLoader loader) {
+		for (JSONCodec<?> codec : ServiceLoader.load(JSONCodec.class, loader)) {
+			if (!JSONSerializable.registry.containsKey(codec.type().getName())) JSONSerializable.register(codec);
+		}
+	}
+
+	/**
+	 * Gets a class instance by its full package and name, or its alias, if it is registered.
 	 *
 	 * @param name the name to look for.
 	 * @return the class, or null if not found.
 	 */
 	@Nullable
 	public static Class<? extends JSONSerializable> get(String name) {
-		return registry.get(name);
+		Registration registration = registry.get(name);
+		return registration == null ? null : registration.type();
 	}
 
 	/**
@@ -49,24 +145,222 @@ public abstract class JSONSerializable {
 	 */
 	@Nullable
 	protected static Object deserializeHelper(Class<? extends JSONSerializable> clazz, Map<String, Object> map) {
+		return deserializers.get(clazz).apply(map);
+	}
+
+	/**
+	 * <strong>INTERNAL USE ONLY</strong>
+	 * <p>
+	 * Turns a parsed map into its {@link JSONSerializable} if it is tagged with a registered one.
+	 *
+	 * @param map the parsed map.
+	 * @return the deserialized object, or the map if it is not tagged.
+	 */
+	static Object resolve(Map<String, Object> map) {
+		return JSONSerializable.resolve(map, null);
+	}
+
+	/**
+	 * <strong>INTERNAL USE ONLY</strong>
+	 * <p>
+	 * Turns a parsed map into its {@link JSONSerializable} if it is tagged with a registered one,
+	 * looking numbered tags up in the given table.
+	 *
+	 * @param map   the parsed map.
+	 * @param table the table read from the document's "-types" header, or null to use the registered numbers.
+	 * @return the deserialized object, or the map if it is not tagged.
+	 */
+	static Object resolve(Map<String, Object> map, Registration[] table) {
+		Object tag = map.get("-x");
+		Registration registration;
+		if (tag instanceof String name) registration = registry.get(name);
+		else if (tag instanceof Number id) registration = JSONSerializable.registration(id.intValue(), table);
+		else return map;
+		return registration == null ? map : registration.deserializer().apply(map);
+	}
+
+	/**
+	 * <strong>INTERNAL USE ONLY</strong>
+	 * <p>
+	 * Gets a registration by the number it is tagged with, which is only an index into an array.
+	 *
+	 * @param id    the number.
+	 * @param table the table read from the document's "-types" header, or null to use the registered numbers.
+	 * @return the registration, or null if there is none with the number.
+	 */
+	static Registration registration(int id, Registration[] table) {
+		if (table == null) table = ids;
+		return id >= 0 && id < table.length ? table[id] : null;
+	}
+
+	/**
+	 * <strong>INTERNAL USE ONLY</strong>
+	 * <p>
+	 * Gets the registration of a class.
+	 *
+	 * @param clazz the class.
+	 * @return the registration, or null if the class is not registered.
+	 */
+	static Registration registration(Class<?> clazz) {
+		return registrations.get(clazz);
+	}
+
+	/**
+	 * <strong>INTERNAL USE ONLY</strong>
+	 * <p>
+	 * Gets every registration, indexed by the number it is tagged with.
+	 *
+	 * @return the registrations, which must not be changed.
+	 */
+	static Registration[] registrations() {
+		return ids;
+	}
+
+	/**
+	 * <strong>INTERNAL USE ONLY</strong>
+	 * <p>
+	 * Builds the table a document's "-types" header describes, so numbered tags in the document are
+	 * looked up by index whatever order the classes were registered in here.
+	 *
+	 * @param names the names of the classes, in the order of their numbers.
+	 * @return the table, with nulls for classes which are not registered.
+	 */
+	static Registration[] table(List<?> names) {
+		Registration[] table = new Registration[names.size()];
+		for (int i = 0; i < table.length; i++) {
+			if (names.get(i) instanceof String name) table[i] = registry.get(name);
+		}
+		return table;
+	}
+
+	private static void add(Registration registration) {
+		JSONSerializable.registry.put(registration.type().getName(), registration);
+		JSONSerializable.registrations.put(registration.type(), registration);
+		Registration[] ids = Arrays.copyOf(JSONSerializable.ids, registration.id() + 1);
+		ids[registration.id()] = registration;
+		JSONSerializable.ids = ids;
+	}
+
+	/**
+	 * <strong>INTERNAL USE ONLY</strong>
+	 * <p>
+	 * Creates a function which calls the static deserialize method of a class.
+	 * <p>
+	 * Where it can, this spins up a lambda straight onto the method, which the JIT can inline like
+	 * any other call. That needs full access to the class, which classes in another plugin's class
+	 * loader or that are not public do not give, so those call through a {@link MethodHandle} instead.
+	 *
+	 * @param clazz the class.
+	 * @return the function.
+	 * @throws IllegalStateException if the class does not have a static deserialize method.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Function<Map<String, Object>, Object> createDeserializer(Class<?> clazz) {
+		Method method;
 		try {
-			Method method = clazz.getMethod("deserialize", Map.class);
+			method = clazz.getMethod("deserialize", Map.class);
+		} catch (NoSuchMethodException ex) {
+			method = null;
+		}
+		if (method == null || !Modifier.isStatic(method.getModifiers()))
+			throw new IllegalStateException("'" + clazz.getName() + "' does not have a static deserialize(Map<String, Object>) method. This is required.");
+		MethodHandle handle;
+		try {
+			handle = MethodHandles.publicLookup().unreflect(method);
+		} catch (IllegalAccessException ex) {
+			method.setAccessible(true);
 			try {
-				return method.invoke(null, map);
-			} catch (ReflectiveOperationException ex) {
-				ex.printStackTrace();
+				handle = MethodHandles.lookup().unreflect(method);
+			} catch (IllegalAccessException ex1) {
+				throw new IllegalStateException("'" + clazz.getName() + "' has a deserialize method which cannot be accessed.", ex1);
 			}
-		} catch (NoSuchMethodException ex) {
-			throw new IllegalStateException("'" + clazz.getPackageName() + "." + clazz.getName() + "' does not have a static deserialize(Map<String, Object>) method. This is required.");
 		}
-		return null;
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(clazz, MethodHandles.lookup());
+			CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+					MethodType.methodType(Function.class),
+					MethodType.methodType(Object.class, Object.class),
+					handle,
+					MethodType.methodType(method.getReturnType(), Map.class));
+			return (Function<Map<String, Object>, Object>) site.getTarget().invoke();
+		} catch (LambdaConversionException | IllegalAccessException ignored) {
+			// the class cannot be spun into a lambda from here, so the handle is called directly below
+		} catch (RuntimeException | Error ex) {
+			throw ex;
+		} catch (Throwable ex) {
+			throw new IllegalStateException(ex);
+		}
+		MethodHandle generic = handle.asType(MethodType.methodType(Object.class, Map.class));
+		return map -> {
+			try {
+				return generic.invokeExact(map);
+			} catch (RuntimeException | Error ex) {
+				throw ex;
+			} catch (Throwable ex) {
+				throw new IllegalStateException(ex);
+			}
+		};
+	}
+
+	/**
+	 * <strong>INTERNAL USE ONLY</strong>
+	 * <p>
+	 * Gets the registered codec for a class.
+	 *
+	 * @param clazz the class.
+	 * @return the codec, or null if the class was not registered with one.
+	 */
+	@SuppressWarnings("unchecked")
+	static JSONCodec<JSONSerializable> codec(Class<?> clazz) {
+		return (JSONCodec<JSONSerializable>) codecs.get(clazz);
+	}
+
+	/**
+	 * <strong>INTERNAL USE ONLY</strong>
+	 * <p>
+	 * Gets the registered codec for a class by its full package and name.
+	 *
+	 * @param name the name.
+	 * @return the codec, or null if the class was not registered with one.
+	 */
+	static JSONCodec<?> codec(String name) {
+		Registration registration = registry.get(name);
+		return registration == null ? null : registration.codec();
+	}
+
+	/**
+	 * <strong>INTERNAL USE ONLY</strong>
+	 * <p>
+	 * Gets the registered codec for a class by the number it is tagged with.
+	 *
+	 * @param id    the number.
+	 * @param table the table read from the document's "-types" header, or null to use the registered numbers.
+	 * @return the codec, or null if the class was not registered with one.
+	 */
+	static JSONCodec<?> codec(int id, Registration[] table) {
+		Registration registration = JSONSerializable.registration(id, table);
+		return registration == null ? null : registration.codec();
 	}
 
 	/**
 	 * Serializes the current class into a map.
+	 * <p>
+	 * Classes with a generated codec can hand this off to it, with {@code return <Class>_JSONCodec.INSTANCE.serialize(this);}.
 	 *
 	 * @return the map containing all data.
 	 */
 	public abstract Map<String, Object> serialize();
 
+	/**
+	 * A registered class, and the function which deserializes it.
+	 *
+	 * @param type         the class.
+	 * @param deserializer calls the class's deserialize method.
+	 * @param codec        the codec it was registered with, or null.
+	 * @param id           the number it is tagged with, which is the order it was registered in.
+	 * @param alias        the alias it is tagged with, or null.
+	 */
+	record Registration(Class<? extends JSONSerializable> type, Function<Map<String, Object>, Object> deserializer, JSONCodec<?> codec,
+						int id, String alias) {}
+
 }
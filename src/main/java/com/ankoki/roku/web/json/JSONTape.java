@@ -0,0 +1,849 @@
+package com.ankoki.roku.web.json;
+
+import com.ankoki.roku.web.json.exceptions.MalformedJsonException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A parsed JSON document held compactly, for large documents which are kept in memory.
+ * <p>
+ * A {@link JSON} holds a map entry, a boxed number or a String object for every value, which adds up to
+ * many times the size of the text. A JSONTape instead holds every token of the document, in order, in
+ * one {@code long[]}, the tape. Strings are kept as UTF-8 in one shared pool, with repeats of short
+ * strings such as keys kept once, and whole numbers are kept inside their token. Each object and array
+ * notes where it ends, so it can be skipped in a single step however large it is.
+ * <p>
+ * Walk the document with a {@link Cursor}, or read it through {@link #root()}, a Map view which decodes
+ * values as they are got. Keys are searched for in order, so copy objects with many keys which are looked
+ * up often out with {@link #toJSON()}. A JSONTape can never change, so it can be read from any number of
+ * threads. Numbers are parsed as {@link NumberPolicy#NATIVE}, and objects tagged with a
+ * {@link JSONSerializable} are only deserialized by {@link #toJSON()}.
+ * <pre>{@code
+ * JSONTape items = JSONTape.parse(Path.of("items.json"));
+ * Map<String, Object> sword = (Map<String, Object>) items.root().get("sword");
+ * }</pre>
+ */
+public final class JSONTape {
+
+    private static final int OBJECT = 1,
+            ARRAY = 2,
+            END_OBJECT = 3,
+            END_ARRAY = 4,
+            KEY = 5,
+            STRING = 6,
+            INT = 7,
+            LONG = 8,
+            DOUBLE = 9,
+            TRUE = 10,
+            FALSE = 11,
+            NULL = 12;
+
+    private static final JSONToken[] TOKENS = {null, JSONToken.BEGIN_OBJECT, JSONToken.BEGIN_ARRAY,
+            JSONToken.END_OBJECT, JSONToken.END_ARRAY, JSONToken.NAME, JSONToken.STRING, JSONToken.NUMBER,
+            JSONToken.NUMBER, JSONToken.NUMBER, JSONToken.BOOLEAN, JSONToken.BOOLEAN, JSONToken.NULL};
+
+    private static final long PAYLOAD = (1L << 56) - 1;
+    private static final int MAX_COUNT = 0xFFFFFF;
+
+    private final long[] tape;
+    private final byte[] strings;
+    private final long[] numbers;
+    private final TapeObject root;
+
+    private JSONTape(long[] tape, byte[] strings, long[] numbers) {
+        this.tape = tape;
+        this.strings = strings;
+        this.numbers = numbers;
+        this.root = new TapeObject(0);
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Parsing">
+    /**
+     * Parses JSON text.
+     *
+     * @param json the text.
+     * @return the tape.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    public static JSONTape parse(String json) throws MalformedJsonException {
+        return new Builder().build(new CharCursor(json));
+    }
+
+    /**
+     * Parses UTF-8 encoded JSON.
+     *
+     * @param json the bytes.
+     * @return the tape.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    public static JSONTape parse(byte[] json) throws MalformedJsonException {
+        return JSONTape.parse(ByteBuffer.wrap(json));
+    }
+
+    /**
+     * Parses the remaining bytes of a buffer as UTF-8 encoded JSON.
+     * The buffer's position is not changed.
+     *
+     * @param json the buffer.
+     * @return the tape.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    public static JSONTape parse(ByteBuffer json) throws MalformedJsonException {
+        return new Builder().build(new Utf8Cursor(json));
+    }
+
+    /**
+     * Parses a UTF-8 encoded JSON file, mapping it into memory while it is read.
+     * The file must be smaller than 2GB.
+     *
+     * @param path the file.
+     * @return the tape.
+     * @throws IOException            if the file could not be read.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    public static JSONTape parse(Path path) throws IOException, MalformedJsonException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("'" + path + "' is too large to be mapped.");
+            return JSONTape.parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Basic Public Methods">
+    /**
+     * Gets the outermost object of the document, as a read only view of the tape.
+     * Objects and arrays inside of it are views too, and are made each time they are got.
+     *
+     * @return the view.
+     */
+    public Map<String, Object> root() {
+        return root;
+    }
+
+    /**
+     * Creates a cursor at the start of the document.
+     *
+     * @return the cursor.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Copies the document into a {@link JSON} which can be changed.
+     *
+     * @return the copy.
+     */
+    public JSON toJSON() {
+        return (JSON) this.copy(0);
+    }
+
+    /**
+     * Gets roughly how many bytes of memory the tape and its pools take up.
+     *
+     * @return the number of bytes.
+     */
+    public long getFootprint() {
+        return 64 + 8L * tape.length + strings.length + 8L * numbers.length;
+    }
+
+    @Override
+    public String toString() {
+        return root.toString();
+    }
+    // </editor-fold>
+
+    /**
+     * Walks the tape one token at a time, the same way a {@link JSONReader} walks text. As the tape is
+     * already known to be valid, consuming a token which is not next throws an {@link IllegalStateException}.
+     */
+    public final class Cursor {
+
+        private int index;
+
+        private Cursor() {}
+
+        /**
+         * Looks at the next token without consuming it.
+         *
+         * @return the next token.
+         */
+        public JSONToken peek() {
+            return index == tape.length ? JSONToken.END_DOCUMENT : TOKENS[JSONTape.type(tape[index])];
+        }
+
+        /**
+         * Checks if the current object or array has another entry.
+         *
+         * @return true if there is another entry.
+         */
+        public boolean hasNext() {
+            if (index == tape.length) return false;
+            int type = JSONTape.type(tape[index]);
+            return type != END_OBJECT && type != END_ARRAY;
+        }
+
+        /**
+         * Gets how many entries the object or array which is next has, without consuming it.
+         *
+         * @return the number of entries.
+         */
+        public int count() {
+            int type = index == tape.length ? 0 : JSONTape.type(tape[index]);
+            this.check(type == OBJECT || type == ARRAY, "BEGIN_OBJECT or BEGIN_ARRAY");
+            return JSONTape.this.count(index);
+        }
+
+        /**
+         * Consumes the start of an object.
+         */
+        public void beginObject() {
+            this.expect(OBJECT);
+        }
+
+        /**
+         * Consumes the end of an object.
+         */
+        public void endObject() {
+            this.expect(END_OBJECT);
+        }
+
+        /**
+         * Consumes the start of an array.
+         */
+        public void beginArray() {
+            this.expect(ARRAY);
+        }
+
+        /**
+         * Consumes the end of an array.
+         */
+        public void endArray() {
+            this.expect(END_ARRAY);
+        }
+
+        /**
+         * Consumes the name of the next entry in an object.
+         *
+         * @return the name.
+         */
+        public String nextName() {
+            return JSONTape.this.string((int) this.expect(KEY));
+        }
+
+        /**
+         * Checks if the name of the next entry in an object is the given one, without decoding it.
+         * Nothing is consumed.
+         *
+         * @param name the name to check for.
+         * @return true if the next token is that name.
+         */
+        public boolean isName(String name) {
+            long word = index == tape.length ? 0 : tape[index];
+            return JSONTape.type(word) == KEY && JSONTape.this.matches((int) (word & PAYLOAD), name);
+        }
+
+        /**
+         * Consumes a string value.
+         *
+         * @return the string.
+         */
+        public String nextString() {
+            return JSONTape.this.string((int) this.expect(STRING));
+        }
+
+        /**
+         * Consumes a boolean value.
+         *
+         * @return the boolean.
+         */
+        public boolean nextBoolean() {
+            int type = index == tape.length ? 0 : JSONTape.type(tape[index]);
+            this.check(type == TRUE || type == FALSE, "BOOLEAN");
+            index++;
+            return type == TRUE;
+        }
+
+        /**
+         * Consumes a null value.
+         */
+        public void nextNull() {
+            this.expect(NULL);
+        }
+
+        /**
+         * Consumes a number value.
+         *
+         * @return the number.
+         */
+        public Number nextNumber() {
+            this.check(this.peek() == JSONToken.NUMBER, "NUMBER");
+            return (Number) JSONTape.this.value(index++);
+        }
+
+        /**
+         * Consumes a number value as an int, without boxing it.
+         *
+         * @return the int.
+         */
+        public int nextInt() {
+            return (int) this.nextLong();
+        }
+
+        /**
+         * Consumes a number value as a long, without boxing it.
+         *
+         * @return the long.
+         */
+        public long nextLong() {
+            long word = index == tape.length ? 0 : tape[index];
+            int type = JSONTape.type(word);
+            this.check(type == INT || type == LONG || type == DOUBLE, "NUMBER");
+            index++;
+            if (type == INT) return (word << 8) >> 8;
+            long bits = numbers[(int) (word & PAYLOAD)];
+            return type == LONG ? bits : (long) Double.longBitsToDouble(bits);
+        }
+
+        /**
+         * Consumes a number value as a double, without boxing it.
+         *
+         * @return the double.
+         */
+        public double nextDouble() {
+            long word = index == tape.length ? 0 : tape[index];
+            if (JSONTape.type(word) != DOUBLE) return this.nextLong();
+            index++;
+            return Double.longBitsToDouble(numbers[(int) (word & PAYLOAD)]);
+        }
+
+        /**
+         * Skips the next value, including everything inside it if it is an object or array, in a single step.
+         * If the next token is a name, only the name is skipped.
+         */
+        public void skipValue() {
+            this.check(this.hasNext(), "a value");
+            index = JSONTape.this.next(index);
+        }
+
+        /**
+         * Consumes the next value. Objects and arrays are given as read only views of the tape,
+         * like those inside {@link #root()}.
+         *
+         * @return the value.
+         */
+        public Object nextValue() {
+            this.check(this.hasNext() && JSONTape.type(tape[index]) != KEY, "a value");
+            Object value = JSONTape.this.value(index);
+            index = JSONTape.this.next(index);
+            return value;
+        }
+
+        private long expect(int type) {
+            long word = index == tape.length ? 0 : tape[index];
+            this.check(JSONTape.type(word) == type, TOKENS[type].name());
+            index++;
+            return word & PAYLOAD;
+        }
+
+        private void check(boolean valid, String expected) {
+            if (!valid) throw new IllegalStateException("Expected " + expected + " but was " + this.peek());
+        }
+
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Internal Methods">
+    private static int type(long word) {
+        return (int) (word >>> 56);
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Gets the index of the token which ends the object or array starting at an index.
+     *
+     * @param index the index of the start of the object or array.
+     * @return the index of its end.
+     */
+    private int end(int index) {
+        return (int) tape[index];
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Gets the index of the token after the value at an index, skipping over everything inside of it.
+     *
+     * @param index the index of the value.
+     * @return the index after it.
+     */
+    private int next(int index) {
+        int type = JSONTape.type(tape[index]);
+        return type == OBJECT || type == ARRAY ? this.end(index) + 1 : index + 1;
+    }
+
+    private int count(int index) {
+        int count = (int) (tape[index] >>> 32) & MAX_COUNT;
+        if (count < MAX_COUNT) return count;
+        // Too many entries to have been noted, so they are counted.
+        count = 0;
+        int end = this.end(index);
+        for (int i = index + 1; i < end; i = this.next(i)) count++;
+        return JSONTape.type(tape[index]) == OBJECT ? count / 2 : count;
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Decodes the value at an index. Objects and arrays become views of the tape.
+     *
+     * @param index the index of the value.
+     * @return the value.
+     */
+    private Object value(int index) {
+        long word = tape[index];
+        return switch (JSONTape.type(word)) {
+            case OBJECT -> new TapeObject(index);
+            case ARRAY -> new TapeArray(index);
+            case KEY, STRING -> this.string((int) (word & PAYLOAD));
+            case INT -> {
+                long value = (word << 8) >> 8;
+                yield value == (int) value ? (Object) (int) value : (Object) value;
+            }
+            case LONG -> numbers[(int) (word & PAYLOAD)];
+            case DOUBLE -> Double.longBitsToDouble(numbers[(int) (word & PAYLOAD)]);
+            case TRUE -> Boolean.TRUE;
+            case FALSE -> Boolean.FALSE;
+            default -> null;
+        };
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Copies the value at an index, and everything inside of it, out of the tape.
+     *
+     * @param index the index of the value.
+     * @return the copy.
+     */
+    private Object copy(int index) {
+        int type = JSONTape.type(tape[index]);
+        int end = type == OBJECT || type == ARRAY ? this.end(index) : 0;
+        if (type == OBJECT) {
+            JSON json = new JSON();
+            for (int i = index + 1; i < end; i = this.next(i + 1)) json.put(this.string((int) (tape[i] & PAYLOAD)), this.copy(i + 1));
+            return index > 0 && json.containsKey("-x") ? JSONSerializable.resolve(json) : json;
+        }
+        if (type != ARRAY) return this.value(index);
+        List<Object> list = new ArrayList<>(this.count(index));
+        for (int i = index + 1; i < end; i = this.next(i)) list.add(this.copy(i));
+        return list;
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Decodes a string from the pool. Each string is its length in bytes, seven bits at a time, then its bytes.
+     *
+     * @param offset the offset of the string in the pool.
+     * @return the string.
+     */
+    private String string(int offset) {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = strings[offset++];
+            length |= (b & 0x7F) << shift;
+            if (b >= 0) break;
+        }
+        return new String(strings, offset, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Checks if a string in the pool is the given one, without decoding it when it is ASCII.
+     *
+     * @param offset the offset of the string in the pool.
+     * @param string the string to compare with.
+     * @return true if they are the same.
+     */
+    private boolean matches(int offset, String string) {
+        int start = offset;
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = strings[offset++];
+            length |= (b & 0x7F) << shift;
+            if (b >= 0) break;
+        }
+        // Every character takes at least one byte.
+        if (string.length() > length) return false;
+        for (int i = 0; i < length; i++) {
+            byte b = strings[offset + i];
+            if (b < 0) return this.string(start).equals(string);
+            if (i >= string.length() || string.charAt(i) != b) return false;
+        }
+        return string.length() == length;
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * A read only view of an object in the tape. Keys are searched for in order.
+     */
+    private final class TapeObject extends AbstractMap<String, Object> {
+
+        private final int start;
+
+        private TapeObject(int start) {
+            this.start = start;
+        }
+
+        @Override
+        public Object get(Object key) {
+            int index = key instanceof String name ? this.find(name) : -1;
+            return index < 0 ? null : JSONTape.this.value(index);
+        }
+
+        @Override
+        public Object getOrDefault(Object key, Object defaultValue) {
+            int index = key instanceof String name ? this.find(name) : -1;
+            return index < 0 ? defaultValue : JSONTape.this.value(index);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String name && this.find(name) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return JSONTape.this.count(start);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return JSONTape.this.end(start) == start + 1;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<>() {
+                        private final int end = JSONTape.this.end(start);
+                        private int index = start + 1;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < end;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (index >= end) throw new NoSuchElementException();
+                            Entry<String, Object> entry = new SimpleImmutableEntry<>(JSONTape.this.string((int) (tape[index] & PAYLOAD)), JSONTape.this.value(index + 1));
+                            index = JSONTape.this.next(index + 1);
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return TapeObject.this.size();
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return JSONWriter.toString(this, 0);
+        }
+
+        private int find(String name) {
+            int end = JSONTape.this.end(start);
+            for (int index = start + 1; index < end; index = JSONTape.this.next(index + 1)) {
+                if (JSONTape.this.matches((int) (tape[index] & PAYLOAD), name)) return index + 1;
+            }
+            return -1;
+        }
+
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * A read only view of an array in the tape. Getting by index walks the array from its start, unless
+     * none of its elements are objects or arrays, so iterate it rather than getting each index in turn.
+     */
+    private final class TapeArray extends AbstractList<Object> {
+
+        private final int start;
+
+        private TapeArray(int start) {
+            this.start = start;
+        }
+
+        @Override
+        public Object get(int index) {
+            int size = this.size();
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+            // Every element takes one token when there is nothing nested.
+            if (JSONTape.this.end(start) - start - 1 == size) return JSONTape.this.value(start + 1 + index);
+            int position = start + 1;
+            for (int i = 0; i < index; i++) position = JSONTape.this.next(position);
+            return JSONTape.this.value(position);
+        }
+
+        @Override
+        public int size() {
+            return JSONTape.this.count(start);
+        }
+
+        @Override
+        public Iterator<Object> iterator() {
+            return new Iterator<>() {
+                private final int end = JSONTape.this.end(start);
+                private int index = start + 1;
+
+                @Override
+                public boolean hasNext() {
+                    return index < end;
+                }
+
+                @Override
+                public Object next() {
+                    if (index >= end) throw new NoSuchElementException();
+                    Object value = JSONTape.this.value(index);
+                    index = JSONTape.this.next(index);
+                    return value;
+                }
+            };
+        }
+
+        @Override
+        public int indexOf(Object value) {
+            int i = 0;
+            for (Object element : this) {
+                if (value == null ? element == null : value.equals(element)) return i;
+                i++;
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (other == this) return true;
+            if (!(other instanceof List<?> list) || list.size() != this.size()) return false;
+            Iterator<?> iterator = list.iterator();
+            for (Object element : this) {
+                Object value = iterator.next();
+                if (element == null ? value != null : !element.equals(value)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return super.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return JSONWriter.toString(this, 0);
+        }
+
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Parses a document onto a tape. Objects and arrays which have been started but not ended are kept on
+     * a stack, and once ended their first token is filled in with where they end and how many entries they have.
+     */
+    private static final class Builder {
+
+        /**
+         * How many different strings are remembered to be kept once before starting over, so a document
+         * full of unique strings does not fill memory with them while it is parsed.
+         */
+        private static final int MAX_SEEN = 65536;
+
+        private long[] tape = new long[256];
+        private int size;
+        private byte[] strings = new byte[1024];
+        private int stringsSize;
+        private long[] numbers = new long[16];
+        private int numbersSize;
+        private final Map<String, Integer> seen = new HashMap<>();
+        private int[] stack = new int[32];
+        private int[] counts = new int[32];
+        private int depth;
+
+        JSONTape build(JSONCursor cursor) throws MalformedJsonException {
+            int c = cursor.skipWhitespace();
+            if (c != '{') throw cursor.error("JSON must start with {");
+            while (true) {
+                if (c == '{' || c == '[') {
+                    boolean object = c == '{';
+                    cursor.advance();
+                    this.open(object ? OBJECT : ARRAY);
+                    c = cursor.skipWhitespace();
+                    if (c != (object ? '}' : ']')) {
+                        if (object) c = this.key(cursor, c);
+                        continue;
+                    }
+                    cursor.advance();
+                    this.close(object ? END_OBJECT : END_ARRAY);
+                } else this.scalar(cursor, c);
+                // The value has been read, so end anything it was the last value of, then move to the next value.
+                while (true) {
+                    c = cursor.skipWhitespace();
+                    if (depth == 0) {
+                        if (c != -1) throw cursor.error("Expected the end of the JSON");
+                        return new JSONTape(Arrays.copyOf(tape, size), Arrays.copyOf(strings, stringsSize), Arrays.copyOf(numbers, numbersSize));
+                    }
+                    boolean object = JSONTape.type(tape[stack[depth - 1]]) == OBJECT;
+                    if (c == ',') {
+                        cursor.advance();
+                        c = cursor.skipWhitespace();
+                        if (object) c = this.key(cursor, c);
+                        break;
+                    }
+                    if (c != (object ? '}' : ']')) throw cursor.error(object ? "Expected ',' or '}'" : "Expected ',' or ']'");
+                    cursor.advance();
+                    this.close(object ? END_OBJECT : END_ARRAY);
+                }
+            }
+        }
+
+        /**
+         * Reads a key and the colon after it.
+         *
+         * @return the first character of the value after the key.
+         */
+        private int key(JSONCursor cursor, int c) throws MalformedJsonException {
+            if (c != '"') throw cursor.error("Expected a key");
+            String key = cursor.readString();
+            this.add(KEY, this.string(key));
+            if (cursor.skipWhitespace() != ':') throw cursor.error("Expected ':' after key '" + key + "'");
+            cursor.advance();
+            return cursor.skipWhitespace();
+        }
+
+        private void scalar(JSONCursor cursor, int c) throws MalformedJsonException {
+            counts[depth - 1]++;
+            switch (c) {
+                case '"' -> this.add(STRING, this.string(cursor.readString()));
+                case 't' -> {
+                    cursor.readLiteral("true");
+                    this.add(TRUE, 0);
+                }
+                case 'f' -> {
+                    cursor.readLiteral("false");
+                    this.add(FALSE, 0);
+                }
+                case 'n' -> {
+                    cursor.readLiteral("null");
+                    this.add(NULL, 0);
+                }
+                default -> {
+                    if (c != '-' && (c < '0' || c > '9')) throw cursor.error("Expected a value");
+                    Number number = cursor.readNumber();
+                    if (number instanceof Double) this.add(DOUBLE, this.number(Double.doubleToRawLongBits(number.doubleValue())));
+                    else {
+                        long value = number.longValue();
+                        if ((value << 8) >> 8 == value) this.add(INT, value & PAYLOAD);
+                        else this.add(LONG, this.number(value));
+                    }
+                }
+            }
+        }
+
+        private void open(int type) {
+            if (depth > 0) counts[depth - 1]++;
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth * 2);
+                counts = Arrays.copyOf(counts, depth * 2);
+            }
+            stack[depth] = size;
+            counts[depth++] = 0;
+            this.add(type, 0);
+        }
+
+        private void close(int type) {
+            int start = stack[--depth];
+            this.add(type, start);
+            tape[start] |= (long) Math.min(counts[depth], MAX_COUNT) << 32 | (size - 1);
+        }
+
+        private void add(int type, long payload) {
+            if (size == tape.length) tape = Arrays.copyOf(tape, size * 2);
+            tape[size++] = (long) type << 56 | payload;
+        }
+
+        private long number(long bits) {
+            if (numbersSize == numbers.length) numbers = Arrays.copyOf(numbers, numbersSize * 2);
+            numbers[numbersSize] = bits;
+            return numbersSize++;
+        }
+
+        /**
+         * Adds a string to the pool, unless it is short and already there.
+         *
+         * @return the offset of the string in the pool.
+         */
+        private long string(String string) {
+            boolean shared = string.length() <= KeyTable.MAX_LENGTH;
+            if (shared) {
+                Integer offset = seen.get(string);
+                if (offset != null) return offset;
+            }
+            int offset = stringsSize;
+            byte[] encoded = null;
+            int length = string.length();
+            for (int i = 0; i < string.length(); i++) {
+                if (string.charAt(i) < 0x80) continue;
+                encoded = string.getBytes(StandardCharsets.UTF_8);
+                length = encoded.length;
+                break;
+            }
+            if (strings.length - stringsSize < length + 5) strings = Arrays.copyOf(strings, Math.max(strings.length * 2, stringsSize + length + 5));
+            for (int remaining = length; ; remaining >>>= 7) {
+                if (remaining < 0x80) {
+                    strings[stringsSize++] = (byte) remaining;
+                    break;
+                }
+                strings[stringsSize++] = (byte) (remaining | 0x80);
+            }
+            if (encoded != null) System.arraycopy(encoded, 0, strings, stringsSize, length);
+            else for (int i = 0; i < length; i++) strings[stringsSize + i] = (byte) string.charAt(i);
+            stringsSize += length;
+            if (shared) {
+                if (seen.size() == MAX_SEEN) seen.clear();
+                seen.put(string, offset);
+            }
+            return offset;
+        }
+
+    }
+    // </editor-fold>
+
+}
@@ -0,0 +1,17 @@
+package com.ankoki.roku.web.json;
+
+/**
+ * The tokens a {@link JSONReader} may come across.
+ */
+public enum JSONToken {
+    BEGIN_OBJECT,
+    END_OBJECT,
+    BEGIN_ARRAY,
+    END_ARRAY,
+    NAME,
+    STRING,
+    NUMBER,
+    BOOLEAN,
+    NULL,
+    END_DOCUMENT
+}
@@ -0,0 +1,560 @@
+package com.ankoki.roku.web.json;
+
+import com.ankoki.roku.misc.Pair;
+import com.ankoki.roku.misc.StringUtils;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes JSON one token at a time, straight into an {@link Appendable} or {@link OutputStream}.
+ * <p>
+ * Nothing is built up in between, each token is written as soon as it is given. Whole trees
+ * can be written with {@link #writeValue(Object)}, for example:
+ * <pre>{@code
+ * writer.beginObject();
+ * writer.name("kills").value(12);
+ * writer.name("data").writeValue(map);
+ * writer.endObject();
+ * }</pre>
+ * A writer can be moved to a new output with {@link #reset(Appendable)}, keeping its scratch buffers.
+ */
+public class JSONWriter implements Closeable, Flushable {
+
+    private static final int EMPTY_DOCUMENT = 0,
+            NONEMPTY_DOCUMENT = 1,
+            EMPTY_OBJECT = 2,
+            DANGLING_NAME = 3,
+            NONEMPTY_OBJECT = 4,
+            EMPTY_ARRAY = 5,
+            NONEMPTY_ARRAY = 6;
+
+    private static final ThreadLocal<JSONWriter> LOCAL = ThreadLocal.withInitial(() -> new JSONWriter(new StringBuilder(256)));
+
+    private Appendable out;
+    private Writer writer;
+    private StringBuilder builder;
+    private boolean busy;
+
+    private int indentation;
+    private String[] indents = new String[0];
+
+    private TagPolicy tagPolicy = TagPolicy.NAME;
+    private boolean typeHeader;
+    private JSONSerializable.Registration[] header;
+
+    private int[] stack = new int[32];
+    private int depth = 1;
+
+    private final char[] scratch = new char[20];
+
+    /**
+     * Creates a new writer.
+     *
+     * @param out where to write to, such as a {@link StringBuilder} or {@link Writer}.
+     */
+    public JSONWriter(Appendable out) {
+        this.reset(out);
+    }
+
+    /**
+     * Creates a new writer that encodes to UTF-8.
+     * <p>
+     * Make sure to {@link #flush()} or {@link #close()} once finished.
+     *
+     * @param out where to write to.
+     */
+    public JSONWriter(OutputStream out) {
+        this(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sets how many spaces to indent each level by. 0 writes everything on one line.
+     *
+     * @param indentation the indentation.
+     * @return the current writer, for chaining.
+     */
+    public JSONWriter setIndentation(int indentation) {
+        if (indentation < 0) throw new IllegalArgumentException("Indentation cannot be negative.");
+        if (indentation == this.indentation) return this;
+        this.indentation = indentation;
+        this.indents = new String[0];
+        return this;
+    }
+
+    /**
+     * Sets how {@link JSONSerializable}s are tagged with their class. Defaults to {@link TagPolicy#NAME}.
+     *
+     * @param tagPolicy the policy.
+     * @return the current writer, for chaining.
+     */
+    public JSONWriter setTagPolicy(TagPolicy tagPolicy) {
+        this.tagPolicy = tagPolicy;
+        return this;
+    }
+
+    /**
+     * Sets whether the outermost object should start with a "-types" header, which lists the names of
+     * every registered {@link JSONSerializable} in the order of their numbers. Parsers set to read it look
+     * numbered tags up in the header, so documents can be read by programs which registered classes in
+     * another order, see {@link JSONParser#setTypeHeader(boolean)} and {@link JSONReader#setTypeHeader(boolean)}.
+     * Only used with {@link TagPolicy#ID}. Defaults to false.
+     *
+     * @param typeHeader true to write the header.
+     * @return the current writer, for chaining.
+     */
+    public JSONWriter setTypeHeader(boolean typeHeader) {
+        this.typeHeader = typeHeader;
+        return this;
+    }
+
+    /**
+     * Moves the current writer to a new output to write another document, keeping its indentation and tag policy.
+     * Nothing is flushed or closed.
+     *
+     * @param out where to write to, such as a {@link StringBuilder} or {@link Writer}.
+     * @return the current writer, for chaining.
+     */
+    public JSONWriter reset(Appendable out) {
+        this.out = out;
+        this.writer = out instanceof Writer w ? w : null;
+        this.builder = out instanceof StringBuilder b ? b : null;
+        this.depth = 1;
+        stack[0] = EMPTY_DOCUMENT;
+        return this;
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Writes a value to a string, with a writer and builder kept by the current thread.
+     *
+     * @param value       the value.
+     * @param indentation the indentation.
+     * @return the text.
+     */
+    static String toString(Object value, int indentation) {
+        JSONWriter writer = LOCAL.get();
+        // Something being written may itself be turned into a string part way through.
+        if (writer.busy) writer = new JSONWriter(new StringBuilder());
+        StringBuilder builder = writer.builder;
+        builder.setLength(0);
+        writer.reset(builder).setIndentation(indentation);
+        writer.busy = true;
+        try {
+            writer.writeValue(value);
+            return builder.toString();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            writer.busy = false;
+            if (builder.capacity() > 65536) writer.reset(new StringBuilder(256));
+        }
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Tokens">
+    /**
+     * Writes the start of an object.
+     *
+     * @return the current writer, for chaining.
+     * @throws IOException if the output could not be written to.
+     */
+    public JSONWriter beginObject() throws IOException {
+        boolean root = depth == 1;
+        this.beforeValue();
+        this.push(EMPTY_OBJECT);
+        out.append('{');
+        if (root) this.header();
+        return this;
+    }
+
+    /**
+     * Writes the end of an object.
+     *
+     * @return the current writer, for chaining.
+     * @throws IOException if the output could not be written to.
+     */
+    public JSONWriter endObject() throws IOException {
+        return this.close(EMPTY_OBJECT, NONEMPTY_OBJECT, '}');
+    }
+
+    /**
+     * Writes the start of an array.
+     *
+     * @return the current writer, for chaining.
+     * @throws IOException if the output could not be written to.
+     */
+    public JSONWriter beginArray() throws IOException {
+        this.beforeValue();
+        this.push(EMPTY_ARRAY);
+        out.append('[');
+        return this;
+    }
+
+    /**
+     * Writes the end of an array.
+     *
+     * @return the current writer, for chaining.
+     * @throws IOException if the output could not be written to.
+     */
+    public JSONWriter endArray() throws IOException {
+        return this.close(EMPTY_ARRAY, NONEMPTY_ARRAY, ']');
+    }
+
+    /**
+     * Writes the name of the next entry in an object.
+     *
+     * @param name the name.
+     * @return the current writer, for chaining.
+     * @throws IOException if the output could not be written to.
+     */
+    public JSONWriter name(String name) throws IOException {
+        int scope = stack[depth - 1];
+        if (scope == NONEMPTY_OBJECT) out.append(',');
+        else if (scope != EMPTY_OBJECT) throw new IllegalStateException("A name can only be written inside of an object.");
+        this.newline(depth - 1);
+        stack[depth - 1] = DANGLING_NAME;
+        this.string(name);
+        if (indentation > 0) out.append(": ");
+        else out.append(':');
+        return this;
+    }
+
+    /**
+     * Writes the "-x" entry which tags an object with the class of the {@link JSONSerializable} it is from,
+     * as set by {@link #setTagPolicy(TagPolicy)}. Codecs start their objects with this.
+     *
+     * @param type the class.
+     * @return the current writer, for chaining.
+     * @throws IOException if the output could not be written to.
+     */
+    public JSONWriter tag(Class<? extends JSONSerializable> type) throws IOException {
+        this.name("-x");
+        JSONSerializable.Registration registration = tagPolicy == TagPolicy.NAME ? null : JSONSerializable.registration(type);
+        if (registration == null) return this.value(type.getName());
+        if (tagPolicy == TagPolicy.ALIAS) return this.value(registration.alias() == null ? type.getName() : registration.alias());
+        // Classes registered after the header was written are not in it.
+        if (header != null && registration.id() >= header.length) return this.value(type.getName());
+        return this.value(registration.id());
+    }
+
+    /**
+     * Writes a string value.
+     *
+     * @param value the string.
+     * @return the current writer, for chaining.
+     * @throws IOException if the output could not be written to.
+     */
+    public JSONWriter value(String value) throws IOException {
+        if (value == null) return this.nullValue();
+        this.beforeValue();
+        this.string(value);
+        return this;
+    }
+
+    /**
+     * Writes a whole number value.
+     *
+     * @param value the number.
+     * @return the current writer, for chaining.
+     * @throws IOException if the output could not be written to.
+     */
+    public JSONWriter value(long value) throws IOException {
+        this.beforeValue();
+        if (value == Long.MIN_VALUE) {
+            out.append("-9223372036854775808");
+            return this;
+        }
+        int position = scratch.length;
+        boolean negative = value < 0;
+        if (negative) value = -value;
+        do {
+            scratch[--position] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        if (negative) scratch[--position] = '-';
+        this.write(scratch, position, scratch.length - position);
+        return this;
+    }
+
+    /**
+     * Writes a decimal number value. NaN and infinite values are written as null.
+     *
+     * @param value the number.
+     * @return the current writer, for chaining.
+     * @throws IOException if the output could not be written to.
+     */
+    public JSONWriter value(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) return this.nullValue();
+        this.beforeValue();
+        out.append(Double.toString(value));
+        return this;
+    }
+
+    /**
+     * Writes a number value. NaN and infinite values are written as null.
+     *
+     * @param value the number.
+     * @return the current writer, for chaining.
+     * @throws IOException if the output could not be written to.
+     */
+    public JSONWriter value(Number value) throws IOException {
+        if (value == null) return this.nullValue();
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) return this.value(value.longValue());
+        if (value instanceof Double) return this.value(value.doubleValue());
+        if (value instanceof Float f && (f.isNaN() || f.isInfinite())) return this.nullValue();
+        this.beforeValue();
+        out.append(value.toString());
+        return this;
+    }
+
+    /**
+     * Writes a boolean value.
+     *
+     * @param value the boolean.
+     * @return the current writer, for chaining.
+     * @throws IOException if the output could not be written to.
+     */
+    public JSONWriter value(boolean value) throws IOException {
+        this.beforeValue();
+        out.append(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * Writes a null value.
+     *
+     * @return the current writer, for chaining.
+     * @throws IOException if the output could not be written to.
+     */
+    public JSONWriter nullValue() throws IOException {
+        this.beforeValue();
+        out.append("null");
+        return this;
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Trees">
+    /**
+     * Writes any value, including maps, lists, arrays, primitive arrays and {@link JSONSerializable}s.
+     * Anything unknown is written as a string of itself.
+     * <p>
+     * {@link TrackedJSON}s are written from their remembered text when there is no indentation.
+     *
+     * @param value the value.
+     * @return the current writer, for chaining.
+     * @throws IOException if the output could not be written to.
+     */
+    public JSONWriter writeValue(Object value) throws IOException {
+        if (value == null) return this.nullValue();
+        if (value instanceof String string) return this.value(string);
+        if (value instanceof Number number) return this.value(number);
+        if (value instanceof Boolean bool) return this.value(bool.booleanValue());
+        // Remembered text always has full names as tags.
+        if (indentation == 0 && tagPolicy == TagPolicy.NAME) {
+            String text = TrackedJSON.text(value);
+            if (text != null) {
+                this.beforeValue();
+                this.write(text, 0, text.length());
+                return this;
+            }
+        }
+        if (value instanceof Map<?, ?> map) return this.writeMap(map, null);
+        if (value instanceof IntList list) {
+            this.beginArray();
+            for (int i = 0; i < list.size(); i++) this.value(list.getInt(i));
+            return this.endArray();
+        }
+        if (value instanceof LongList list) {
+            this.beginArray();
+            for (int i = 0; i < list.size(); i++) this.value(list.getLong(i));
+            return this.endArray();
+        }
+        if (value instanceof DoubleList list) {
+            this.beginArray();
+            for (int i = 0; i < list.size(); i++) this.value(list.getDouble(i));
+            return this.endArray();
+        }
+        if (value instanceof List<?> list) {
+            this.beginArray();
+            for (Object element : list) this.writeValue(element);
+            return this.endArray();
+        }
+        if (value instanceof Object[] array) {
+            this.beginArray();
+            for (Object element : array) this.writeValue(element);
+            return this.endArray();
+        }
+        if (value instanceof int[] array) {
+            this.beginArray();
+            for (int element : array) this.value(element);
+            return this.endArray();
+        }
+        if (value instanceof long[] array) {
+            this.beginArray();
+            for (long element : array) this.value(element);
+            return this.endArray();
+        }
+        if (value instanceof double[] array) {
+            this.beginArray();
+            for (double element : array) this.value(element);
+            return this.endArray();
+        }
+        if (value instanceof JSONSerializable serializable) {
+            JSONCodec<JSONSerializable> codec = JSONSerializable.codec(serializable.getClass());
+            if (codec == null) return this.writeMap(serializable.serialize(), serializable.getClass());
+            codec.write(this, serializable);
+            return this;
+        }
+        if (value instanceof Pair<?, ?> pair) return this.writeValue(pair.getSecond());
+        return this.value(String.valueOf(value));
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Writes a map as an object.
+     *
+     * @param map  the map.
+     * @param type the class of the {@link JSONSerializable} the map is from, or null.
+     * @return the current writer, for chaining.
+     * @throws IOException if the output could not be written to.
+     */
+    private JSONWriter writeMap(Map<?, ?> map, Class<? extends JSONSerializable> type) throws IOException {
+        this.beginObject();
+        if (type != null) this.tag(type);
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            if (type != null && key.equals("-x")) continue;
+            this.name(key);
+            this.writeValue(entry.getValue());
+        }
+        return this.endObject();
+    }
+    // </editor-fold>
+
+    /**
+     * Flushes the output, if it can be flushed.
+     *
+     * @throws IOException if the output could not be flushed.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (out instanceof Flushable flushable) flushable.flush();
+    }
+
+    /**
+     * Closes the output, if it can be closed.
+     *
+     * @throws IOException if the output could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (out instanceof Closeable closeable) closeable.close();
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Internal Methods">
+    private void beforeValue() throws IOException {
+        switch (stack[depth - 1]) {
+            case EMPTY_DOCUMENT -> stack[depth - 1] = NONEMPTY_DOCUMENT;
+            case DANGLING_NAME -> stack[depth - 1] = NONEMPTY_OBJECT;
+            case EMPTY_ARRAY -> {
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                this.newline(depth - 1);
+            }
+            case NONEMPTY_ARRAY -> {
+                out.append(',');
+                this.newline(depth - 1);
+            }
+            case NONEMPTY_DOCUMENT -> throw new IllegalStateException("JSON can only have one top level value.");
+            default -> throw new IllegalStateException("A name must be written before a value inside of an object.");
+        }
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Writes the "-types" header at the start of the outermost object, if one is wanted.
+     *
+     * @throws IOException if the output could not be written to.
+     */
+    private void header() throws IOException {
+        this.header = null;
+        if (!typeHeader || tagPolicy != TagPolicy.ID) return;
+        JSONSerializable.Registration[] registrations = JSONSerializable.registrations();
+        this.name("-types").beginArray();
+        for (JSONSerializable.Registration registration : registrations) this.value(registration.type().getName());
+        this.endArray();
+        this.header = registrations;
+    }
+
+    private JSONWriter close(int empty, int nonempty, char bracket) throws IOException {
+        int scope = stack[depth - 1];
+        if (scope != empty && scope != nonempty) throw new IllegalStateException("Nothing to close with '" + bracket + "'.");
+        depth--;
+        if (scope == nonempty) this.newline(depth - 1);
+        out.append(bracket);
+        return this;
+    }
+
+    private void push(int scope) {
+        if (depth == stack.length) stack = Arrays.copyOf(stack, depth * 2);
+        stack[depth++] = scope;
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Starts a new line at the given level, if the output is indented.
+     * Each level's indent is only built once.
+     *
+     * @param level the level.
+     * @throws IOException if the output could not be written to.
+     */
+    private void newline(int level) throws IOException {
+        if (indentation == 0) return;
+        if (level >= indents.length) {
+            int old = indents.length;
+            indents = Arrays.copyOf(indents, Math.max(level + 1, old * 2));
+            for (int i = old; i < indents.length; i++) indents[i] = "\n" + " ".repeat(i * indentation);
+        }
+        out.append(indents[level]);
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Writes a quoted, escaped string. Runs of characters which do not need escaping are
+     * written in bulk.
+     *
+     * @param string the string.
+     * @throws IOException if the output could not be written to.
+     */
+    private void string(String string) throws IOException {
+        out.append('"');
+        StringUtils.escape(string, out);
+        out.append('"');
+    }
+
+    private void write(String string, int start, int end) throws IOException {
+        if (writer != null) writer.write(string, start, end - start);
+        else out.append(string, start, end);
+    }
+
+    private void write(char[] chars, int offset, int length) throws IOException {
+        if (builder != null) builder.append(chars, offset, length);
+        else if (writer != null) writer.write(chars, offset, length);
+        else for (int i = offset; i < offset + length; i++) out.append(chars[i]);
+    }
+    // </editor-fold>
+
+}
@@ -0,0 +1,143 @@
+package com.ankoki.roku.web.json;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <strong>INTERNAL USE ONLY</strong>
+ * <p>
+ * A table of keys which have already been read, so each repeat of a key can share one String.
+ * <p>
+ * Keys are looked up by their hash and compared against the source directly, so a key which has
+ * been seen before is found without allocating anything. The table is bounded; once full it is
+ * emptied and starts over, and keys longer than {@link #MAX_LENGTH} are never kept.
+ */
+final class KeyTable {
+
+    static final int MAX_LENGTH = 64;
+    private static final int MAX_SIZE = 4096;
+
+    private String[] table = new String[64];
+    private int size;
+
+    /**
+     * Finds a key made of the characters between two indexes of a string.
+     *
+     * @param source the string.
+     * @param start  the start index, inclusive.
+     * @param end    the end index, exclusive.
+     * @param hash   the hash of the characters, as {@link String#hashCode()} would give.
+     * @return the key, or null if it is not in the table.
+     */
+    String find(String source, int start, int end, int hash) {
+        int length = end - start;
+        int mask = table.length - 1;
+        for (int index = KeyTable.spread(hash) & mask; ; index = (index + 1) & mask) {
+            String key = table[index];
+            if (key == null) return null;
+            if (key.hashCode() == hash && key.length() == length && key.regionMatches(0, source, start, length)) return key;
+        }
+    }
+
+    /**
+     * Finds a key made of the characters between two indexes of an array.
+     *
+     * @param source the array.
+     * @param start  the start index, inclusive.
+     * @param end    the end index, exclusive.
+     * @param hash   the hash of the characters, as {@link String#hashCode()} would give.
+     * @return the key, or null if it is not in the table.
+     */
+    String find(char[] source, int start, int end, int hash) {
+        int length = end - start;
+        int mask = table.length - 1;
+        search:
+        for (int index = KeyTable.spread(hash) & mask; ; index = (index + 1) & mask) {
+            String key = table[index];
+            if (key == null) return null;
+            if (key.hashCode() != hash || key.length() != length) continue;
+            for (int i = 0; i < length; i++) if (key.charAt(i) != source[start + i]) continue search;
+            return key;
+        }
+    }
+
+    /**
+     * Finds a key made of the ASCII bytes between two indexes of a buffer.
+     *
+     * @param source the buffer.
+     * @param start  the start index, inclusive.
+     * @param end    the end index, exclusive.
+     * @param hash   the hash of the characters, as {@link String#hashCode()} would give.
+     * @return the key, or null if it is not in the table.
+     */
+    String find(ByteBuffer source, int start, int end, int hash) {
+        int length = end - start;
+        int mask = table.length - 1;
+        search:
+        for (int index = KeyTable.spread(hash) & mask; ; index = (index + 1) & mask) {
+            String key = table[index];
+            if (key == null) return null;
+            if (key.hashCode() != hash || key.length() != length) continue;
+            for (int i = 0; i < length; i++) if (key.charAt(i) != source.get(start + i)) continue search;
+            return key;
+        }
+    }
+
+    /**
+     * Gets the shared instance of a key, adding it if it is not in the table yet.
+     *
+     * @param key the key.
+     * @return the shared instance.
+     */
+    String intern(String key) {
+        if (key.length() > MAX_LENGTH) return key;
+        int hash = key.hashCode();
+        int mask = table.length - 1;
+        for (int index = KeyTable.spread(hash) & mask; ; index = (index + 1) & mask) {
+            String existing = table[index];
+            if (existing == null) break;
+            if (existing.hashCode() == hash && existing.equals(key)) return existing;
+        }
+        this.add(key);
+        return key;
+    }
+
+    /**
+     * Adds a key which is known not to be in the table.
+     *
+     * @param key the key.
+     * @return the key.
+     */
+    String add(String key) {
+        if (key.length() > MAX_LENGTH) return key;
+        if (size * 2 >= table.length) {
+            if (table.length * 2 > MAX_SIZE) {
+                Arrays.fill(table, null);
+                size = 0;
+            } else this.rehash(table.length * 2);
+        }
+        int mask = table.length - 1;
+        int index = KeyTable.spread(key.hashCode()) & mask;
+        while (table[index] != null) index = (index + 1) & mask;
+        table[index] = key;
+        size++;
+        return key;
+    }
+
+    private void rehash(int capacity) {
+        String[] old = table;
+        table = new String[capacity];
+        int mask = capacity - 1;
+        for (String key : old) {
+            if (key == null) continue;
+            int index = KeyTable.spread(key.hashCode()) & mask;
+            while (table[index] != null) index = (index + 1) & mask;
+            table[index] = key;
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+}
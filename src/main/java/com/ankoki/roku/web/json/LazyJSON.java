@@ -0,0 +1,323 @@
+package com.ankoki.roku.web.json;
+
+import com.ankoki.roku.web.json.exceptions.MalformedJsonException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A {@link JSON} which only decodes its values when they are asked for.
+ * <p>
+ * Creating one only reads the keys of the outermost object, and notes where each value starts
+ * in the source, skipping over the values themselves. A value is decoded the first time it is
+ * got, objects inside of it become LazyJSONs of their own. Reading a few keys out of a large
+ * document therefore costs little more than one pass over it.
+ * <p>
+ * Anything which needs every value, such as iterating the entries or {@link #toString()},
+ * decodes everything that has not been decoded yet. The source is held onto until then.
+ * Like {@link JSON}, this is not thread safe, and that includes reading from it.
+ * <p>
+ * Only the structure of skipped values is checked, so malformed JSON inside of a value is
+ * not found until that value is got.
+ */
+public class LazyJSON extends JSON {
+
+    private final JSONCursor cursor;
+    private int pending;
+
+    /**
+     * Indexes JSON text.
+     *
+     * @param json the text.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    public LazyJSON(String json) throws MalformedJsonException {
+        this(LazyJSON.prepare(new CharCursor(json)), true);
+    }
+
+    /**
+     * Indexes UTF-8 encoded JSON.
+     *
+     * @param json the bytes.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    public LazyJSON(byte[] json) throws MalformedJsonException {
+        this(ByteBuffer.wrap(json));
+    }
+
+    /**
+     * Indexes the remaining bytes of a buffer as UTF-8 encoded JSON.
+     * The buffer's position is not changed.
+     *
+     * @param json the buffer.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    public LazyJSON(ByteBuffer json) throws MalformedJsonException {
+        this(LazyJSON.prepare(new Utf8Cursor(json)), true);
+    }
+
+    /**
+     * Indexes a UTF-8 encoded JSON file, mapping it into memory.
+     * The file must be smaller than 2GB.
+     *
+     * @param file the file.
+     * @throws IOException            if the file could not be read.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    public LazyJSON(File file) throws IOException, MalformedJsonException {
+        this(LazyJSON.map(file));
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Indexes the object at the cursor.
+     *
+     * @param cursor the cursor, positioned at the object.
+     * @param root   true if nothing may come after the object.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    private LazyJSON(JSONCursor cursor, boolean root) throws MalformedJsonException {
+        this.cursor = cursor;
+        if (cursor.skipWhitespace() != '{') throw cursor.error("JSON must start with {");
+        this.index();
+        if (root && cursor.skipWhitespace() != -1) throw cursor.error("Expected the end of the JSON");
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Map Methods">
+    @Override
+    public Object get(Object key) {
+        Object value = super.get(key);
+        if (value instanceof Pending pending) {
+            value = this.decode(pending);
+            super.put((String) key, value);
+            this.pending--;
+        }
+        return value;
+    }
+
+    @Override
+    public Object getOrDefault(Object key, Object defaultValue) {
+        Object value = this.get(key);
+        return value != null || this.containsKey(key) ? value : defaultValue;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        return this.decoded(super.put(key, value));
+    }
+
+    @Override
+    public Object remove(Object key) {
+        return this.decoded(super.remove(key));
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        this.decodeAll();
+        return super.entrySet();
+    }
+
+    @Override
+    public Collection<Object> values() {
+        this.decodeAll();
+        return super.values();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super Object> action) {
+        this.decodeAll();
+        super.forEach(action);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        this.decodeAll();
+        return super.containsValue(value);
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super String, ? super Object, ?> function) {
+        this.decodeAll();
+        super.replaceAll(function);
+    }
+
+    @Override
+    public Object putIfAbsent(String key, Object value) {
+        this.get(key);
+        return super.putIfAbsent(key, value);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        this.get(key);
+        return super.remove(key, value);
+    }
+
+    @Override
+    public boolean replace(String key, Object oldValue, Object newValue) {
+        this.get(key);
+        return super.replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public Object replace(String key, Object value) {
+        this.get(key);
+        return super.replace(key, value);
+    }
+
+    @Override
+    public Object computeIfAbsent(String key, Function<? super String, ?> function) {
+        this.get(key);
+        return super.computeIfAbsent(key, function);
+    }
+
+    @Override
+    public Object computeIfPresent(String key, BiFunction<? super String, ? super Object, ?> function) {
+        this.get(key);
+        return super.computeIfPresent(key, function);
+    }
+
+    @Override
+    public Object compute(String key, BiFunction<? super String, ? super Object, ?> function) {
+        this.get(key);
+        return super.compute(key, function);
+    }
+
+    @Override
+    public Object merge(String key, Object value, BiFunction<? super Object, ? super Object, ?> function) {
+        this.get(key);
+        return super.merge(key, value, function);
+    }
+
+    @Override
+    public Object clone() {
+        this.decodeAll();
+        return super.clone();
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Internal Methods">
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Reads the keys of the object at the cursor, noting where each value starts.
+     *
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    private void index() throws MalformedJsonException {
+        cursor.advance();
+        int c = cursor.skipWhitespace();
+        if (c == '}') {
+            cursor.advance();
+            return;
+        }
+        while (true) {
+            if (c != '"') throw cursor.error("Expected a key");
+            String key = cursor.readKey();
+            if (cursor.skipWhitespace() != ':') throw cursor.error("Expected ':' after key '" + key + "'");
+            cursor.advance();
+            cursor.skipWhitespace();
+            if (!(super.put(key, new Pending(cursor.position)) instanceof Pending)) pending++;
+            cursor.skipValue();
+            c = cursor.skipWhitespace();
+            if (c == '}') {
+                cursor.advance();
+                return;
+            }
+            if (c != ',') throw cursor.error("Expected ',' or '}'");
+            cursor.advance();
+            c = cursor.skipWhitespace();
+        }
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Decodes every value which has not been decoded yet.
+     */
+    private void decodeAll() {
+        if (pending == 0) return;
+        for (Entry<String, Object> entry : super.entrySet()) {
+            if (entry.getValue() instanceof Pending value) entry.setValue(this.decode(value));
+        }
+        pending = 0;
+    }
+
+    private Object decoded(Object value) {
+        if (!(value instanceof Pending pending)) return value;
+        this.pending--;
+        return this.decode(pending);
+    }
+
+    private Object decode(Pending pending) {
+        cursor.position = pending.position();
+        return LazyJSON.readValue(cursor);
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Reads the value at the cursor, indexing any objects rather than decoding them.
+     *
+     * @param cursor the cursor.
+     * @return the value.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    private static Object readValue(JSONCursor cursor) throws MalformedJsonException {
+        int c = cursor.skipWhitespace();
+        if (c == '{') {
+            LazyJSON json = new LazyJSON(cursor, false);
+            return json.containsKey("-x") ? JSONSerializable.resolve(json) : json;
+        }
+        if (c != '[') return cursor.readScalar(c);
+        cursor.advance();
+        List<Object> list = new ArrayList<>();
+        if (cursor.skipWhitespace() == ']') {
+            cursor.advance();
+            return list;
+        }
+        while (true) {
+            list.add(LazyJSON.readValue(cursor));
+            c = cursor.skipWhitespace();
+            if (c == ']') {
+                cursor.advance();
+                return list;
+            }
+            if (c != ',') throw cursor.error("Expected ',' or ']'");
+            cursor.advance();
+        }
+    }
+
+    private static JSONCursor prepare(JSONCursor cursor) {
+        cursor.keys = new KeyTable();
+        return cursor;
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("'" + file + "' is too large to be mapped.");
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Where a value which has not been decoded yet starts.
+     *
+     * @param position the index in the source.
+     */
+    private record Pending(int position) {}
+    // </editor-fold>
+
+}
@@ -0,0 +1,143 @@
+package com.ankoki.roku.web.json;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A list of longs backed by a {@code long[]}, rather than by boxed {@link Long}s.
+ * <p>
+ * Numeric arrays are parsed into these when {@link JSONParser#setPrimitiveArrays(boolean)} is enabled,
+ * and they are written straight from the array by {@link JSONWriter}. The list can be changed like
+ * any other, but nulls and anything other than longs cannot be put in it.
+ */
+public class LongList extends AbstractList<Long> implements RandomAccess {
+
+    private long[] values;
+    private int size;
+
+    /**
+     * Creates a new empty list.
+     */
+    public LongList() {
+        this(10);
+    }
+
+    /**
+     * Creates a new empty list with room for some values.
+     *
+     * @param capacity how many values there is room for before the array has to grow.
+     */
+    public LongList(int capacity) {
+        this.values = new long[capacity];
+    }
+
+    private LongList(long[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * Creates a list which uses the given array, without copying it.
+     * Changes to the array are seen by the list until values are added or removed.
+     *
+     * @param values the values.
+     * @return the list.
+     */
+    public static LongList of(long... values) {
+        return new LongList(values, values.length);
+    }
+
+    /**
+     * Gets a value without boxing it.
+     *
+     * @param index the index.
+     * @return the value.
+     */
+    public long getLong(int index) {
+        Objects.checkIndex(index, size);
+        return values[index];
+    }
+
+    /**
+     * Replaces a value without boxing it.
+     *
+     * @param index the index.
+     * @param value the new value.
+     * @return the old value.
+     */
+    public long setLong(int index, long value) {
+        Objects.checkIndex(index, size);
+        long old = values[index];
+        values[index] = value;
+        return old;
+    }
+
+    /**
+     * Adds a value to the end without boxing it.
+     *
+     * @param value the value.
+     */
+    public void addLong(long value) {
+        if (size == values.length) values = Arrays.copyOf(values, Math.max(10, size + (size >> 1)));
+        values[size++] = value;
+        modCount++;
+    }
+
+    /**
+     * Copies the values into a new array.
+     *
+     * @return the array.
+     */
+    public long[] toLongArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    @Override
+    public Long get(int index) {
+        return this.getLong(index);
+    }
+
+    @Override
+    public Long set(int index, Long value) {
+        return this.setLong(index, value);
+    }
+
+    @Override
+    public boolean add(Long value) {
+        this.addLong(value);
+        return true;
+    }
+
+    @Override
+    public void add(int index, Long value) {
+        Objects.checkIndex(index, size + 1);
+        long element = value;
+        this.addLong(element);
+        System.arraycopy(values, index, values, index + 1, size - 1 - index);
+        values[index] = element;
+    }
+
+    @Override
+    public Long remove(int index) {
+        Objects.checkIndex(index, size);
+        long old = values[index];
+        System.arraycopy(values, index + 1, values, index, size - 1 - index);
+        size--;
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+}
@@ -0,0 +1,186 @@
+package com.ankoki.roku.web.json;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * <strong>INTERNAL USE ONLY</strong>
+ * <p>
+ * Reads a JSON number one character at a time, checking it and converting it in the same pass.
+ * Nothing is thrown while lexing; an invalid number is reported by {@link #finish(NumberPolicy)}
+ * returning null.
+ * <p>
+ * Digits are gathered into a long mantissa and a decimal exponent as they are read. Whole numbers
+ * come straight from the mantissa, and most decimals are converted exactly with a single multiply
+ * or divide, only falling back to {@link Double#parseDouble(String)} when that would round.
+ */
+final class NumberLexer {
+
+    private static final int START = 0,
+            SIGN = 1,
+            ZERO = 2,
+            INTEGER = 3,
+            DOT = 4,
+            FRACTION = 5,
+            EXPONENT = 6,
+            EXPONENT_SIGN = 7,
+            EXPONENT_DIGITS = 8;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final long MANTISSA_LIMIT = (Long.MAX_VALUE - 9) / 10;
+
+    private char[] text = new char[32];
+    private int length;
+    private int state;
+    private boolean negative, truncated, negativeExponent;
+    private long mantissa;
+    private int scale, exponent;
+
+    /**
+     * Gets ready to read a new number.
+     */
+    void reset() {
+        length = 0;
+        state = START;
+        negative = truncated = negativeExponent = false;
+        mantissa = 0;
+        scale = exponent = 0;
+    }
+
+    /**
+     * Reads the next character of the number.
+     *
+     * @param c the character.
+     * @return false if the character is not part of the number, in which case it is not read.
+     */
+    boolean accept(int c) {
+        boolean digit = c >= '0' && c <= '9';
+        switch (state) {
+            case START -> {
+                if (c == '-') {
+                    negative = true;
+                    state = SIGN;
+                } else if (digit) this.digit(c, c == '0' ? ZERO : INTEGER);
+                else return false;
+            }
+            case SIGN -> {
+                if (!digit) return false;
+                this.digit(c, c == '0' ? ZERO : INTEGER);
+            }
+            case ZERO, INTEGER, FRACTION -> {
+                if (digit && state != ZERO) this.digit(c, state);
+                else if (c == '.' && state != FRACTION) state = DOT;
+                else if (c == 'e' || c == 'E') state = EXPONENT;
+                else return false;
+            }
+            case DOT -> {
+                if (!digit) return false;
+                this.digit(c, FRACTION);
+            }
+            case EXPONENT -> {
+                if (c == '-' || c == '+') {
+                    negativeExponent = c == '-';
+                    state = EXPONENT_SIGN;
+                } else if (digit) this.exponentDigit(c);
+                else return false;
+            }
+            case EXPONENT_SIGN, EXPONENT_DIGITS -> {
+                if (!digit) return false;
+                this.exponentDigit(c);
+            }
+            default -> {
+                return false;
+            }
+        }
+        if (length == text.length) text = Arrays.copyOf(text, length * 2);
+        text[length++] = (char) c;
+        return true;
+    }
+
+    /**
+     * Converts the number that has been read.
+     *
+     * @param policy how to represent the number.
+     * @return the number, or null if what was read is not a valid number.
+     */
+    Number finish(NumberPolicy policy) {
+        if (state != ZERO && state != INTEGER && state != FRACTION && state != EXPONENT_DIGITS) return null;
+        if (policy == NumberPolicy.LAZY) return new JSONNumber(new String(text, 0, length));
+        boolean integral = state == ZERO || state == INTEGER;
+        if (integral) {
+            if (!truncated) {
+                long value = negative ? -mantissa : mantissa;
+                if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) return (int) value;
+                return value;
+            }
+            BigInteger value = new BigInteger(new String(text, 0, length));
+            if (value.bitLength() < 64) return value.longValue();
+            return policy == NumberPolicy.EXACT ? value : value.doubleValue();
+        }
+        if (policy == NumberPolicy.EXACT) return new BigDecimal(text, 0, length);
+        return this.finishDouble();
+    }
+
+    /**
+     * Converts the number that has been read to the nearest double.
+     *
+     * @return the double.
+     * @throws NumberFormatException if what was read is not a valid number.
+     */
+    double finishDouble() {
+        if (state != ZERO && state != INTEGER && state != FRACTION && state != EXPONENT_DIGITS) throw new NumberFormatException();
+        int power = (negativeExponent ? -exponent : exponent) - scale;
+        // Both the mantissa and the power of ten are exact as doubles, so one operation rounds correctly.
+        if (!truncated && mantissa < (1L << 53) && power >= -22 && power <= 22) {
+            double value = power < 0 ? mantissa / POWERS_OF_TEN[-power] : mantissa * POWERS_OF_TEN[power];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(new String(text, 0, length));
+    }
+
+    /**
+     * Converts the number that has been read to a long. Whole numbers written with a fraction or an
+     * exponent, such as {@code 2.0} or {@code 1e3}, are allowed.
+     *
+     * @return the long.
+     * @throws NumberFormatException if what was read is not a valid number.
+     * @throws ArithmeticException   if the number has a fraction, or does not fit in a long.
+     */
+    long finishLong() {
+        if (state != ZERO && state != INTEGER && state != FRACTION && state != EXPONENT_DIGITS) throw new NumberFormatException();
+        if ((state == ZERO || state == INTEGER) && !truncated) return negative ? -mantissa : mantissa;
+        return new BigDecimal(text, 0, length).longValueExact();
+    }
+
+    /**
+     * Gets the text of the number that has been read.
+     *
+     * @return the text.
+     */
+    String text() {
+        return new String(text, 0, length);
+    }
+
+    private void digit(int c, int next) {
+        state = next;
+        if (mantissa <= MANTISSA_LIMIT) {
+            mantissa = mantissa * 10 + (c - '0');
+            if (next == FRACTION) scale++;
+        } else {
+            truncated = true;
+            if (next != FRACTION) scale--;
+        }
+    }
+
+    private void exponentDigit(int c) {
+        state = EXPONENT_DIGITS;
+        // Past this the number is zero or infinite either way, and it stops the exponent overflowing.
+        if (exponent < 100_000) exponent = exponent * 10 + (c - '0');
+    }
+
+}
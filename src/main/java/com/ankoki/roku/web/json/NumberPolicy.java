@@ -0,0 +1,28 @@
+package com.ankoki.roku.web.json;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * How numbers are represented once parsed.
+ */
+public enum NumberPolicy {
+
+    /**
+     * Whole numbers become an {@link Integer} if they fit, else a {@link Long}, else a {@link Double}.
+     * Anything with a fraction or exponent becomes a {@link Double}.
+     */
+    NATIVE,
+
+    /**
+     * Whole numbers become an {@link Integer} if they fit, else a {@link Long}, else a {@link BigInteger}.
+     * Anything with a fraction or exponent becomes a {@link BigDecimal}, so nothing is rounded.
+     */
+    EXACT,
+
+    /**
+     * Every number becomes a {@link JSONNumber}, which keeps its text and is only converted when asked.
+     */
+    LAZY
+
+}
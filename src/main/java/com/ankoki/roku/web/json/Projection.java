@@ -0,0 +1,81 @@
+package com.ankoki.roku.web.json;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <strong>INTERNAL USE ONLY</strong>
+ * <p>
+ * A tree of the keys wanted out of a document, built from the paths given to
+ * {@link JSONParser#setProjection(String...)}. Each node is one key along a path; a node which
+ * ends a path keeps the whole of its value.
+ */
+final class Projection {
+
+    private final Map<String, Projection> children = new HashMap<>();
+    private Projection any;
+    private boolean whole;
+
+    /**
+     * Builds the tree for some paths.
+     *
+     * @param paths JSON Pointers such as {@code /data/id}, or top level keys.
+     * @return the root of the tree.
+     * @throws IllegalArgumentException if a path is empty.
+     */
+    static Projection of(Collection<String> paths) {
+        Projection root = new Projection();
+        for (String path : paths) {
+            if (path.isEmpty() || path.equals("/")) throw new IllegalArgumentException("Projected paths cannot be empty.");
+            Projection node = root;
+            if (!path.startsWith("/")) node = node.add(path);
+            else for (String token : JSONPath.tokens(path)) node = node.add(token);
+            node.whole = true;
+        }
+        root.spread();
+        return root;
+    }
+
+    /**
+     * Gets the node for a key.
+     *
+     * @param key the key.
+     * @return the node, or null if the key is not wanted.
+     */
+    Projection child(String key) {
+        Projection child = children.get(key);
+        return child != null ? child : any;
+    }
+
+    /**
+     * Checks if the whole value at this node is wanted.
+     *
+     * @return true if this node ends a path.
+     */
+    boolean whole() {
+        return whole;
+    }
+
+    private Projection add(String token) {
+        if (token.equals("*")) return any != null ? any : (any = new Projection());
+        return children.computeIfAbsent(token, key -> new Projection());
+    }
+
+    /**
+     * Copies the wildcard's paths into every named key beside it, as {@link #child(String)} only
+     * looks at the wildcard for keys which are not named.
+     */
+    private void spread() {
+        if (any != null) for (Projection child : children.values()) child.merge(any);
+        for (Projection child : children.values()) child.spread();
+        if (any != null) any.spread();
+    }
+
+    private void merge(Projection other) {
+        whole |= other.whole;
+        other.children.forEach((key, child) -> children.computeIfAbsent(key, ignored -> new Projection()).merge(child));
+        if (other.any != null) (any != null ? any : (any = new Projection())).merge(other.any);
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.ankoki.roku.web.json;
+
+/**
+ * How a {@link JSONWriter} tags {@link JSONSerializable}s with their class, under "-x".
+ * Tags written with any policy are understood when parsing.
+ */
+public enum TagPolicy {
+
+    /**
+     * Tags are the full name of the class, such as {@code "com.ankoki.example.Home"}.
+     */
+    NAME,
+
+    /**
+     * Tags are the alias given with {@link JSONSerializable#alias(Class, String)}, or the full name of
+     * the class if it has none.
+     */
+    ALIAS,
+
+    /**
+     * Tags are the number the class was given when it was registered, see {@link JSONSerializable#getId(Class)},
+     * which is looked up by index rather than by hashing a name when parsed.
+     * <p>
+     * Numbers depend on the order classes are registered in, so only use this on its own between programs
+     * which register the same classes in the same order. Otherwise, also enable
+     * {@link JSONWriter#setTypeHeader(boolean)}, which writes the names of the classes once at the start of
+     * the document for parsers to look the numbers up in, when they are set to read it with
+     * {@link JSONParser#setTypeHeader(boolean)} or {@link JSONReader#setTypeHeader(boolean)}.
+     */
+    ID
+
+}
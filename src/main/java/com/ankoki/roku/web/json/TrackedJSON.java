@@ -0,0 +1,569 @@
+package com.ankoki.roku.web.json;
+
+import com.ankoki.roku.web.json.exceptions.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * A {@link JSON} which remembers its text once it has been serialized, so documents which are
+ * serialized far more often than they change only have to be serialized once.
+ * <p>
+ * Every object and array inside of it is tracked too, each remembering its own text. Changing
+ * something only forgets the text of the object or array it is in and of those around that, so
+ * after a small change everything untouched is written straight from what was remembered.
+ * Any {@link JSONWriter} writing without indentation uses the remembered text.
+ * <p>
+ * Maps and lists are copied into tracked ones when they are put in, so changes have to be made
+ * through what is got back out, not the map or list which was put in. Changes made inside of
+ * other values, such as {@link JSONSerializable}s or arrays, are not noticed.
+ */
+public class TrackedJSON extends JSON {
+
+    private Object parent;
+    private String text;
+    private byte[] bytes;
+
+    /**
+     * Creates a new empty TrackedJSON.
+     */
+    public TrackedJSON() {
+        super();
+    }
+
+    /**
+     * Copies a map into a new TrackedJSON.
+     *
+     * @param map the map to copy.
+     */
+    public TrackedJSON(Map<String, ?> map) {
+        super();
+        this.putAll(map);
+    }
+
+    /**
+     * Parses JSON text into a new TrackedJSON.
+     *
+     * @param json the text.
+     * @throws MalformedJsonException if there is an issue with the JSON.
+     */
+    public TrackedJSON(String json) throws MalformedJsonException {
+        this(JSON.parse(json));
+    }
+
+    private TrackedJSON(Map<?, ?> map, Object parent) {
+        super();
+        this.parent = parent;
+        for (Map.Entry<?, ?> entry : map.entrySet()) super.put(String.valueOf(entry.getKey()), TrackedJSON.wrap(entry.getValue(), this));
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Serialization">
+    @Override
+    public String toString() {
+        if (text == null) {
+            StringBuilder builder = new StringBuilder();
+            try {
+                JSONWriter writer = new JSONWriter(builder);
+                writer.beginObject();
+                for (Entry<String, Object> entry : super.entrySet()) {
+                    writer.name(entry.getKey());
+                    writer.writeValue(entry.getValue());
+                }
+                writer.endObject();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            text = builder.toString();
+        }
+        return text;
+    }
+
+    /**
+     * Gets the UTF-8 encoded text of the current TrackedJSON, remembering it until it changes.
+     *
+     * @return the bytes, which must not be changed.
+     */
+    public byte[] toBytes() {
+        if (bytes == null) bytes = this.toString().getBytes(StandardCharsets.UTF_8);
+        return bytes;
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Gets the text of a tracked object or array.
+     *
+     * @param value the value.
+     * @return the text, or null if the value is not tracked.
+     */
+    static String text(Object value) {
+        if (value instanceof TrackedJSON json) return json.toString();
+        if (value instanceof TrackedList list) return list.toString();
+        return null;
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Map Methods">
+    @Override
+    public Object put(String key, Object value) {
+        this.invalidate();
+        return this.release(super.put(key, TrackedJSON.wrap(value, this)));
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ?> map) {
+        for (Entry<? extends String, ?> entry : map.entrySet()) this.put(entry.getKey(), entry.getValue());
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (!this.containsKey(key)) return null;
+        this.invalidate();
+        return this.release(super.remove(key));
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (!this.containsKey(key) || !Objects.equals(this.get(key), value)) return false;
+        this.remove(key);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        this.invalidate();
+        for (Object value : super.values()) this.release(value);
+        super.clear();
+    }
+
+    @Override
+    public Object putIfAbsent(String key, Object value) {
+        Object existing = this.get(key);
+        return existing == null ? this.put(key, value) : existing;
+    }
+
+    @Override
+    public boolean replace(String key, Object oldValue, Object newValue) {
+        if (!this.containsKey(key) || !Objects.equals(this.get(key), oldValue)) return false;
+        this.put(key, newValue);
+        return true;
+    }
+
+    @Override
+    public Object replace(String key, Object value) {
+        return this.containsKey(key) ? this.put(key, value) : null;
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super String, ? super Object, ?> function) {
+        this.invalidate();
+        super.replaceAll((key, value) -> {
+            Object replacement = function.apply(key, value);
+            // Released first, so a value which is kept is not copied.
+            this.release(value);
+            return TrackedJSON.wrap(replacement, this);
+        });
+    }
+
+    @Override
+    public Object computeIfAbsent(String key, Function<? super String, ?> function) {
+        Object existing = this.get(key);
+        if (existing != null) return existing;
+        Object value = function.apply(key);
+        if (value == null) return null;
+        this.put(key, value);
+        return this.get(key);
+    }
+
+    @Override
+    public Object computeIfPresent(String key, BiFunction<? super String, ? super Object, ?> function) {
+        Object existing = this.get(key);
+        if (existing == null) return null;
+        return this.computed(key, function.apply(key, existing));
+    }
+
+    @Override
+    public Object compute(String key, BiFunction<? super String, ? super Object, ?> function) {
+        return this.computed(key, function.apply(key, this.get(key)));
+    }
+
+    @Override
+    public Object merge(String key, Object value, BiFunction<? super Object, ? super Object, ?> function) {
+        Object existing = this.get(key);
+        return this.computed(key, existing == null ? value : function.apply(existing, value));
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        Set<Entry<String, Object>> entries = super.entrySet();
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                Iterator<Entry<String, Object>> iterator = entries.iterator();
+                return new Iterator<>() {
+                    private Entry<String, Object> last;
+
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        Entry<String, Object> entry = last = iterator.next();
+                        return new Entry<>() {
+                            @Override
+                            public String getKey() {
+                                return entry.getKey();
+                            }
+
+                            @Override
+                            public Object getValue() {
+                                return entry.getValue();
+                            }
+
+                            @Override
+                            public Object setValue(Object value) {
+                                TrackedJSON.this.invalidate();
+                                return TrackedJSON.this.release(entry.setValue(TrackedJSON.wrap(value, TrackedJSON.this)));
+                            }
+
+                            @Override
+                            public boolean equals(Object other) {
+                                return entry.equals(other);
+                            }
+
+                            @Override
+                            public int hashCode() {
+                                return entry.hashCode();
+                            }
+
+                            @Override
+                            public String toString() {
+                                return entry.toString();
+                            }
+                        };
+                    }
+
+                    @Override
+                    public void remove() {
+                        TrackedJSON.this.invalidate();
+                        TrackedJSON.this.release(last.getValue());
+                        iterator.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+
+    @Override
+    public Set<String> keySet() {
+        Set<Entry<String, Object>> entries = this.entrySet();
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<String> iterator() {
+                Iterator<Entry<String, Object>> iterator = entries.iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public String next() {
+                        return iterator.next().getKey();
+                    }
+
+                    @Override
+                    public void remove() {
+                        iterator.remove();
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object key) {
+                return TrackedJSON.this.containsKey(key);
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+
+    @Override
+    public Collection<Object> values() {
+        Set<Entry<String, Object>> entries = this.entrySet();
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<Object> iterator() {
+                Iterator<Entry<String, Object>> iterator = entries.iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Object next() {
+                        return iterator.next().getValue();
+                    }
+
+                    @Override
+                    public void remove() {
+                        iterator.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+
+    @Override
+    public Object clone() {
+        return new TrackedJSON(this, null);
+    }
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Internal Methods">
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Forgets the text of the current object, and of everything it is inside of.
+     * Anything inside an object which still has its text has its text too, so this stops at the
+     * first object which has already forgotten.
+     */
+    private void invalidate() {
+        if (text == null && bytes == null) return;
+        text = null;
+        bytes = null;
+        TrackedJSON.invalidate(parent);
+    }
+
+    private Object computed(String key, Object value) {
+        if (value == null) this.remove(key);
+        else this.put(key, value);
+        return this.get(key);
+    }
+
+    private Object release(Object value) {
+        if (value instanceof TrackedJSON json && json.parent == this) json.parent = null;
+        else if (value instanceof TrackedList list && list.parent == this) list.parent = null;
+        return value;
+    }
+
+    private static void invalidate(Object node) {
+        if (node instanceof TrackedJSON json) json.invalidate();
+        else if (node instanceof TrackedList list) list.invalidate();
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Makes a value tracked, copying maps and lists into tracked ones.
+     * Tracked values which already belong to something are copied, even if it is the same parent, as they can only
+     * tell one parent they changed and can only be released from it once.
+     *
+     * @param value  the value.
+     * @param parent what the value is being put into.
+     * @return the tracked value.
+     */
+    private static Object wrap(Object value, Object parent) {
+        if (value instanceof TrackedJSON json) {
+            if (json.parent != null) return new TrackedJSON(json, parent);
+            json.parent = parent;
+            return json;
+        }
+        if (value instanceof TrackedList list) {
+            if (list.parent != null) return new TrackedList(list, parent);
+            list.parent = parent;
+            return list;
+        }
+        if (value instanceof Map<?, ?> map) return new TrackedJSON(map, parent);
+        if (value instanceof List<?> list) return new TrackedList(list, parent);
+        return value;
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * A list which remembers its text, and tells what it is inside of when it changes.
+     */
+    private static final class TrackedList extends ArrayList<Object> {
+
+        private Object parent;
+        private String text;
+
+        private TrackedList(Collection<?> values, Object parent) {
+            super(values.size());
+            this.parent = parent;
+            for (Object value : values) super.add(TrackedJSON.wrap(value, this));
+        }
+
+        @Override
+        public String toString() {
+            if (text == null) {
+                StringBuilder builder = new StringBuilder();
+                try {
+                    JSONWriter writer = new JSONWriter(builder);
+                    writer.beginArray();
+                    for (int i = 0; i < this.size(); i++) writer.writeValue(this.get(i));
+                    writer.endArray();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                text = builder.toString();
+            }
+            return text;
+        }
+
+        @Override
+        public boolean add(Object value) {
+            this.invalidate();
+            return super.add(TrackedJSON.wrap(value, this));
+        }
+
+        @Override
+        public void add(int index, Object value) {
+            this.invalidate();
+            super.add(index, TrackedJSON.wrap(value, this));
+        }
+
+        @Override
+        public boolean addAll(Collection<?> values) {
+            return this.addAll(this.size(), values);
+        }
+
+        @Override
+        public boolean addAll(int index, Collection<?> values) {
+            this.invalidate();
+            List<Object> wrapped = new ArrayList<>(values.size());
+            for (Object value : values) wrapped.add(TrackedJSON.wrap(value, this));
+            return super.addAll(index, wrapped);
+        }
+
+        @Override
+        public Object set(int index, Object value) {
+            this.invalidate();
+            return this.release(super.set(index, TrackedJSON.wrap(value, this)));
+        }
+
+        @Override
+        public Object remove(int index) {
+            this.invalidate();
+            return this.release(super.remove(index));
+        }
+
+        @Override
+        public boolean remove(Object value) {
+            int index = this.indexOf(value);
+            if (index == -1) return false;
+            this.remove(index);
+            return true;
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> values) {
+            return this.removeIf(values::contains);
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> values) {
+            return this.removeIf(value -> !values.contains(value));
+        }
+
+        @Override
+        public boolean removeIf(Predicate<? super Object> filter) {
+            boolean removed = false;
+            for (int i = this.size() - 1; i >= 0; i--) {
+                if (filter.test(this.get(i))) {
+                    this.remove(i);
+                    removed = true;
+                }
+            }
+            return removed;
+        }
+
+        @Override
+        public void replaceAll(UnaryOperator<Object> operator) {
+            this.invalidate();
+            super.replaceAll(value -> {
+                Object replacement = operator.apply(value);
+                this.release(value);
+                return TrackedJSON.wrap(replacement, this);
+            });
+        }
+
+        @Override
+        public void sort(Comparator<? super Object> comparator) {
+            this.invalidate();
+            super.sort(comparator);
+        }
+
+        @Override
+        public void clear() {
+            this.invalidate();
+            for (int i = 0; i < this.size(); i++) this.release(this.get(i));
+            super.clear();
+        }
+
+        @Override
+        protected void removeRange(int from, int to) {
+            this.invalidate();
+            super.removeRange(from, to);
+        }
+
+        @Override
+        public List<Object> subList(int from, int to) {
+            // Sub lists change the backing array directly, so any use of one is taken as a change.
+            this.invalidate();
+            return super.subList(from, to);
+        }
+
+        @Override
+        public Object clone() {
+            return new TrackedList(this, null);
+        }
+
+        private void invalidate() {
+            if (text == null) return;
+            text = null;
+            TrackedJSON.invalidate(parent);
+        }
+
+        private Object release(Object value) {
+            if (value instanceof TrackedJSON json && json.parent == this) json.parent = null;
+            else if (value instanceof TrackedList list && list.parent == this) list.parent = null;
+            return value;
+        }
+
+    }
+    // </editor-fold>
+
+}
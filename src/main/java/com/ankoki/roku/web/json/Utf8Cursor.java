@@ -0,0 +1,185 @@
+package com.ankoki.roku.web.json;
+
+import com.ankoki.roku.misc.StringUtils;
+import com.ankoki.roku.web.json.exceptions.MalformedJsonException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <strong>INTERNAL USE ONLY</strong>
+ * <p>
+ * A cursor over UTF-8 encoded JSON, read straight from the bytes.
+ * <p>
+ * Every structural character of JSON is ASCII, and no byte of a multi-byte UTF-8 sequence
+ * is, so the structure can be scanned byte by byte. Bytes are only decoded into characters
+ * when a string is read, and strings which are entirely ASCII are copied without decoding.
+ * <p>
+ * Invalid UTF-8, including overlong forms, encoded surrogates and code points past U+10FFFF, is
+ * replaced with U+FFFD wherever it is, the same as when decoding the bytes into a String first.
+ */
+final class Utf8Cursor extends JSONCursor {
+
+    private ByteBuffer source;
+    private byte[] array;
+    private int offset;
+    private byte[] bytes;
+    private final StringBuilder scratch = new StringBuilder();
+
+    /**
+     * Creates a cursor over the remaining bytes of a buffer.
+     * The buffer's position is not changed.
+     *
+     * @param source the UTF-8 encoded JSON.
+     */
+    Utf8Cursor(ByteBuffer source) {
+        super(0, 0);
+        this.reset(source);
+    }
+
+    /**
+     * Moves the cursor to the remaining bytes of another buffer, keeping its scratch buffers.
+     * The buffer's position is not changed.
+     *
+     * @param source the UTF-8 encoded JSON.
+     * @return the current cursor.
+     */
+    Utf8Cursor reset(ByteBuffer source) {
+        this.source = source;
+        this.array = source.hasArray() ? source.array() : null;
+        this.offset = source.hasArray() ? source.arrayOffset() : 0;
+        this.position = source.position();
+        this.limit = source.limit();
+        // Skip a byte order mark, some editors like to add one.
+        if (limit - position >= 3 && source.get(position) == (byte) 0xEF && source.get(position + 1) == (byte) 0xBB && source.get(position + 2) == (byte) 0xBF)
+            position += 3;
+        return this;
+    }
+
+    @Override
+    void release() {
+        source = null;
+        array = null;
+        if (bytes != null && bytes.length > 8192) bytes = null;
+        scratch.setLength(0);
+        if (scratch.capacity() > 8192) scratch.trimToSize();
+    }
+
+    @Override
+    int charAt(int index) {
+        return source.get(index) & 0xFF;
+    }
+
+    @Override
+    String text(int start, int end) {
+        return this.decode(start, end, true);
+    }
+
+    @Override
+    void skipValue() throws MalformedJsonException {
+        int c = this.skipWhitespace();
+        if (array == null || (c != '{' && c != '[')) {
+            super.skipValue();
+            return;
+        }
+        // Skipping is most of the work when only part of a document is wanted, so scan the array directly.
+        byte[] array = this.array;
+        int end = offset + limit;
+        int i = offset + position + 1;
+        int nesting = 1;
+        while (i < end) {
+            byte b = array[i++];
+            if (b == '"') {
+                while (i < end && (b = array[i++]) != '"') if (b == '\\') i++;
+                if (b != '"' || i > end) break;
+            } else if (b == '{' || b == '[') nesting++;
+            else if ((b == '}' || b == ']') && --nesting == 0) {
+                position = i - offset;
+                return;
+            }
+        }
+        throw this.error("Found no closing bracket");
+    }
+
+    @Override
+    String readKey() throws MalformedJsonException {
+        if (keys == null) return this.readString();
+        int start = position + 1;
+        int hash = 0;
+        for (int i = start; i < limit && i - start <= KeyTable.MAX_LENGTH; i++) {
+            byte b = source.get(i);
+            if (b == '"') {
+                position = i + 1;
+                String key = keys.find(source, start, i, hash);
+                return key != null ? key : keys.add(this.decode(start, i, true));
+            }
+            if (b == '\\' || b < 0) break;
+            hash = 31 * hash + b;
+        }
+        return keys.intern(this.readString());
+    }
+
+    @Override
+    String readString() throws MalformedJsonException {
+        int start = ++position;
+        boolean ascii = true;
+        // Fast path, most strings have nothing to unescape and can be copied straight from the source.
+        while (position < limit) {
+            byte b = source.get(position);
+            if (b == '"') return this.decode(start, position++, ascii);
+            if (b == '\\') break;
+            if (b < 0) ascii = false;
+            position++;
+        }
+        if (position >= limit) throw this.error("Quote found with no closing quote");
+        scratch.setLength(0);
+        scratch.append(this.decode(start, position, ascii));
+        while (position < limit) {
+            int b = source.get(position) & 0xFF;
+            if (b == '"') {
+                position++;
+                return scratch.toString();
+            } else if (b == '\\') {
+                if (++position >= limit) break;
+                int escaped = source.get(position) & 0xFF;
+                if (escaped == 'u') {
+                    scratch.append(this.readUnicode(position + 1));
+                    position += 5;
+                } else {
+                    int unescaped = StringUtils.unescape(escaped);
+                    if (unescaped == -1) throw this.error("Invalid escape sequence");
+                    scratch.append((char) unescaped);
+                    position++;
+                }
+            } else if (b < 0x80) {
+                scratch.append((char) b);
+                position++;
+            } else {
+                // No byte of a multi-byte sequence is ASCII, so a run of them is decoded just as the fast path would.
+                int run = position;
+                while (position < limit && source.get(position) < 0) position++;
+                scratch.append(this.decode(run, position, false));
+            }
+        }
+        throw this.error("Quote found with no closing quote");
+    }
+
+    /**
+     * <strong>INTERNAL USE ONLY</strong>
+     * <p>
+     * Decodes a range of the source into a string.
+     *
+     * @param start the start index, inclusive.
+     * @param end   the end index, exclusive.
+     * @param ascii true if every byte in the range is known to be ASCII.
+     * @return the string.
+     */
+    private String decode(int start, int end, boolean ascii) {
+        int length = end - start;
+        if (array != null) return new String(array, offset + start, length, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+        if (bytes == null || bytes.length < length) bytes = new byte[Math.max(length, 64)];
+        source.get(start, bytes, 0, length);
+        return new String(bytes, 0, length, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.ankoki.roku.web.json.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link com.ankoki.roku.web.json.JSONSerializable} to have a
+ * {@link com.ankoki.roku.web.json.JSONCodec} generated for it at compile time by the Roku processor.
+ * <p>
+ * Every field which is not static or transient is serialized under its own name. A field is read
+ * directly if it is not private, otherwise through a {@code name()}, {@code getName()} or
+ * {@code isName()} method. Objects are created through a constructor taking every field in the
+ * order they are declared, or if there is not one, a no argument constructor with the fields
+ * then set directly.
+ * <p>
+ * The generated codec is called {@code <Class>_JSONCodec}, and sits in the same package. Register
+ * it with {@link com.ankoki.roku.web.json.JSONSerializable#register(com.ankoki.roku.web.json.JSONCodec)},
+ * or every codec at once with
+ * {@link com.ankoki.roku.web.json.JSONSerializable#registerCodecs(ClassLoader)}.
+ * The class then does not need a deserialize method. It must still implement serialize, which can
+ * call the codec's {@code INSTANCE}.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface GenerateCodec {}
@@ -0,0 +1,13 @@
+package com.ankoki.roku.web.json.exceptions;
+
+public class JSONPatchException extends RuntimeException {
+
+    public JSONPatchException() {
+        super("There was an issue applying your JSON patch.");
+    }
+
+    public JSONPatchException(String message) {
+        super(message);
+    }
+
+}
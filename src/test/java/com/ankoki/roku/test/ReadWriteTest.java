@@ -1,17 +1,50 @@
 package com.ankoki.roku.test;
 
+import com.ankoki.roku.misc.StringUtils;
+import com.ankoki.roku.web.json.AtomicJSON;
+import com.ankoki.roku.web.json.DoubleList;
+import com.ankoki.roku.web.json.ImmutableJSON;
+import com.ankoki.roku.web.json.IntList;
 import com.ankoki.roku.web.json.JSON;
+import com.ankoki.roku.web.json.JSONBinary;
+import com.ankoki.roku.web.json.JSONBinder;
+import com.ankoki.roku.web.json.JSONNumber;
+import com.ankoki.roku.web.json.JSONParser;
+import com.ankoki.roku.web.json.JSONPatch;
 import com.ankoki.roku.web.json.JSONSerializable;
+import com.ankoki.roku.web.json.JSONTape;
+import com.ankoki.roku.web.json.JSONToken;
+import com.ankoki.roku.web.json.JSONWriter;
+import com.ankoki.roku.web.json.LazyJSON;
+import com.ankoki.roku.web.json.LongList;
+import com.ankoki.roku.web.json.JSONReader;
+import com.ankoki.roku.web.json.NumberPolicy;
+import com.ankoki.roku.web.json.TagPolicy;
+import com.ankoki.roku.web.json.TrackedJSON;
+import com.ankoki.roku.web.json.annotations.GenerateCodec;
+import com.ankoki.roku.web.json.exceptions.JSONPatchException;
+import com.ankoki.roku.web.json.exceptions.MalformedJsonException;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 public class ReadWriteTest {
 
 	static {
 		JSONSerializable.register(SerializableTest.class);
+		JSONSerializable.registerCodecs(ReadWriteTest.class.getClassLoader());
 	}
 
 	// READ
@@ -63,6 +96,46 @@ public class ReadWriteTest {
 		assert json.get("negative").equals(-53) : json.get("negative");
 	}
 
+	@Test
+	public void numberPolicies() {
+		String text = "{\"int\": -7, \"long\": 12345678901, \"big\": 123456789012345678901234567890, \"decimal\": 0.1, \"exponent\": 2.5E-3, \"precise\": 3.141592653589793238462643383279}";
+		JSON json = new JSON(text);
+		assert json.get("int").equals(-7) : json.get("int");
+		assert json.get("long").equals(12345678901L) : json.get("long");
+		assert json.get("big").equals(1.2345678901234568E29) : json.get("big");
+		assert json.get("decimal").equals(0.1) : json.get("decimal");
+		assert json.get("exponent").equals(0.0025) : json.get("exponent");
+		assert json.get("precise").equals(Math.PI) : json.get("precise");
+		JSON exact = new JSONParser().setNumberPolicy(NumberPolicy.EXACT).parse(text);
+		assert exact.get("int").equals(-7) : exact.get("int");
+		assert exact.get("big").equals(new BigInteger("123456789012345678901234567890")) : exact.get("big");
+		assert exact.get("precise").equals(new BigDecimal("3.141592653589793238462643383279")) : exact.get("precise");
+		JSON lazy = new JSONParser().setNumberPolicy(NumberPolicy.LAZY).parse(text);
+		assert lazy.get("exponent") instanceof JSONNumber number && number.doubleValue() == 0.0025 : lazy.get("exponent");
+		assert lazy.toString().equals(text.replace(" ", "")) : lazy.toString();
+		for (String malformed : new String[]{"01", "1.", "-", "2e", ".5", "1.2.3", "--1", "1e+"}) {
+			try {
+				new JSON("{\"n\": " + malformed + "}");
+				assert false : malformed;
+			} catch (MalformedJsonException ignored) {}
+		}
+	}
+
+	@Test
+	public void internedKeys() {
+		String text = "{\"players\": [{\"name\": \"a\", \"kills\": 1}, {\"name\": \"b\", \"kills\": 2}, {\"na\\u006de\": \"c\"}]}";
+		for (JSON json : new JSON[]{new JSON(text), JSON.parse(text.getBytes(StandardCharsets.UTF_8)), new LazyJSON(text)}) {
+			List<?> players = (List<?>) json.get("players");
+			String first = ((Map<String, ?>) players.get(0)).keySet().iterator().next();
+			String second = ((Map<String, ?>) players.get(1)).keySet().iterator().next();
+			String escaped = ((Map<String, ?>) players.get(2)).keySet().iterator().next();
+			assert first.equals("name") && first == second && first == escaped : players;
+		}
+		JSON plain = new JSONParser().setInternKeys(false).parse(text);
+		List<?> players = (List<?>) plain.get("players");
+		assert ((Map<String, ?>) players.get(0)).keySet().iterator().next() != ((Map<String, ?>) players.get(1)).keySet().iterator().next();
+	}
+
 	@Test
 	public void nullability() {
 		JSON json = new JSON("{\"null\":null}");
@@ -88,7 +161,619 @@ public class ReadWriteTest {
 		assert ((SerializableTest) json.get("serializable")).five == 5 : ((SerializableTest) json.get("serializable")).five;
 	}
 
-	// TODO WRITE
+	@Test
+	public void nestedArrays() {
+		JSON json = new JSON("{\"grid\": [[1, 2], [3, [4, 5]], []]}");
+		List<?> grid = (List<?>) json.get("grid");
+		assert grid.size() == 3 : grid.size();
+		assert grid.get(0).equals(List.of(1, 2)) : grid.get(0);
+		assert ((List<?>) ((List<?>) grid.get(1)).get(1)).get(1).equals(5) : grid.get(1);
+		assert ((List<?>) grid.get(2)).isEmpty() : grid.get(2);
+	}
+
+	@Test
+	public void deepNesting() {
+		String json = "{\"deep\":" + "[".repeat(5000) + "\"bottom\"" + "]".repeat(5000) + "}";
+		Object value = new JSON(json).get("deep");
+		for (int i = 0; i < 4999; i++) value = ((List<?>) value).get(0);
+		assert ((List<?>) value).get(0).equals("bottom") : value;
+	}
+
+	@Test
+	public void escapes() {
+		JSON json = new JSON("{\"quote\": \"say \\\"hi\\\", {}[],:\", \"unicode\": \"\\u00e9\\n\\t\\\\\"}");
+		assert json.get("quote").equals("say \"hi\", {}[],:") : json.get("quote");
+		assert json.get("unicode").equals("\u00e9\n\t\\") : json.get("unicode");
+		for (String invalid : new String[]{"\\x", "\\u12G4", "\\u12", "\\"}) {
+			try {
+				new JSON("{\"a\": \"" + invalid + "\"}");
+				assert false : invalid;
+			} catch (MalformedJsonException ignored) {}
+		}
+
+		String plain = "nothing to escape here";
+		assert StringUtils.escape(plain) == plain && StringUtils.unescape(plain) == plain;
+		String text = "a\"b\\c/\n\u0001\u2028\u00e9";
+		String escaped = StringUtils.escape(text);
+		assert escaped.equals("a\\\"b\\\\c\\/\\n\\u0001\\u2028\u00e9") : escaped;
+		assert StringUtils.unescape(escaped).equals(text) : StringUtils.unescape(escaped);
+		assert StringUtils.unescape("\\t\\b\\f\\r\\u0041").equals("\t\b\f\rA");
+		StringBuilder builder = new StringBuilder("x");
+		assert StringUtils.unescape("\\n\\q", 0, 4, builder) == 2 && builder.toString().equals("x\n") : builder;
+	}
+
+	@Test
+	public void whitespace() {
+		JSON json = new JSON("\n{\n\t\"a\" : { \"b\" : [ 1 , 2.5 , -3e2 ] } ,\r\n\t\"c\" : 12345678901\n}\n");
+		assert json.size() == 2 : json.size();
+		assert ((Map<?, ?>) json.get("a")).get("b").equals(List.of(1, 2.5, -300.0)) : json.get("a");
+		assert json.get("c").equals(12345678901L) : json.get("c");
+	}
+
+	@Test
+	public void malformed() {
+		for (String json : new String[]{"", "[]", "{\"a\":}", "{\"a\":1,}", "{\"a\" 1}", "{\"a\":[1 2]}", "{\"a\":\"b}", "{} {}"}) {
+			try {
+				new JSON(json);
+				assert false : json;
+			} catch (MalformedJsonException ignored) {}
+		}
+	}
+
+	@Test
+	public void projection() {
+		String text = "{\"id\": 7, \"skip\": {\"deep\": [1, {\"x\": \"}]\\\"\"}]}, \"data\": {\"name\": \"Ankoki\", \"secret\": true,"
+				+ " \"friends\": [{\"name\": \"Roku\", \"age\": 3}, 5, {\"age\": 4}]}, \"list\": [1, 2]}";
+		JSONParser parser = new JSONParser().setProjection("id", "/data/name", "/data/friends/name", "/list");
+		JSON json = parser.parse(text);
+		assert json.toString().equals("{\"id\":7,\"data\":{\"name\":\"Ankoki\",\"friends\":[{\"name\":\"Roku\"},{}]},\"list\":[1,2]}") : json;
+		assert parser.parse(text.getBytes(StandardCharsets.UTF_8)).equals(json);
+		assert ((Map<?, ?>) new JSONParser().setProjection("/data/*").parse(text).get("data")).size() == 3;
+		assert parser.setProjection().parse(text).containsKey("skip");
+
+		String nested = "{\"a\": {\"b\": {\"c\": 1, \"d\": 2}, \"e\": {\"c\": 3, \"d\": 4}}, \"f\": 5}";
+		JSON wildcard = new JSONParser().setProjection("/a/*", "/a/b/c").parse(nested);
+		assert wildcard.toString().equals("{\"a\":{\"b\":{\"c\":1,\"d\":2},\"e\":{\"c\":3,\"d\":4}}}") : wildcard;
+		wildcard = new JSONParser().setProjection("/a/*/d", "/a/b/c").parse(nested);
+		assert wildcard.toString().equals("{\"a\":{\"b\":{\"c\":1,\"d\":2},\"e\":{\"d\":4}}}") : wildcard;
+		wildcard = new JSONParser().setProjection("/*/*/c", "/a/e/d").parse(nested);
+		assert wildcard.toString().equals("{\"a\":{\"b\":{\"c\":1},\"e\":{\"c\":3,\"d\":4}}}") : wildcard;
+	}
+
+	@Test
+	public void primitiveArrays() {
+		String text = "{\"ints\":[1,-2,3],\"longs\":[1,12345678901],\"doubles\":[0.5,-1.0E-4],\"mixed\":[1,2,2.5,\"x\",[3,4]],"
+				+ "\"empty\":[],\"nested\":[[1,2],[3.5]]}";
+		JSONParser parser = new JSONParser().setPrimitiveArrays(true);
+		JSON json = parser.parse(text);
+		assert json.get("ints") instanceof IntList ints && ints.getInt(1) == -2 && ints.equals(List.of(1, -2, 3)) : json.get("ints");
+		assert json.get("longs") instanceof LongList longs && longs.getLong(1) == 12345678901L : json.get("longs");
+		assert json.get("doubles") instanceof DoubleList doubles && doubles.getDouble(0) == 0.5 : json.get("doubles");
+		List<?> mixed = (List<?>) json.get("mixed");
+		assert !(mixed instanceof IntList) && mixed.get(2).equals(2.5) && mixed.get(4) instanceof IntList : mixed;
+		assert json.get("empty") instanceof ArrayList && ((List<?>) json.get("nested")).get(1) instanceof DoubleList : json;
+		assert json.toString().equals(text) : json;
+		assert new JSON(text).get("ints").equals(json.get("ints")) && parser.parse(text.getBytes(StandardCharsets.UTF_8)).equals(json);
+		for (String malformed : new String[]{"[1,]", "[1 2]", "[1,2"}) {
+			try {
+				parser.parse("{\"n\": " + malformed + "}");
+				assert false : malformed;
+			} catch (MalformedJsonException ignored) {}
+		}
+
+		IntList list = IntList.of(5, 6);
+		list.add(0, 4);
+		list.remove(2);
+		JSON written = new JSON();
+		written.put("list", list);
+		written.put("array", new long[]{7, 8});
+		written.put("decimals", new double[]{0.25});
+		assert written.toString().equals("{\"list\":[4,5],\"array\":[7,8],\"decimals\":[0.25]}") : written;
+	}
+
+	@Test
+	public void reuse() throws Exception {
+		JSONParser parser = JSONParser.local();
+		assert JSONParser.local() == parser : "not thread local";
+		JSON exact = parser.setNumberPolicy(NumberPolicy.EXACT).parse("{\"n\": 0.5}");
+		assert exact.get("n") instanceof BigDecimal : exact;
+		assert JSONParser.local().parse("{\"n\": 0.5}").get("n") instanceof Double : "options were not reset";
+		for (int i = 0; i < 3; i++) {
+			assert parser.parse("{\"i\": " + i + ", \"s\": \"a\\nb\"}").equals(Map.of("i", i, "s", "a\nb"));
+			assert parser.parse(("{\"i\": " + i + "}").getBytes(StandardCharsets.UTF_8)).get("i").equals(i);
+		}
+		JSONParser[] other = new JSONParser[1];
+		Thread thread = new Thread(() -> other[0] = JSONParser.local());
+		thread.start();
+		thread.join();
+		assert other[0] != null && other[0] != parser : "shared between threads";
+
+		StringBuilder first = new StringBuilder(), second = new StringBuilder();
+		JSONWriter writer = new JSONWriter(first);
+		writer.writeValue(List.of(1, 2));
+		writer.reset(second).writeValue(Map.of("a", 1));
+		assert first.toString().equals("[1,2]") && second.toString().equals("{\"a\":1}") : first + " " + second;
+		JSON json = new JSON("{\"a\": [1, {\"b\": null}]}");
+		assert json.toString().equals("{\"a\":[1,{\"b\":null}]}") && json.toPrettyString(2).contains("\n    1,") : json.toPrettyString(2);
+		assert json.toString().equals("{\"a\":[1,{\"b\":null}]}") : json;
+	}
+
+	@Test
+	public void bytes() {
+		String text = "{\"ascii\": \"plain\", \"utf\": \"h\u00e9llo \u4e16\u754c \ud83d\ude00\", \"mixed\": \"\u00e9\\n\u4e16\\u0041\ud83d\ude00\", \"n\": [1, 2.5]}";
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		JSON expected = new JSON(text);
+		assert JSON.parse(bytes).equals(expected) : JSON.parse(bytes);
+		ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 3);
+		direct.put(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF}).put(bytes).flip();
+		JSON json = JSON.parse(direct);
+		assert json.equals(expected) : json;
+		assert json.get("mixed").equals("\u00e9\n\u4e16A\ud83d\ude00") : json.get("mixed");
+		assert direct.position() == 0 : direct.position();
+
+		// Invalid UTF-8 is replaced the same way whether or not the string has an escape in it, and as the String decoder would.
+		byte[] invalid = {(byte) 0xC0, (byte) 0xAF, (byte) 0xED, (byte) 0xA0, (byte) 0x80, (byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80, (byte) 0xE4, (byte) 0xB8};
+		String replaced = new String(invalid, StandardCharsets.UTF_8);
+		ByteBuffer broken = ByteBuffer.allocate(64);
+		broken.put("{\"plain\": \"".getBytes(StandardCharsets.UTF_8)).put(invalid).put("\", \"escaped\": \"\\n".getBytes(StandardCharsets.UTF_8)).put(invalid).put("\"}".getBytes(StandardCharsets.UTF_8)).flip();
+		JSON decoded = JSON.parse(broken);
+		assert decoded.get("plain").equals(replaced) && decoded.get("escaped").equals("\n" + replaced) && replaced.chars().allMatch(c -> c == 0xFFFD) : decoded;
+	}
+
+	@Test
+	public void lazy() {
+		String text = "{\"skipped\": {\"deep\": [1, {\"x\": \"}\\\"]\"}]}, \"wanted\": {\"inner\": [1, {\"a\": true}]}, \"name\": \"lazy\","
+				+ " \"serializable\": {\"-x\":\"com.ankoki.roku.test.ReadWriteTest$SerializableTest\",\"one\":1,\"two\":2,\"five\":5}}";
+		LazyJSON lazy = new LazyJSON(text);
+		assert lazy.size() == 4 : lazy.size();
+		assert lazy.get("name").equals("lazy") : lazy.get("name");
+		Map<?, ?> wanted = (Map<?, ?>) lazy.get("wanted");
+		assert wanted instanceof LazyJSON : wanted.getClass();
+		assert ((Map<?, ?>) ((List<?>) wanted.get("inner")).get(1)).get("a").equals(true) : wanted;
+		assert lazy.get("serializable") instanceof SerializableTest : lazy.get("serializable");
+		assert lazy.toString().equals(new JSON(text).toString()) : lazy;
+		assert new LazyJSON(text.getBytes(StandardCharsets.UTF_8)).toString().equals(new JSON(text).toString());
+	}
+
+	// WRITE
+
+	@Test
+	public void writeCompact() {
+		JSON json = new JSON("{\"a\": 1, \"b\": [true, null, 2.5], \"c\": {\"d\": \"e\"}, \"empty\": {}}");
+		assert json.toString().equals("{\"a\":1,\"b\":[true,null,2.5],\"c\":{\"d\":\"e\"},\"empty\":{}}") : json.toString();
+		assert new JSON().toString().equals("{}") : new JSON().toString();
+	}
+
+	@Test
+	public void writePretty() {
+		JSON json = new JSON("{\"a\": 1, \"b\": [1, []], \"c\": {\"d\": null}}");
+		String expected = """
+				{
+				  "a": 1,
+				  "b": [
+				    1,
+				    []
+				  ],
+				  "c": {
+				    "d": null
+				  }
+				}""";
+		assert json.toPrettyString().equals(expected) : json.toPrettyString();
+	}
+
+	@Test
+	public void writeEscapes() {
+		JSON json = new JSON();
+		json.put("quote \"key\"", "line\nbreak \\ \"quoted\" \u0001");
+		assert json.toString().equals("{\"quote \\\"key\\\"\":\"line\\nbreak \\\\ \\\"quoted\\\" \\u0001\"}") : json.toString();
+		assert new JSON(json.toString()).equals(json) : new JSON(json.toString());
+	}
+
+	@Test
+	public void writeSerializable() {
+		JSON json = new JSON();
+		json.put("list", List.of(new SerializableTest(1, 2, 5), new SerializableTest(3, 4, 6)));
+		JSON read = new JSON(json.toString());
+		SerializableTest second = (SerializableTest) ((List<?>) read.get("list")).get(1);
+		assert second.one == 3 && second.two == 4 && second.five == 6 : json.toString();
+	}
+
+	@Test
+	public void generatedCodec() throws Exception {
+		GeneratedTest value = new GeneratedTest("Ankoki", 12, List.of(new SerializableTest(1, 2, 5)), GeneratedTest.Rank.ADMIN);
+		assert value.serialize().get("kills").equals(12) : value.serialize();
+		JSON json = new JSON();
+		json.put("player", value);
+		String text = json.toString();
+		GeneratedTest parsed = (GeneratedTest) JSON.parse(text).get("player");
+		assert parsed.name.equals("Ankoki") && parsed.kills == 12 && parsed.rank == GeneratedTest.Rank.ADMIN : text;
+		assert ((SerializableTest) parsed.friends.get(0)).five == 5 : text;
+		try (JSONReader reader = new JSONReader(new StringReader(text))) {
+			reader.beginObject();
+			reader.nextName();
+			GeneratedTest streamed = (GeneratedTest) reader.nextValue();
+			assert streamed.name.equals("Ankoki") && streamed.rank == GeneratedTest.Rank.ADMIN && streamed.friends.size() == 1 : text;
+		}
+
+		// A null primitive reads as its default, whether through deserialize or the codec.
+		String nulled = "{\"player\": {\"-x\": \"" + GeneratedTest.class.getName() + "\", \"name\": \"a\", \"kills\": null}}";
+		assert ((GeneratedTest) JSON.parse(nulled).get("player")).kills == 0 : nulled;
+		try (JSONReader reader = new JSONReader(new StringReader(nulled))) {
+			reader.beginObject();
+			reader.nextName();
+			assert ((GeneratedTest) reader.nextValue()).kills == 0 : nulled;
+		}
+	}
+
+	// PATCHES
+
+	@Test
+	public void patch() {
+		JSON before = new JSON("{\"name\": \"Ankoki\", \"kills\": 3, \"old\": true, \"stats\": {\"a\": 1, \"b\": [1, 2, 3, 4]}, \"homes\": [\"x\", \"y\"]}");
+		JSON after = new JSON("{\"name\": \"Ankoki\", \"kills\": 4, \"stats\": {\"a\": 1, \"b\": [1, 5, 4], \"c\": null}, \"homes\": [\"x\", \"y\", {\"z\": 1}]}");
+		JSONPatch patch = before.diff(after);
+		assert patch.getOperations().size() == 6 : patch;
+		JSON copy = new JSON(before.toString());
+		copy.apply(JSONPatch.parse(patch.toString()));
+		assert copy.equals(after) : copy;
+		// Replaced keys stay where they were, so the text is the same too.
+		assert copy.toString().equals(after.toString()) : copy;
+		assert copy.diff(after).isEmpty() : copy.diff(after);
+
+		JSON moved = new JSON("{\"a\": {\"b\": [1, 2]}, \"c\": 1}").apply(JSONPatch.parse(
+				"[{\"op\": \"test\", \"path\": \"/c\", \"value\": 1.0}, {\"op\": \"move\", \"from\": \"/a/b\", \"path\": \"/b\"},"
+						+ " {\"op\": \"copy\", \"from\": \"/b/0\", \"path\": \"/b/-\"}, {\"op\": \"remove\", \"path\": \"/c\"}]"));
+		assert moved.toString().equals("{\"a\":{},\"b\":[1,2,1]}") : moved;
+		try {
+			moved.apply(JSONPatch.parse("[{\"op\": \"replace\", \"path\": \"/missing\", \"value\": 1}]"));
+			assert false : "replaced a missing value";
+		} catch (JSONPatchException ignored) {}
+
+		JSON merge = JSONPatch.mergeDiff(before, after);
+		assert merge.toString().equals("{\"old\":null,\"kills\":4,\"stats\":{\"b\":[1,5,4],\"c\":null},\"homes\":[\"x\",\"y\",{\"z\":1}]}") : merge;
+		JSON merged = new JSON(before.toString()).merge(merge);
+		assert !merged.containsKey("old") && merged.get("kills").equals(4) && !((Map<?, ?>) merged.get("stats")).containsKey("c") : merged;
+	}
+
+	// BINARY
+
+	@Test
+	public void binary() throws Exception {
+		String text = "{\"name\":\"Ankoki\",\"kills\":12,\"big\":123456789012,\"ratio\":-0.5,\"exact\":1.10,"
+				+ "\"huge\":123456789012345678901234567890,\"alive\":true,\"nothing\":null,\"unicode\":\"caf\u00e9 \ud83d\ude00\","
+				+ "\"list\":[{\"name\":\"a\",\"kills\":1},{\"name\":\"b\",\"kills\":2}],"
+				+ "\"serializable\":{\"-x\":\"com.ankoki.roku.test.ReadWriteTest$SerializableTest\",\"one\":1,\"two\":2,\"five\":5}}";
+		JSON json = new JSONParser().setNumberPolicy(NumberPolicy.EXACT).parse(text);
+		byte[] bytes = JSONBinary.toBytes(json);
+		assert bytes.length < text.length() : bytes.length;
+		JSON read = (JSON) JSONBinary.read(bytes);
+		assert read.toString().equals(json.toString()) : read;
+		assert read.get("huge").equals(json.get("huge")) && read.get("exact").equals(new BigDecimal("1.10")) : read;
+		assert read.get("serializable") instanceof SerializableTest : read.get("serializable");
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 4).order(ByteOrder.LITTLE_ENDIAN);
+		JSONBinary.write(json, buffer);
+		buffer.putInt(7).flip();
+		assert JSONBinary.read(buffer).toString().equals(json.toString());
+		assert buffer.remaining() == 4 : buffer.remaining();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JSON large = new JSON();
+		for (int i = 0; i < 2000; i++) large.put("key" + i, List.of("value " + i, i * 31L, i / 3D));
+		JSONBinary.write(large, out);
+		Object streamed = JSONBinary.read(new ByteArrayInputStream(out.toByteArray()));
+		assert streamed.equals(large) : "large";
+
+		JSON arrays = new JSONParser().setPrimitiveArrays(true).parse("{\"ints\":[1,-2],\"longs\":[1,12345678901],\"doubles\":[0.5,1.5]}");
+		assert arrays.get("ints") instanceof IntList && arrays.get("longs") instanceof LongList && arrays.get("doubles") instanceof DoubleList : arrays;
+		arrays.put("intArray", new int[]{1, -2, Integer.MAX_VALUE});
+		arrays.put("longArray", new long[]{Long.MIN_VALUE, 3});
+		arrays.put("doubleArray", new double[]{0.5, -1});
+		JSON primitive = (JSON) JSONBinary.read(JSONBinary.toBytes(arrays));
+		assert primitive.toString().equals(arrays.toString()) : primitive;
+		assert primitive.get("ints").equals(List.of(1, -2)) && primitive.get("longs").equals(List.of(1L, 12345678901L)) : primitive;
+		assert primitive.get("intArray").equals(List.of(1, -2, Integer.MAX_VALUE)) : primitive;
+		assert primitive.get("longArray").equals(List.of(Long.MIN_VALUE, 3L)) && primitive.get("doubleArray").equals(List.of(0.5, -1D)) : primitive;
+	}
+
+	// TRACKED
+
+	@Test
+	public void tracked() {
+		TrackedJSON json = new TrackedJSON("{\"name\": \"Ankoki\", \"stats\": {\"kills\": 1, \"homes\": [\"x\"]}, \"other\": {\"a\": [1, 2]}}");
+		String text = json.toString();
+		assert text.equals("{\"name\":\"Ankoki\",\"stats\":{\"kills\":1,\"homes\":[\"x\"]},\"other\":{\"a\":[1,2]}}") : text;
+		assert json.toString() == text && json.toBytes() == json.toBytes();
+		String other = json.get("other").toString();
+
+		Map<String, Object> stats = (Map<String, Object>) json.get("stats");
+		((List<Object>) stats.get("homes")).add(Map.of("y", 2));
+		assert json.toString().equals("{\"name\":\"Ankoki\",\"stats\":{\"kills\":1,\"homes\":[\"x\",{\"y\":2}]},\"other\":{\"a\":[1,2]}}") : json;
+		assert json.get("other").toString() == other : "untouched subtree was serialized again";
+
+		for (Map.Entry<String, Object> entry : stats.entrySet()) if (entry.getKey().equals("kills")) entry.setValue(2);
+		json.remove("name");
+		assert json.toString().equals("{\"stats\":{\"kills\":2,\"homes\":[\"x\",{\"y\":2}]},\"other\":{\"a\":[1,2]}}") : json;
+		assert JSON.toString(json, false, 0).equals(json.toString()) && new JSON(JSON.toString(json, true, 2)).equals(json);
+
+		json.remove("stats");
+		stats.put("kills", 3);
+		assert json.toString().equals("{\"other\":{\"a\":[1,2]}}") : json;
+
+		// A child put under a second key is copied, so removing one key leaves the other still tracked.
+		json.put("copy", json.get("other"));
+		json.remove("other");
+		assert json.toString().equals("{\"copy\":{\"a\":[1,2]}}") : json;
+		((Map<String, Object>) json.get("copy")).put("b", 1);
+		assert json.toString().equals("{\"copy\":{\"a\":[1,2],\"b\":1}}") : json;
+		json.replaceAll((key, value) -> value);
+		assert json.toString().equals("{\"copy\":{\"a\":[1,2],\"b\":1}}") : json;
+		((Map<String, Object>) json.get("copy")).put("c", 2);
+		assert json.toString().equals("{\"copy\":{\"a\":[1,2],\"b\":1,\"c\":2}}") : json;
+	}
+
+	// IMMUTABLE
+
+	@Test
+	public void immutable() throws Exception {
+		JSON json = new JSON("{\"name\": \"Ankoki\", \"stats\": {\"kills\": 1}, \"homes\": [\"x\", {\"y\": 2}]}");
+		ImmutableJSON first = json.toImmutable();
+		assert first.equals(json) && json.equals(first) && first.hashCode() == json.hashCode() : first;
+		assert first.get("stats") instanceof ImmutableJSON && new JSON(first.toString()).equals(json) : first;
+		assert first.toJSON().equals(json) && first.toJSON().get("stats") instanceof JSON;
+		try {
+			first.put("name", "other");
+			assert false : "put changed an ImmutableJSON";
+		} catch (UnsupportedOperationException ignored) {}
+		try {
+			((List<Object>) first.get("homes")).add("z");
+			assert false : "add changed a list inside an ImmutableJSON";
+		} catch (UnsupportedOperationException ignored) {}
+
+		ImmutableJSON second = first.with("kills", 2).without("name");
+		assert first.size() == 3 && first.get("name").equals("Ankoki") && !first.containsKey("kills") : first;
+		assert second.size() == 3 && second.get("kills").equals(2) && !second.containsKey("name") : second;
+		assert second.get("stats") == first.get("stats") : "unchanged value was copied";
+		assert first.without("missing") == first && first.with("stats", first.get("stats")) == first;
+
+		// "Aa" and "BB" have the same hash.
+		Map<String, Object> expected = new HashMap<>();
+		ImmutableJSON large = ImmutableJSON.empty();
+		for (int i = 0; i < 2000; i++) {
+			String key = (i % 3 == 0 ? "Aa" : i % 3 == 1 ? "BB" : "key") + i / 3;
+			expected.put(key, i);
+			large = large.with(key, i);
+		}
+		assert large.equals(expected) && large.size() == expected.size() : large.size();
+		ImmutableJSON half = large;
+		for (int i = 0; i < 1000; i++) half = half.without((i % 3 == 0 ? "Aa" : i % 3 == 1 ? "BB" : "key") + i / 3);
+		assert half.size() == 1000 && large.size() == 2000 && half.get("key400").equals(1202) : half.size();
+		ImmutableJSON empty = half;
+		for (String key : half.keySet()) empty = empty.without(key);
+		assert empty.isEmpty() && !empty.entrySet().iterator().hasNext() && empty.toString().equals("{}") : empty;
+
+		AtomicJSON shared = new AtomicJSON();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			int thread = t;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 500; i++) {
+					shared.put("thread" + thread + "-" + i, i);
+					shared.update(current -> current.with("count", (int) current.getOrDefault("count", 0) + 1));
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) thread.join();
+		assert shared.get().size() == 2001 && shared.get().get("count").equals(2000) : shared.get().get("count");
+	}
+
+	// TAPE
+
+	@Test
+	public void tape() throws Exception {
+		String text = "{\"name\": \"Ankoki\", \"kills\": 12, \"big\": 123456789012345678, \"ratio\": -0.5, \"alive\": true, \"nothing\": null,"
+				+ "\"unicode\": \"caf\u00e9 \\ud83d\\ude00\", \"empty\": {}, \"none\": [], \"numbers\": [1, -2, 3000000000, 0.25],"
+				+ "\"list\": [{\"name\": \"a\", \"kills\": 1}, {\"name\": \"b\", \"kills\": 2}, [[]]],"
+				+ "\"serializable\": {\"-x\": \"com.ankoki.roku.test.ReadWriteTest$SerializableTest\", \"one\": 1, \"two\": 2, \"five\": 5}}";
+		JSON json = new JSON(text);
+		for (JSONTape tape : new JSONTape[]{JSONTape.parse(text), JSONTape.parse(text.getBytes(StandardCharsets.UTF_8))}) {
+			Map<String, Object> root = tape.root();
+			assert root.get("kills").equals(12) && root.get("big").equals(123456789012345678L) && root.get("ratio").equals(-0.5) : root;
+			assert root.get("unicode").equals("caf\u00e9 \ud83d\ude00") && root.containsKey("nothing") && root.get("nothing") == null : root;
+			assert root.get("missing") == null && root.size() == 12 && ((Map<?, ?>) root.get("empty")).isEmpty() : root;
+			assert ((List<?>) root.get("numbers")).get(2).equals(3000000000L) && ((List<?>) root.get("list")).get(2).equals(List.of(List.of())) : root;
+			assert root.get("serializable") instanceof Map<?, ?> : root.get("serializable");
+			try {
+				root.put("name", "other");
+				assert false : "put changed a tape";
+			} catch (UnsupportedOperationException ignored) {}
+
+			JSON copy = tape.toJSON();
+			assert copy.get("serializable") instanceof SerializableTest : copy.get("serializable");
+			assert copy.toString().equals(json.toString()) && new JSON(tape.toString()).toString().equals(json.toString()) : tape;
+			json.remove("serializable");
+			copy.remove("serializable");
+			assert copy.equals(json) && json.equals(copy) : copy;
+			json = new JSON(text);
+		}
+
+		JSONTape.Cursor cursor = JSONTape.parse(text).cursor();
+		assert cursor.count() == 12;
+		cursor.beginObject();
+		int kills = 0;
+		while (cursor.hasNext()) {
+			if (cursor.isName("kills")) {
+				cursor.nextName();
+				kills = cursor.nextInt();
+			} else if (cursor.nextName().equals("list")) {
+				cursor.beginArray();
+				while (cursor.peek() == JSONToken.BEGIN_OBJECT) {
+					cursor.beginObject();
+					assert cursor.nextName().equals("name") && cursor.nextString().length() == 1;
+					cursor.skipValue();
+					kills += cursor.nextInt();
+					cursor.endObject();
+				}
+				cursor.skipValue();
+				cursor.endArray();
+			} else cursor.skipValue();
+		}
+		cursor.endObject();
+		assert kills == 15 && cursor.peek() == JSONToken.END_DOCUMENT : kills;
+		try {
+			cursor.beginObject();
+			assert false : "consumed past the end of the tape";
+		} catch (IllegalStateException ignored) {}
+
+		StringBuilder large = new StringBuilder("{\"items\": [");
+		for (int i = 0; i < 5000; i++) large.append(i == 0 ? "" : ",").append("{\"id\": ").append(i).append(", \"name\": \"item ").append(i % 50).append("\", \"price\": ").append(i * 0.5).append('}');
+		JSONTape tape = JSONTape.parse(large.append("]}").toString());
+		assert tape.getFootprint() < large.length() * 2L : tape.getFootprint() + " for " + large.length();
+		assert ((List<?>) tape.root().get("items")).get(4999).equals(Map.of("id", 4999, "name", "item 49", "price", 2499.5));
+		for (String malformed : new String[]{"[]", "{\"a\": }", "{\"a\": [1, 2}", "{\"a\": 1} 2", "{\"a\" 1}"}) {
+			try {
+				JSONTape.parse(malformed);
+				assert false : malformed;
+			} catch (MalformedJsonException ignored) {}
+		}
+	}
+
+	// TAGS
+
+	@Test
+	public void tags() throws Exception {
+		JSONSerializable.alias(SerializableTest.class, "test");
+		JSON json = new JSON();
+		List<Object> list = new ArrayList<>();
+		for (int i = 0; i < 100; i++) list.add(i % 2 == 0 ? new SerializableTest(i, 2, 5) : new GeneratedTest("p" + i, i, List.of(), GeneratedTest.Rank.MEMBER));
+		json.put("list", list);
+		String named = json.toString();
+
+		StringBuilder aliased = new StringBuilder();
+		new JSONWriter(aliased).setTagPolicy(TagPolicy.ALIAS).writeValue(json);
+		assert aliased.indexOf("\"-x\":\"test\"") > 0 && aliased.length() < named.length() : aliased;
+		StringBuilder numbered = new StringBuilder();
+		new JSONWriter(numbered).setTagPolicy(TagPolicy.ID).setTypeHeader(true).writeValue(json);
+		assert numbered.indexOf("{\"-types\":[") == 0 && numbered.indexOf("\"-x\":" + JSONSerializable.getId(SerializableTest.class) + ",") > 0 : numbered;
+		assert numbered.indexOf("\"-x\":" + JSONSerializable.getId(GeneratedTest.class) + ",") > 0 : numbered;
+		StringBuilder bare = new StringBuilder();
+		new JSONWriter(bare).setTagPolicy(TagPolicy.ID).writeValue(json);
+		assert bare.length() < numbered.length() && bare.indexOf("-types") < 0 : bare;
+		for (StringBuilder text : new StringBuilder[]{aliased, numbered, bare}) {
+			JSON parsed = JSONParser.local().setTypeHeader(true).parse(text.toString());
+			assert parsed.toString().equals(named) && ((List<?>) parsed.get("list")).get(1) instanceof GeneratedTest : parsed;
+			JSON read = new JSONReader(new StringReader(text.toString())).setTypeHeader(true).nextJSON();
+			assert read.toString().equals(named) : read;
+		}
+
+		// Numbers are looked up in the header, whatever order the classes were registered in here.
+		String header = "{\"-types\": [\"" + GeneratedTest.class.getName() + "\", \"" + SerializableTest.class.getName() + "\"],"
+				+ "\"a\": {\"-x\": 1, \"one\": 1, \"two\": 2, \"five\": 5}, \"b\": {\"-x\": 0, \"name\": \"x\", \"kills\": 1, \"friends\": [], \"rank\": \"ADMIN\"}}";
+		for (JSON parsed : new JSON[]{JSONParser.local().setTypeHeader(true).parse(header),
+				new JSONReader(new StringReader(header)).setTypeHeader(true).nextJSON(),
+				(JSON) new JSONReader(new StringReader(header)).setTypeHeader(true).nextValue()}) {
+			assert parsed.size() == 2 && parsed.get("a") instanceof SerializableTest && parsed.get("b") instanceof GeneratedTest : parsed;
+		}
+
+		// Unless asked to, or past the first key, a "-types" key is kept like any other.
+		String plain = "{\"-types\": [\"a\"], \"b\": 1}";
+		assert new JSON(plain).get("-types").equals(List.of("a")) : plain;
+		assert new JSONReader(new StringReader(plain)).nextJSON().get("-types").equals(List.of("a")) : plain;
+		String twice = "{\"-types\": [], \"-types\": [\"a\"]}";
+		assert JSONParser.local().setTypeHeader(true).parse(twice).get("-types").equals(List.of("a")) : twice;
+		assert new JSONReader(new StringReader(twice)).setTypeHeader(true).nextJSON().get("-types").equals(List.of("a")) : twice;
+		try {
+			JSONSerializable.alias(GeneratedTest.class, "test");
+			assert false : "an alias was taken twice";
+		} catch (IllegalArgumentException ignored) {}
+	}
+
+	// BINDING
+
+	@Test
+	public void binding() throws Exception {
+		String text = """
+				{"name": "spawn", "x": 10, "y": -64, "z": 3000000000, "trusted": ["a", "b"], "unknown": {"skipped": [1, 2]},
+				"owner": {"uuid": "d1e2a3f4-0000-4000-8000-000000000001", "rank": "ADMIN", "scores": {"1": 2.5}},
+				"corners": [[1, 2], [3, 4]], "children": [{"name": "child", "children": null}], "tag": {"-x": "%s", "one": 1, "two": 2, "five": 5}}
+				""".formatted(SerializableTest.class.getName());
+		BindingTest.Home home = JSON.bind(text, BindingTest.Home.class);
+		assert home.name().equals("spawn") && home.x() == 10 && home.y() == -64 && home.z() == 3000000000L : home;
+		assert home.trusted().equals(List.of("a", "b")) && home.owner().rank == GeneratedTest.Rank.ADMIN : home;
+		assert home.owner().uuid.toString().equals("d1e2a3f4-0000-4000-8000-000000000001") && home.owner().scores.get(1) == 2.5 : home;
+		assert home.corners().length == 2 && home.corners()[1][0] == 3 && home.children().get(0).children() == null : home;
+		assert home.tag() instanceof SerializableTest && home.visits() == 0 && home.missing() == null : home;
+
+		// Written back, it is the same as the text without the unknown key, and converting through a map agrees.
+		JSON json = JSON.unbind(home);
+		JSON parsed = new JSON(text);
+		parsed.remove("unknown");
+		assert JSON.unbind(JSON.bind(parsed, BindingTest.Home.class)).toString().equals(json.toString()) : json;
+		String written = JSONBinder.of(BindingTest.Home.class).write(home);
+		BindingTest.Home again = JSON.bind(written, BindingTest.Home.class);
+		assert JSONBinder.of(BindingTest.Home.class).write(again).equals(written) && new JSON(written).get("visits").equals(0) : written;
+		assert JSON.bind(parsed, BindingTest.Home.class).owner().scores.equals(home.owner().scores) : parsed;
+		assert ((Map<?, ?>) json.get("owner")).get("rank").equals("ADMIN") && ((List<?>) json.get("corners")).get(0).equals(List.of(1, 2)) : json;
+
+		// Arrays of bound objects can be read one at a time.
+		JSONReader reader = new JSONReader(new StringReader("[{\"rank\": \"MEMBER\"}, null, {\"uuid\": null}]"));
+		JSONBinder<BindingTest.Owner> owners = JSONBinder.of(BindingTest.Owner.class);
+		reader.beginArray();
+		assert owners.read(reader).rank == GeneratedTest.Rank.MEMBER && owners.read(reader) == null && owners.read(reader).rank == null;
+		reader.endArray();
+
+		// Numbers must fit their field, and exact numbers are read as written.
+		BindingTest.Numbers numbers = JSON.bind("{\"b\": -128, \"s\": 2.0, \"big\": 123456789012345678901234567890, \"exact\": 0.10}", BindingTest.Numbers.class);
+		assert numbers.b() == -128 && numbers.s() == 2 && numbers.big().equals(new BigInteger("123456789012345678901234567890")) : numbers;
+		assert numbers.exact().scale() == 2 && numbers.exact().equals(new BigDecimal("0.10")) : numbers;
+		for (String malformed : new String[]{"{\"b\": 300}", "{\"s\": -32769}", "{\"big\": 1.5}", "{\"f\": 1e39}"}) {
+			try {
+				JSON.bind(malformed, BindingTest.Numbers.class);
+				assert false : malformed;
+			} catch (MalformedJsonException ignored) {}
+			try {
+				JSON.bind(new JSON(malformed), BindingTest.Numbers.class);
+				assert false : "tree " + malformed;
+			} catch (MalformedJsonException ignored) {}
+		}
+
+		for (String malformed : new String[]{"{\"x\": \"ten\"}", "{\"owner\": {\"rank\": \"OWNER\"}}", "{\"name\": \"a\"", "{} {}",
+				"{\"x\": 99999999999}", "{\"x\": 1.7}", "{\"corners\": [[1, 2.5]]}"}) {
+			try {
+				JSON.bind(malformed, BindingTest.Home.class);
+				assert false : malformed;
+			} catch (MalformedJsonException ignored) {}
+		}
+		try {
+			JSONBinder.of(Runnable.class);
+			assert false : "an interface was bound to";
+		} catch (IllegalArgumentException ignored) {}
+		try {
+			JSON.bind(Map.of("x", 1.7), BindingTest.Home.class);
+			assert false : "a fraction was bound to an int";
+		} catch (MalformedJsonException ignored) {}
+	}
+
+	public static class BindingTest {
+
+		record Home(String name, int x, int y, long z, List<String> trusted, Owner owner, int[][] corners,
+					List<Home> children, JSONSerializable tag, int visits, String missing) {}
+
+		record Numbers(byte b, short s, BigInteger big, BigDecimal exact, float f) {}
+
+		static class Owner {
+
+			private UUID uuid;
+			GeneratedTest.Rank rank;
+			Map<Integer, Double> scores;
+			transient String cache = "kept";
+
+			private Owner() {}
+
+		}
+
+	}
 
 	// SERIALIZABLE TEST CLASS
 
@@ -119,4 +804,40 @@ public class ReadWriteTest {
 
 	}
 
+	@GenerateCodec
+	public static class GeneratedTest extends JSONSerializable {
+
+		enum Rank { MEMBER, ADMIN }
+
+		private final String name;
+		private final int kills;
+		private final List<Object> friends;
+		final Rank rank;
+
+		GeneratedTest(String name, int kills, List<Object> friends, Rank rank) {
+			this.name = name;
+			this.kills = kills;
+			this.friends = friends;
+			this.rank = rank;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getKills() {
+			return kills;
+		}
+
+		public List<Object> getFriends() {
+			return friends;
+		}
+
+		@Override
+		public Map<String, Object> serialize() {
+			return ReadWriteTest_GeneratedTest_JSONCodec.INSTANCE.serialize(this);
+		}
+
+	}
+
 }
@@ -0,0 +1,251 @@
+package com.ankoki.roku.test;
+
+import com.ankoki.roku.web.json.JSON;
+import com.ankoki.roku.web.json.JSONLinesReader;
+import com.ankoki.roku.web.json.JSONLinesWriter;
+import com.ankoki.roku.web.json.JSONPath;
+import com.ankoki.roku.web.json.JSONPipeline;
+import com.ankoki.roku.web.json.JSONReader;
+import com.ankoki.roku.web.json.JSONSerializable;
+import com.ankoki.roku.web.json.JSONToken;
+import com.ankoki.roku.web.json.JSONWriter;
+import com.ankoki.roku.web.json.exceptions.MalformedJsonException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class StreamingTest {
+
+	// READ
+
+	@Test
+	public void tokens() throws IOException {
+		JSONReader reader = new JSONReader(new StringReader("{\"name\": \"Ankoki\", \"kills\": [1, 2.5], \"banned\": false, \"rank\": null}"));
+		reader.beginObject();
+		assert reader.nextName().equals("name");
+		assert reader.nextString().equals("Ankoki");
+		assert reader.nextName().equals("kills");
+		reader.beginArray();
+		assert reader.nextInt() == 1;
+		assert reader.peek() == JSONToken.NUMBER;
+		assert reader.nextDouble() == 2.5;
+		assert !reader.hasNext();
+		reader.endArray();
+		assert reader.nextName().equals("banned");
+		assert !reader.nextBoolean();
+		assert reader.nextName().equals("rank");
+		reader.nextNull();
+		reader.endObject();
+		assert reader.peek() == JSONToken.END_DOCUMENT : reader.peek();
+
+		// Whole numbers can be written with a fraction or exponent, but anything else is not truncated or wrapped.
+		reader = new JSONReader(new StringReader("[2.0, 1e3, -9223372036854775808, 1.7, 2147483648, 99999999999999999999, 1e400]"));
+		reader.beginArray();
+		assert reader.nextInt() == 2 && reader.nextInt() == 1000 && reader.nextLong() == Long.MIN_VALUE;
+		for (int i = 0; i < 4; i++) {
+			try {
+				if (i == 2 || i == 3) reader.nextLong();
+				else reader.nextInt();
+				assert false : "read a number which does not fit, " + i;
+			} catch (MalformedJsonException ignored) {}
+		}
+		assert !reader.hasNext();
+	}
+
+	@Test
+	public void skip() throws IOException {
+		JSONReader reader = new JSONReader(new StringReader("{\"skip\": {\"a\": [1, {\"b\": \"}]\\\"\"}]}, \"keep\": 5}"));
+		reader.beginObject();
+		reader.nextName();
+		reader.skipValue();
+		assert reader.nextName().equals("keep");
+		assert reader.nextInt() == 5;
+		reader.endObject();
+	}
+
+	@Test
+	public void largeInputStream() throws IOException {
+		StringBuilder builder = new StringBuilder("{\"values\": [");
+		for (int i = 0; i < 20000; i++) builder.append(i == 0 ? "" : ",").append("{\"id\": ").append(i).append(", \"name\": \"player \\\"").append(i).append("\\\"\"}");
+		builder.append("]}");
+		byte[] bytes = builder.toString().getBytes(StandardCharsets.UTF_8);
+		JSONReader reader = new JSONReader(Channels.newChannel(new ByteArrayInputStream(bytes)));
+		JSON json = reader.nextJSON();
+		List<?> values = (List<?>) json.get("values");
+		assert values.size() == 20000 : values.size();
+		assert ((Map<?, ?>) values.get(19999)).get("name").equals("player \"19999\"") : values.get(19999);
+	}
+
+	@Test
+	public void file() throws IOException {
+		File file = File.createTempFile("roku", ".json");
+		file.deleteOnExit();
+		Files.writeString(file.toPath(), "{\n\t\"multi\": \"line\",\n\t\"text\": \"keeps\\nnewlines\"\n}\n");
+		JSON json = new JSON(file);
+		assert json.get("multi").equals("line") : json.get("multi");
+		assert json.get("text").equals("keeps\nnewlines") : json.get("text");
+		assert JSON.parse(file.toPath()).equals(json) : JSON.parse(file.toPath());
+	}
+
+	// PATHS
+
+	@Test
+	public void paths() throws IOException {
+		String text = "{\"display\": {\"icon\": {\"item\": \"minecraft:stone\"}, \"title\": null},"
+				+ " \"a/b\": 1, \"players\": [{\"name\": \"Ankoki\", \"stats\": {\"kills\": 3}}, {\"name\": \"Roku\", \"stats\": {\"kills\": 7}}]}";
+		JSON json = new JSON(text);
+		assert JSON.compilePath("/display/icon/item").get(json).equals("minecraft:stone");
+		assert JSON.compilePath("/display/title").exists(json) && !JSON.compilePath("/display/missing").exists(json);
+		assert JSON.compilePath("/a~1b").get(json).equals(1);
+		assert JSON.compilePath("/players/1/name").get(json, String.class).equals("Roku");
+		assert JSON.compilePath("$.players[*].name").select(json).equals(List.of("Ankoki", "Roku"));
+		assert JSON.compilePath("$['players'][0]['name']").get(json).equals("Ankoki");
+		assert JSON.compilePath("$..kills").select(json).equals(List.of(3, 7));
+		assert JSON.compilePath("$..name").select(json).equals(List.of("Ankoki", "Roku"));
+
+		JSONPath path = JSON.compilePath("$.players.*.stats.kills");
+		assert path.select(new JSONReader(new StringReader(text))).equals(List.of(3, 7));
+		assert JSON.compilePath("$..kills").select(new JSONReader(new StringReader(text))).equals(List.of(3, 7));
+		assert JSON.compilePath("/display/icon").get(new JSONReader(new StringReader(text))).equals(Map.of("item", "minecraft:stone"));
+		JSONReader reader = new JSONReader(new StringReader("[" + text + ", 5]"));
+		reader.beginArray();
+		assert JSON.compilePath("$..missing").select(reader).isEmpty();
+		assert reader.nextInt() == 5 : "path did not consume the whole value";
+
+		try {
+			JSON.compilePath("$.players[");
+			assert false : "unclosed bracket";
+		} catch (IllegalArgumentException ignored) {}
+	}
+
+	// LINES
+
+	@Test
+	public void lines() throws IOException {
+		File file = File.createTempFile("roku", ".ndjson");
+		file.deleteOnExit();
+		try (JSONLinesWriter writer = JSONLinesWriter.append(file.toPath())) {
+			for (int i = 0; i < 30000; i++) writer.write(Map.of("id", i, "name", "player " + i, "tags", List.of("a\nb", i % 7)));
+		}
+		Files.writeString(file.toPath(), "\r\n{\"id\": 30000, \"name\": \"last\"}", StandardOpenOption.APPEND);
+
+		try (JSONLinesReader reader = new JSONLinesReader(file.toPath())) {
+			int count = 0;
+			while (reader.hasNext()) {
+				JSON json = reader.next();
+				assert json.get("id").equals(count++) : json;
+			}
+			assert count == 30001 : count;
+		}
+		try (Stream<JSON> stream = JSONLinesReader.parallel(file.toPath())) {
+			List<Object> ids = stream.map(json -> json.get("id")).toList();
+			assert ids.size() == 30001 && ids.get(0).equals(0) && ids.get(30000).equals(30000) : ids.size();
+			for (int i = 0; i < ids.size(); i++) assert ids.get(i).equals(i) : i;
+		}
+
+		// A record which fails part way through leaves nothing behind.
+		StringWriter out = new StringWriter();
+		try (JSONLinesWriter writer = new JSONLinesWriter(out)) {
+			Map<String, Object> broken = new LinkedHashMap<>();
+			broken.put("id", 1);
+			broken.put("bad", new JSONSerializable() {
+				@Override
+				public Map<String, Object> serialize() {
+					throw new IllegalStateException("cannot serialize");
+				}
+			});
+			try {
+				writer.write(broken);
+				assert false : "wrote a record which cannot be serialized";
+			} catch (IllegalStateException ignored) {}
+			writer.write(Map.of("id", 2));
+		}
+		assert out.toString().equals("{\"id\":2}\n") : out;
+		try (Stream<JSON> stream = new JSONLinesReader(new StringReader("{\"a\": 1}\n\n{\"a\": 2\n")).stream()) {
+			stream.forEach(json -> {});
+			assert false : "read a malformed line";
+		} catch (MalformedJsonException ex) {
+			assert ex.getMessage().startsWith("Line 3") : ex.getMessage();
+		}
+	}
+
+	// PIPELINE
+
+	@Test
+	public void pipeline() throws IOException {
+		JSONPipeline pipeline = new JSONPipeline()
+				.rename("$.players[*].kills", "killCount")
+				.drop("$..cache")
+				.map("$..-x", tag -> tag.equals("com.example.OldHome") ? "com.example.Home" : tag)
+				.filter("$.players[*]", player -> !Boolean.TRUE.equals(((Map<?, ?>) player).get("banned")))
+				.map("/version", version -> (int) version + 1);
+		String text = "{\"version\": 1, \"exact\": 1.10, \"big\": 123456789012345678901234567890, \"cache\": {\"a\": [1, 2]},"
+				+ "\"players\": [{\"name\": \"a\", \"kills\": 1, \"cache\": 3}, {\"name\": \"b\", \"banned\": true},"
+				+ "{\"name\": \"c\", \"kills\": 3, \"home\": {\"-x\": \"com.example.OldHome\", \"y\": 64}}]}";
+		String result = pipeline.transform(text);
+		assert result.equals("{\"version\":2,\"exact\":1.10,\"big\":123456789012345678901234567890,"
+				+ "\"players\":[{\"name\":\"a\",\"killCount\":1},"
+				+ "{\"name\":\"c\",\"killCount\":3,\"home\":{\"-x\":\"com.example.Home\",\"y\":64}}]}") : result;
+		String compact = "{\"exact\":1.10,\"list\":[1e5,\"a\\n\",null,true,{},[]]}";
+		assert new JSONPipeline().transform(compact).equals(compact) && new JSONPipeline().drop("/none").transform(compact).equals(compact);
+
+		File file = File.createTempFile("roku", ".json");
+		file.deleteOnExit();
+		try (JSONWriter writer = new JSONWriter(Files.newBufferedWriter(file.toPath()))) {
+			writer.beginObject().name("version").value(1).name("players").beginArray();
+			for (int i = 0; i < 50000; i++) writer.beginObject().name("name").value("p" + i).name("kills").value(i).name("banned").value(i % 2 == 0).endObject();
+			writer.endArray().endObject();
+		}
+		pipeline.transform(file.toPath(), file.toPath());
+		try (JSONReader reader = new JSONReader(Files.newInputStream(file.toPath()))) {
+			JSON json = reader.nextJSON();
+			List<?> players = (List<?>) json.get("players");
+			assert json.get("version").equals(2) && players.size() == 25000 : players.size();
+			assert ((Map<?, ?>) players.get(1)).get("killCount").equals(3) : players.get(1);
+		}
+		try {
+			pipeline.transform("{\"version\": 1, \"name\": }");
+			assert false : "transformed malformed JSON";
+		} catch (MalformedJsonException ignored) {}
+	}
+
+	// WRITE
+
+	@Test
+	public void writer() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JSONWriter writer = new JSONWriter(out);
+		writer.beginObject();
+		writer.name("name").value("Ank\u00f6ki");
+		writer.name("kills").beginArray().value(1).value(-20L).value(2.5).value(Double.NaN).endArray();
+		writer.name("stats").writeValue(Map.of("banned", false));
+		writer.endObject();
+		writer.flush();
+		String written = out.toString(StandardCharsets.UTF_8);
+		assert written.equals("{\"name\":\"Ank\u00f6ki\",\"kills\":[1,-20,2.5,null],\"stats\":{\"banned\":false}}") : written;
+	}
+
+	@Test
+	public void writerMisuse() throws IOException {
+		JSONWriter writer = new JSONWriter(new StringBuilder());
+		writer.beginObject();
+		try {
+			writer.value(1);
+			assert false;
+		} catch (IllegalStateException ignored) {}
+	}
+
+}